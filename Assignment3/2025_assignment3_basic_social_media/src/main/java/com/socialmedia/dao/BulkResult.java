@@ -0,0 +1,37 @@
+package com.socialmedia.dao;
+
+// Outcome of a bulk insert: rows written, transactions committed and elapsed time
+public class BulkResult {
+
+    private final long rows;
+    private final long chunks;
+    private final long elapsedNanos;
+
+    public BulkResult(long rows, long chunks, long elapsedNanos) {
+        this.rows = rows;
+        this.chunks = chunks;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getChunks() {
+        return chunks;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkResult{rows=" + rows + ", chunks=" + chunks + ", elapsedMillis=" + getElapsedMillis() +
+                ", rowsPerSecond=" + String.format("%.0f", getRowsPerSecond()) + "}";
+    }
+}
@@ -1,16 +1,98 @@
 package com.socialmedia.dao;
 
+import com.socialmedia.dto.CommentNode;
+import com.socialmedia.dto.CommentSummary;
+import com.socialmedia.dto.Snippets;
 import com.socialmedia.entities.Comment;
+import com.socialmedia.entities.Post;
+import org.hibernate.Hibernate;
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class CommentDAO extends GenericDAO<Comment> {
 
+    // Projection for listings: one query, nothing enters the persistence context
+    private static final String SELECT_SUMMARY =
+            "SELECT NEW com.socialmedia.dto.CommentSummary(c.id, c.post.id, a.id, a.username, " +
+                    "SUBSTRING(c.content, 1, " + (Snippets.LENGTH + 1) + "), c.replyCount, c.timestamp) " +
+                    "FROM Comment c JOIN c.author a ";
+
     public CommentDAO(EntityManager entityManager) {
         super(entityManager, Comment.class);
     }
 
+    // Persist the comment and update the counters of its post and parent comment in the same transaction
+    @Override
+    public void create(Comment comment) {
+        Post post = comment.getPost();
+        Comment parent = comment.getParentComment();
+
+        executeInsideTransaction(em -> {
+            em.persist(comment);
+            em.createQuery("UPDATE Post p SET p.commentCount = p.commentCount + 1 WHERE p.id = :postId")
+                    .setParameter("postId", post.getId())
+                    .executeUpdate();
+            if (parent == null) {
+                return;
+            }
+            em.createQuery("UPDATE Comment c SET c.replyCount = c.replyCount + 1 WHERE c.id = :parentId")
+                    .setParameter("parentId", parent.getId())
+                    .executeUpdate();
+            // the parent just got its first reply: one more comment with replies on the post
+            em.createQuery("UPDATE Post p SET p.repliedCommentCount = p.repliedCommentCount + 1 " +
+                            "WHERE p.id = :postId AND EXISTS (" +
+                            "  SELECT c FROM Comment c WHERE c.id = :parentId AND c.replyCount = 1" +
+                            ")")
+                    .setParameter("postId", post.getId())
+                    .setParameter("parentId", parent.getId())
+                    .executeUpdate();
+        });
+
+        // The counters were changed behind the persistence context: the loaded copies are reloaded, as after
+        // a like. Uninitialized proxies will read the new values.
+        if (Hibernate.isInitialized(post)) {
+            entityManager.refresh(post);
+        }
+        if (parent != null && Hibernate.isInitialized(parent)) {
+            entityManager.refresh(parent);
+        }
+    }
+
+    // Bulk inserts (createAll) update the counters once per chunk instead of once per comment
+    @Override
+    protected void afterChunk(List<Comment> chunk) {
+        Map<Long, Integer> commentsPerPost = new HashMap<>();
+        Map<Long, Integer> repliesPerParent = new HashMap<>();
+        for (Comment comment : chunk) {
+            commentsPerPost.merge(comment.getPost().getId(), 1, Integer::sum);
+            if (comment.getParentComment() != null) {
+                repliesPerParent.merge(comment.getParentComment().getId(), 1, Integer::sum);
+            }
+        }
+
+        // parents getting their first replies in this chunk, per post
+        Map<Long, Integer> repliedPerPost = new HashMap<>();
+        if (!repliesPerParent.isEmpty()) {
+            entityManager.createQuery(
+                            "SELECT c.post.id FROM Comment c WHERE c.id IN :ids AND c.replyCount = 0", Long.class)
+                    .setParameter("ids", repliesPerParent.keySet())
+                    .getResultList()
+                    .forEach(postId -> repliedPerPost.merge(postId, 1, Integer::sum));
+            addToCounter("UPDATE Comment c SET c.replyCount = c.replyCount + :delta WHERE c.id IN :ids",
+                    repliesPerParent);
+        }
+
+        addToCounter("UPDATE Post p SET p.commentCount = p.commentCount + :delta WHERE p.id IN :ids",
+                commentsPerPost);
+        addToCounter("UPDATE Post p SET p.repliedCommentCount = p.repliedCommentCount + :delta WHERE p.id IN :ids",
+                repliedPerPost);
+    }
+
     // Find comments by post
     public List<Comment> findByPost(Long postId) {
         TypedQuery<Comment> query = entityManager.createQuery(
@@ -20,6 +102,22 @@ public class CommentDAO extends GenericDAO<Comment> {
         return query.getResultList();
     }
 
+    public Page<Comment> findByPost(Long postId, String cursor, int limit) {
+        TypedQuery<Comment> query = createNewestFirstQuery(
+                "SELECT c FROM Comment c WHERE c.post.id = :postId AND c.parentComment IS NULL", "c",
+                Cursor.decode(cursor), limit, Comment.class);
+        query.setParameter("postId", postId);
+        return toPage(query.getResultList(), limit);
+    }
+
+    public Page<CommentSummary> findSummariesByPost(Long postId, String cursor, int limit) {
+        TypedQuery<CommentSummary> query = createNewestFirstQuery(
+                SELECT_SUMMARY + "WHERE c.post.id = :postId AND c.parentComment IS NULL", "c",
+                Cursor.decode(cursor), limit, CommentSummary.class);
+        query.setParameter("postId", postId);
+        return toSummaryPage(query.getResultList(), limit);
+    }
+
     // Find comments by author
     public List<Comment> findByAuthor(Long userId) {
         TypedQuery<Comment> query = entityManager.createQuery(
@@ -28,6 +126,33 @@ public class CommentDAO extends GenericDAO<Comment> {
         return query.getResultList();
     }
 
+    public Page<Comment> findByAuthor(Long userId, String cursor, int limit) {
+        TypedQuery<Comment> query = createNewestFirstQuery(
+                "SELECT c FROM Comment c WHERE c.author.id = :userId", "c", Cursor.decode(cursor), limit,
+                Comment.class);
+        query.setParameter("userId", userId);
+        return toPage(query.getResultList(), limit);
+    }
+
+    public Page<CommentSummary> findSummariesByAuthor(Long userId, String cursor, int limit) {
+        TypedQuery<CommentSummary> query = createNewestFirstQuery(
+                SELECT_SUMMARY + "WHERE a.id = :userId", "c", Cursor.decode(cursor), limit, CommentSummary.class);
+        query.setParameter("userId", userId);
+        return toSummaryPage(query.getResultList(), limit);
+    }
+
+    // Summaries of comments by ids, in the order of the ids
+    public List<CommentSummary> findSummariesByIdsInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<CommentSummary> rows = entityManager.createQuery(
+                        SELECT_SUMMARY + "WHERE c.id IN :ids", CommentSummary.class)
+                .setParameter("ids", ids)
+                .getResultList();
+        return inOrder(ids, rows, CommentSummary::getId);
+    }
+
     // Find replies to a comment
     public List<Comment> findReplies(Long commentId) {
         TypedQuery<Comment> query = entityManager.createQuery(
@@ -35,4 +160,93 @@ public class CommentDAO extends GenericDAO<Comment> {
         query.setParameter("commentId", commentId);
         return query.getResultList();
     }
-}
\ No newline at end of file
+
+    // Discussion of a post as a tree of detached nodes, from one query over all its comments instead of
+    // one query per comment. Top-level comments come newest first (cursor as in findByPost), replies
+    // oldest first. Each level keeps at most pageSize nodes and only maxDepth levels are returned:
+    // CommentNode.hasMoreReplies tells where the tree was cut, to continue with loadReplies.
+    public Page<CommentNode> loadThread(Long postId, String cursor, int maxDepth, int pageSize) {
+        checkThreadLimits(maxDepth, pageSize);
+        Map<Long, List<CommentNode>> replies = findNodes("c.post.id = :postId", "postId", postId);
+        List<CommentNode> topLevel = new ArrayList<>(replies.getOrDefault(null, Collections.emptyList()));
+        Collections.reverse(topLevel);
+        return assemble(topLevel, Cursor.decode(cursor), -1, replies, maxDepth, pageSize);
+    }
+
+    // Next replies of a comment, oldest first, with their own replies down to maxDepth levels
+    public Page<CommentNode> loadReplies(Long commentId, String cursor, int maxDepth, int pageSize) {
+        checkThreadLimits(maxDepth, pageSize);
+        Map<Long, List<CommentNode>> replies = findNodes(
+                "c.post.id = (SELECT r.post.id FROM Comment r WHERE r.id = :commentId)", "commentId", commentId);
+        return assemble(replies.getOrDefault(commentId, Collections.emptyList()), Cursor.decode(cursor), 1,
+                replies, maxDepth, pageSize);
+    }
+
+    // Comments of the post as projections, grouped by parent id (null for top-level ones), oldest first.
+    // Only the columns of a node are read, through the (post_id, timestamp, id) index.
+    private Map<Long, List<CommentNode>> findNodes(String postCondition, String parameter, Long value) {
+        List<CommentNode> nodes = entityManager.createQuery(
+                        "SELECT NEW com.socialmedia.dto.CommentNode(c.id, c.parentComment.id, a.id, a.username, " +
+                                "c.content, c.timestamp, c.replyCount) " +
+                                "FROM Comment c JOIN c.author a WHERE " + postCondition + " " +
+                                "ORDER BY c.timestamp, c.id", CommentNode.class)
+                .setParameter(parameter, value)
+                .getResultList();
+        Map<Long, List<CommentNode>> byParent = new HashMap<>();
+        for (CommentNode node : nodes) {
+            byParent.computeIfAbsent(node.getParentId(), parent -> new ArrayList<>()).add(node);
+        }
+        return byParent;
+    }
+
+    // Page of one level after the cursor; direction is -1 for newest first levels, 1 for oldest first
+    private static Page<CommentNode> assemble(List<CommentNode> level, Cursor cursor, int direction,
+                                              Map<Long, List<CommentNode>> replies, int maxDepth, int pageSize) {
+        List<CommentNode> rows = new ArrayList<>(pageSize + 1);
+        for (CommentNode node : level) {
+            if (cursor == null || direction * compare(node, cursor) > 0) {
+                rows.add(node);
+                if (rows.size() > pageSize) {
+                    break;
+                }
+            }
+        }
+        Page<CommentNode> page = Page.of(rows, pageSize, node -> Cursor.encode(node.getTimestamp(), node.getId()));
+        for (CommentNode node : page.getItems()) {
+            attachReplies(node, replies, 2, maxDepth, pageSize);
+        }
+        return page;
+    }
+
+    private static void attachReplies(CommentNode node, Map<Long, List<CommentNode>> replies, int depth,
+                                      int maxDepth, int pageSize) {
+        if (depth > maxDepth) {
+            return;
+        }
+        List<CommentNode> children = replies.getOrDefault(node.getId(), Collections.emptyList());
+        for (CommentNode child : children.subList(0, Math.min(pageSize, children.size()))) {
+            node.addReply(child);
+            attachReplies(child, replies, depth + 1, maxDepth, pageSize);
+        }
+    }
+
+    private static int compare(CommentNode node, Cursor cursor) {
+        int byTime = node.getTimestamp().compareTo(cursor.getTimestamp());
+        return byTime != 0 ? byTime : node.getId().compareTo(cursor.getId());
+    }
+
+    private static void checkThreadLimits(int maxDepth, int pageSize) {
+        checkLimit(pageSize);
+        if (maxDepth <= 0) {
+            throw new IllegalArgumentException("Thread depth must be positive: " + maxDepth);
+        }
+    }
+
+    private static Page<Comment> toPage(List<Comment> rows, int limit) {
+        return Page.of(rows, limit, comment -> Cursor.encode(comment.getTimestamp(), comment.getId()));
+    }
+
+    private static Page<CommentSummary> toSummaryPage(List<CommentSummary> rows, int limit) {
+        return Page.of(rows, limit, comment -> Cursor.encode(comment.getTimestamp(), comment.getId()));
+    }
+}
@@ -0,0 +1,66 @@
+package com.socialmedia.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+// Position of the last row of a page: (timestamp, key) for time ordered lists, key only otherwise.
+// Clients only see it as an opaque string.
+public final class Cursor {
+
+    private static final char SEPARATOR = '|';
+
+    private final LocalDateTime timestamp;
+    private final String key;
+
+    private Cursor(LocalDateTime timestamp, String key) {
+        this.timestamp = timestamp;
+        this.key = key;
+    }
+
+    public static String encode(LocalDateTime timestamp, Object key) {
+        String raw = (timestamp != null ? timestamp.toString() : "") + SEPARATOR + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns null for a null cursor (first page)
+    public static Cursor decode(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+        int separator = raw.indexOf(SEPARATOR);
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        String timestamp = raw.substring(0, separator);
+        try {
+            return new Cursor(timestamp.isEmpty() ? null : LocalDateTime.parse(timestamp),
+                    raw.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Long getId() {
+        try {
+            return Long.valueOf(key);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor key: " + key, e);
+        }
+    }
+}
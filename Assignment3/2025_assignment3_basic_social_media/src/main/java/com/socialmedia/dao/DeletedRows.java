@@ -0,0 +1,39 @@
+package com.socialmedia.dao;
+
+import java.util.Collections;
+import java.util.List;
+
+// What a delete removed: the users, plus the posts and comments that went with them
+public class DeletedRows {
+
+    private final int users;
+    private final List<Long> postIds;
+    private final List<Long> commentIds;
+
+    public DeletedRows(int users, List<Long> postIds, List<Long> commentIds) {
+        this.users = users;
+        this.postIds = Collections.unmodifiableList(postIds);
+        this.commentIds = Collections.unmodifiableList(commentIds);
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public List<Long> getPostIds() {
+        return postIds;
+    }
+
+    public List<Long> getCommentIds() {
+        return commentIds;
+    }
+
+    public int getComments() {
+        return commentIds.size();
+    }
+
+    @Override
+    public String toString() {
+        return "DeletedRows{users=" + users + ", posts=" + postIds.size() + ", comments=" + commentIds.size() + "}";
+    }
+}
@@ -1,17 +1,35 @@
 package com.socialmedia.dao;
 
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.EntityType;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 public abstract class GenericDAO<T> {
 
-    public EntityManager entityManager;
+    private static final int DEFAULT_BATCH_SIZE = 50;
+    // ids per IN list
+    protected static final int IN_CHUNK_SIZE = 1_000;
+
+    protected final EntityManager entityManager;
     private final Class<T> entityClass;
 
     public GenericDAO(EntityManager entityManager, Class<T> entityClass) {
@@ -24,6 +42,48 @@ public abstract class GenericDAO<T> {
         executeInsideTransaction(em -> em.persist(entity));
     }
 
+    // CREATE - Bulk insert, one transaction per chunk of chunkSize entities.
+    // The persistence context is flushed (one JDBC batch per hibernate.jdbc.batch_size rows) and cleared as it
+    // goes, so the heap stays flat for any number of entities as long as the caller does not hold on to them.
+    // Meant to run outside a transaction: entities loaded in the current persistence context get detached.
+    public BulkResult createAll(Iterable<? extends T> entities, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        int batchSize = jdbcBatchSize();
+        long start = System.nanoTime();
+        long rows = 0;
+        long chunks = 0;
+
+        Iterator<? extends T> it = entities.iterator();
+        List<T> chunk = new ArrayList<>(Math.min(chunkSize, 1024));
+        while (it.hasNext()) {
+            chunk.clear();
+            while (chunk.size() < chunkSize && it.hasNext()) {
+                chunk.add(it.next());
+            }
+            executeInsideTransaction(em -> {
+                for (int i = 0; i < chunk.size(); i++) {
+                    em.persist(chunk.get(i));
+                    if ((i + 1) % batchSize == 0) {
+                        em.flush();
+                        em.clear();
+                    }
+                }
+                em.flush();
+                afterChunk(chunk);
+            });
+            entityManager.clear();
+            rows += chunk.size();
+            chunks++;
+        }
+        return new BulkResult(rows, chunks, System.nanoTime() - start);
+    }
+
+    // Called inside the transaction of each createAll chunk, once its rows are flushed
+    protected void afterChunk(List<T> chunk) {
+    }
+
     // READ - Find by ID
     public T findById(Long id) {
         return entityManager.find(entityClass, id);
@@ -39,6 +99,30 @@ public abstract class GenericDAO<T> {
         return allQuery.getResultList();
     }
 
+    // READ - Find a page of entities ordered by id
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Page<T> findAll(String cursor, int limit) {
+        checkLimit(limit);
+        EntityType<T> entityType = entityManager.getMetamodel().entity(entityClass);
+        Class<?> idType = entityType.getIdType().getJavaType();
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> cq = cb.createQuery(entityClass);
+        Root<T> root = cq.from(entityClass);
+        Path<Comparable> id = root.get(entityType.getId(idType).getName());
+        cq.select(root);
+        Cursor after = Cursor.decode(cursor);
+        if (after != null) {
+            Comparable lastId = idType == String.class ? after.getKey() : after.getId();
+            cq.where(cb.greaterThan(id, lastId));
+        }
+        cq.orderBy(cb.asc(id));
+
+        List<T> rows = entityManager.createQuery(cq).setMaxResults(limit + 1).getResultList();
+        return Page.of(rows, limit, entity -> Cursor.encode(null,
+                entityManager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(entity)));
+    }
+
     // UPDATE
     public T update(T entity) {
         return entityManager.merge(entity);
@@ -58,17 +142,173 @@ public abstract class GenericDAO<T> {
 
     // Transaction helper
     protected void executeInsideTransaction(Consumer<EntityManager> action) {
+        computeInsideTransaction(em -> {
+            action.accept(em);
+            return null;
+        });
+    }
+
+    // Joins the current transaction if there is one (see UnitOfWork), otherwise runs in its own
+    protected <R> R computeInsideTransaction(Function<EntityManager, R> action) {
         EntityTransaction tx = entityManager.getTransaction();
+        if (tx.isActive()) {
+            return action.apply(entityManager);
+        }
         try {
             tx.begin();
-            action.accept(entityManager);
+            R result = action.apply(entityManager);
             tx.commit();
+            return result;
         } catch (RuntimeException e) {
-            tx.rollback();
+            if (tx.isActive()) {
+                tx.rollback();
+            }
             throw e;
         }
     }
 
+    // Runs the action once the current transaction commits; not at all if it rolls back
+    protected void afterCommit(Runnable action) {
+        entityManager.unwrap(Session.class).addEventListeners(new BaseSessionEventListener() {
+            private boolean completed;
+
+            @Override
+            public void transactionCompletion(boolean successful) {
+                if (!completed) {
+                    completed = true;
+                    if (successful) {
+                        action.run();
+                    }
+                }
+            }
+        });
+    }
+
+    // Conditional INSERT of one row (INSERT ... SELECT ... WHERE NOT EXISTS) in the current transaction, the
+    // parameters bound in order. The NOT EXISTS check does not lock: a concurrent writer inserting the same key
+    // makes the insert fail on the primary key, which is rolled back to a savepoint and counts as nothing
+    // inserted. Plain JDBC, because a failed JPA statement would mark the transaction for rollback.
+    // Returns true if the row was inserted.
+    protected boolean insertIfAbsent(String sql, Object... parameters) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try (PreparedStatement insert = connection.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.length; i++) {
+                    insert.setObject(i + 1, parameters[i]);
+                }
+                int inserted = insert.executeUpdate();
+                connection.releaseSavepoint(savepoint);
+                return inserted > 0;
+            } catch (SQLException e) {
+                if (!isDuplicateKey(e)) {
+                    throw e;
+                }
+                connection.rollback(savepoint);
+                return false;
+            }
+        });
+    }
+
+    // SQLState class 23: integrity constraint violation
+    protected static boolean isDuplicateKey(SQLException e) {
+        for (SQLException cause = e; cause != null; cause = cause.getNextException()) {
+            if (cause.getSQLState() != null && cause.getSQLState().startsWith("23")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Keyset pagination over rows ordered by (timestamp DESC, id DESC).
+    // jpql must end with a WHERE clause, the cursor condition and the ORDER BY are appended to it.
+    protected <E> TypedQuery<E> createNewestFirstQuery(String jpql, String alias, Cursor cursor, int limit,
+                                                       Class<E> resultClass) {
+        checkLimit(limit);
+        if (cursor != null) {
+            jpql += " AND (" + alias + ".timestamp < :cursorTimestamp OR (" +
+                    alias + ".timestamp = :cursorTimestamp AND " + alias + ".id < :cursorId))";
+        }
+        jpql += " ORDER BY " + alias + ".timestamp DESC, " + alias + ".id DESC";
+
+        TypedQuery<E> query = entityManager.createQuery(jpql, resultClass);
+        if (cursor != null) {
+            query.setParameter("cursorTimestamp", cursor.getTimestamp());
+            query.setParameter("cursorId", cursor.getId());
+        }
+        query.setMaxResults(limit + 1);
+        return query;
+    }
+
+    // Add deltas to a counter column with one UPDATE per distinct delta.
+    // jpql must use :delta for the increment and :ids for the keys of the rows to update.
+    protected <K> void addToCounter(String jpql, Map<K, Integer> deltas) {
+        Map<Integer, List<K>> keysByDelta = new HashMap<>();
+        deltas.forEach((key, delta) -> keysByDelta.computeIfAbsent(delta, d -> new ArrayList<>()).add(key));
+        keysByDelta.forEach((delta, keys) -> entityManager.createQuery(jpql)
+                .setParameter("delta", delta)
+                .setParameter("ids", keys)
+                .executeUpdate());
+    }
+
+    // JPQL query with an IN :ids parameter, run once per 1000 ids
+    protected <R> List<R> selectIn(String jpql, Collection<?> ids, Class<R> resultClass) {
+        List<R> rows = new ArrayList<>();
+        for (List<?> chunk : chunks(ids)) {
+            rows.addAll(entityManager.createQuery(jpql, resultClass).setParameter("ids", chunk).getResultList());
+        }
+        return rows;
+    }
+
+    // Native statement with an IN (:ids) parameter, run once per 1000 ids. It declares the table it changes,
+    // so only that second-level cache region is evicted. Returns the number of rows changed.
+    protected int executeIn(String sql, Collection<?> ids, String table) {
+        int rows = 0;
+        for (List<?> chunk : chunks(ids)) {
+            rows += entityManager.createNativeQuery(sql)
+                    .unwrap(NativeQuery.class)
+                    .addSynchronizedQuerySpace(table)
+                    .setParameter("ids", chunk)
+                    .executeUpdate();
+        }
+        return rows;
+    }
+
+    private static List<List<?>> chunks(Collection<?> ids) {
+        List<?> all = new ArrayList<>(ids);
+        List<List<?>> chunks = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += IN_CHUNK_SIZE) {
+            chunks.add(all.subList(from, Math.min(all.size(), from + IN_CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+    private int jdbcBatchSize() {
+        Object batchSize = entityManager.getEntityManagerFactory().getProperties().get("hibernate.jdbc.batch_size");
+        return batchSize != null ? Math.max(1, Integer.parseInt(batchSize.toString())) : DEFAULT_BATCH_SIZE;
+    }
+
+    // Rows in the order of the ids, skipping the ids with no row
+    protected static <E> List<E> inOrder(List<Long> ids, List<E> rows, Function<E, Long> idOf) {
+        Map<Long, E> rowsById = new HashMap<>();
+        for (E row : rows) {
+            rowsById.put(idOf.apply(row), row);
+        }
+        List<E> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            E row = rowsById.get(id);
+            if (row != null) {
+                ordered.add(row);
+            }
+        }
+        return ordered;
+    }
+
+    protected static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+    }
+
     // Count all entities
     public long count() {
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
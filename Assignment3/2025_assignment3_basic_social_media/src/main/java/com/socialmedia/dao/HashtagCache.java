@@ -0,0 +1,100 @@
+package com.socialmedia.dao;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded set of the tags known to exist in the hashtags table, so that hot tags resolve without I/O.
+// Hashtags are never deleted, so a cached tag cannot go stale: an evicted one is just looked up again.
+//
+// Lookups and inserts are plain ConcurrentHashMap operations. Past the capacity, the inserting thread evicts
+// the least recently used of a few entries sampled by a hand that walks the map (approximate LRU); if another
+// thread is already evicting it does not wait, so the size can briefly exceed the capacity by a few entries.
+public class HashtagCache {
+
+    private static final int SAMPLE_SIZE = 8;
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, Entry> tags = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    // only used by the evicting thread, published by the evicting flag
+    private Iterator<Entry> hand = Collections.emptyIterator();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public HashtagCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public boolean contains(String tag) {
+        Entry entry = tags.get(tag);
+        if (entry == null) {
+            misses.increment();
+            return false;
+        }
+        entry.lastAccess = System.nanoTime();
+        hits.increment();
+        return true;
+    }
+
+    // Only for committed tags
+    public void add(String tag) {
+        if (capacity > 0 && tags.putIfAbsent(tag, new Entry(tag)) == null && tags.size() > capacity) {
+            evict();
+        }
+    }
+
+    public int size() {
+        return tags.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            while (tags.size() > capacity) {
+                Entry victim = null;
+                for (int i = 0; i < SAMPLE_SIZE; i++) {
+                    if (!hand.hasNext()) {
+                        hand = tags.values().iterator();
+                        if (!hand.hasNext()) {
+                            return;
+                        }
+                    }
+                    Entry entry = hand.next();
+                    if (victim == null || entry.lastAccess < victim.lastAccess) {
+                        victim = entry;
+                    }
+                }
+                tags.remove(victim.tag, victim);
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static final class Entry {
+
+        private final String tag;
+        private volatile long lastAccess = System.nanoTime();
+
+        Entry(String tag) {
+            this.tag = tag;
+        }
+    }
+}
@@ -1,25 +1,181 @@
 package com.socialmedia.dao;
 
 import com.socialmedia.entities.Hashtag;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.TypedQuery;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class HashtagDAO extends GenericDAO<Hashtag> {
 
+    private static final String INSERT_TAG = "INSERT INTO hashtags (tag, usage_count) VALUES (?, 0)";
+
+    // Tags known to exist, shared by the DAOs of all the units of work
+    private final HashtagCache cache;
+
     public HashtagDAO(EntityManager entityManager) {
+        this(entityManager, new HashtagCache(0));
+    }
+
+    public HashtagDAO(EntityManager entityManager, HashtagCache cache) {
         super(entityManager, Hashtag.class);
+        this.cache = cache;
     }
 
-    // Find or create hashtag
+    // Find or create hashtag, safe against concurrent creation of the same tag
     public Hashtag findOrCreate(String tag) {
-        Hashtag hashtag = findByTag(tag);
-        if (hashtag == null) {
-            hashtag = new Hashtag(tag);
-            create(hashtag);
+        return computeInsideTransaction(em -> {
+            if (cache.contains(tag)) {
+                return em.find(Hashtag.class, tag);
+            }
+            Hashtag hashtag = em.find(Hashtag.class, tag);
+            if (hashtag != null) {
+                cache.add(tag);
+                return hashtag;
+            }
+            insertMissing(Collections.singletonList(tag));
+            return em.find(Hashtag.class, tag);
+        });
+    }
+
+    // Hashtags of a new post, in the caller's transaction. The tags not in the cache are checked with one IN
+    // query and the missing ones inserted in one JDBC batch; every tag then gets one more use with a single
+    // UPDATE. The returned hashtags are loaded after it with one IN query, so they count this post and can be
+    // read once the unit of work is closed.
+    public List<Hashtag> resolveAll(Collection<String> tags) {
+        Set<String> distinctTags = new LinkedHashSet<>(tags);
+        if (distinctTags.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        return computeInsideTransaction(em -> {
+            List<String> unknown = new ArrayList<>();
+            for (String tag : distinctTags) {
+                if (!cache.contains(tag)) {
+                    unknown.add(tag);
+                }
+            }
+            if (!unknown.isEmpty()) {
+                List<String> found = em.createQuery("SELECT h.tag FROM Hashtag h WHERE h.tag IN :tags", String.class)
+                        .setParameter("tags", unknown)
+                        .getResultList();
+                // only committed tags are cached: the ones inserted here once the transaction commits
+                found.forEach(cache::add);
+                Set<String> missing = new LinkedHashSet<>(unknown);
+                missing.removeAll(found);
+                if (!missing.isEmpty()) {
+                    insertMissing(missing);
+                }
+            }
+
+            // Synchronized on the hashtags table, like the deletes that recount it: the Hashtag cache region and
+            // the cached queries over the table are invalidated when the transaction completes
+            em.createNativeQuery("UPDATE hashtags SET usage_count = usage_count + 1 WHERE tag IN (:tags)")
+                    .unwrap(NativeQuery.class)
+                    .addSynchronizedQuerySpace("hashtags")
+                    .setParameter("tags", distinctTags)
+                    .executeUpdate();
+
+            Map<String, Hashtag> loaded = new HashMap<>();
+            em.createQuery("SELECT h FROM Hashtag h WHERE h.tag IN :tags", Hashtag.class)
+                    .setParameter("tags", distinctTags)
+                    .getResultList()
+                    .forEach(hashtag -> loaded.put(hashtag.getTag(), hashtag));
+            List<Hashtag> hashtags = new ArrayList<>(distinctTags.size());
+            for (String tag : distinctTags) {
+                hashtags.add(loaded.get(tag));
+            }
+            return hashtags;
+        });
+    }
+
+    // Make sure the tags exist, without counting a use: for bulk loads, where createAll counts them
+    public void createMissing(Collection<String> tags) {
+        Set<String> unknown = new LinkedHashSet<>();
+        for (String tag : tags) {
+            if (!cache.contains(tag)) {
+                unknown.add(tag);
+            }
+        }
+        if (unknown.isEmpty()) {
+            return;
         }
-        return hashtag;
+        executeInsideTransaction(em -> {
+            List<String> ids = new ArrayList<>(unknown);
+            for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+                List<String> chunk = ids.subList(from, Math.min(ids.size(), from + IN_CHUNK_SIZE));
+                List<String> found = em.createQuery("SELECT h.tag FROM Hashtag h WHERE h.tag IN :tags", String.class)
+                        .setParameter("tags", chunk)
+                        .getResultList();
+                found.forEach(cache::add);
+                found.forEach(unknown::remove);
+            }
+            if (!unknown.isEmpty()) {
+                insertMissing(unknown);
+            }
+        });
+    }
+
+    // Uses counted by a bulk load (see PostDAO.tagAll), with one UPDATE per distinct count
+    public void addUsage(Map<String, Integer> usesPerTag) {
+        executeInsideTransaction(em -> addToCounter(
+                "UPDATE Hashtag h SET h.usageCount = h.usageCount + :delta WHERE h.tag IN :ids", usesPerTag));
+    }
+
+    // Insert tags that were not found, in the current transaction. A concurrent writer may be inserting
+    // the same tag: the duplicate key is rolled back to a savepoint, so the transaction goes on with the
+    // other writer's row. Plain JDBC, because a failed JPA statement would mark the transaction for rollback.
+    // The tags join the cache once the transaction commits.
+    private void insertMissing(Collection<String> tags) {
+        List<String> inserted = new ArrayList<>(tags);
+        afterCommit(() -> inserted.forEach(cache::add));
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            Savepoint batch = connection.setSavepoint();
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_TAG)) {
+                for (String tag : tags) {
+                    insert.setString(1, tag);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                connection.releaseSavepoint(batch);
+                return;
+            } catch (SQLException e) {
+                if (!isDuplicateKey(e)) {
+                    throw e;
+                }
+                connection.rollback(batch);
+            }
+
+            // someone else created one of the tags: insert them one at a time, skipping the duplicates
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_TAG)) {
+                for (String tag : tags) {
+                    Savepoint single = connection.setSavepoint();
+                    try {
+                        insert.setString(1, tag);
+                        insert.executeUpdate();
+                        connection.releaseSavepoint(single);
+                    } catch (SQLException e) {
+                        if (!isDuplicateKey(e)) {
+                            throw e;
+                        }
+                        connection.rollback(single);
+                    }
+                }
+            }
+        });
     }
 
     // Find by tag
@@ -39,6 +195,36 @@ public class HashtagDAO extends GenericDAO<Hashtag> {
         return query.getResultList();
     }
 
+    // Tags used in the posts of each of the given users, with one query per 1000 users
+    public Map<Long, Set<String>> findHashtagsUsedByUsers(Collection<Long> userIds) {
+        Map<Long, Set<String>> tagsByUser = new HashMap<>();
+        List<Long> ids = new ArrayList<>(userIds);
+        for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + IN_CHUNK_SIZE));
+            addTagsByUser(tagsByUser, entityManager.createQuery(
+                            "SELECT DISTINCT p.author.id, h.tag FROM Post p JOIN p.hashtags h " +
+                                    "WHERE p.author.id IN :ids", Object[].class)
+                    .setParameter("ids", chunk)
+                    .getResultList());
+        }
+        return tagsByUser;
+    }
+
+    // Tags used by every author, in one query
+    public Map<Long, Set<String>> findHashtagsUsedByAllUsers() {
+        Map<Long, Set<String>> tagsByUser = new HashMap<>();
+        addTagsByUser(tagsByUser, entityManager.createQuery(
+                        "SELECT DISTINCT p.author.id, h.tag FROM Post p JOIN p.hashtags h", Object[].class)
+                .getResultList());
+        return tagsByUser;
+    }
+
+    private static void addTagsByUser(Map<Long, Set<String>> tagsByUser, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            tagsByUser.computeIfAbsent((Long) row[0], id -> new HashSet<>()).add((String) row[1]);
+        }
+    }
+
     // Find hashtags used by a user
     public List<Hashtag> findHashtagsUsedByUser(Long userId) {
         TypedQuery<Hashtag> query = entityManager.createQuery(
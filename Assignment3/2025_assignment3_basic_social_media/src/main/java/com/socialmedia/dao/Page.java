@@ -0,0 +1,48 @@
+package com.socialmedia.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+// A page of results plus the opaque cursor of the next page (null on the last page)
+public class Page<T> {
+
+    private final List<T> items;
+    private final String nextCursor;
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+
+    // Build a page from up to limit + 1 rows: the extra row only tells that there is a next page
+    public static <T> Page<T> of(List<T> rows, int limit, Function<T, String> cursorOf) {
+        if (rows.size() <= limit) {
+            return new Page<>(rows, null);
+        }
+        List<T> items = new ArrayList<>(rows.subList(0, limit));
+        return new Page<>(items, cursorOf.apply(items.get(limit - 1)));
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    public String toString() {
+        return "Page{size=" + items.size() + ", hasNext=" + hasNext() + "}";
+    }
+}
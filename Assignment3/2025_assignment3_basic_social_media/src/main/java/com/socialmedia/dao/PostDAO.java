@@ -1,19 +1,49 @@
 package com.socialmedia.dao;
 
+import com.socialmedia.dto.PostSummary;
+import com.socialmedia.dto.Snippets;
 import com.socialmedia.entities.Hashtag;
 import com.socialmedia.entities.Post;
 import com.socialmedia.entities.User;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
+import java.sql.PreparedStatement;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class PostDAO extends GenericDAO<Post> {
 
+    // Projection for listings: one query, nothing enters the persistence context
+    private static final String SELECT_SUMMARY =
+            "SELECT NEW com.socialmedia.dto.PostSummary(p.id, a.id, a.username, " +
+                    "SUBSTRING(p.content, 1, " + (Snippets.LENGTH + 1) + "), p.postType, " +
+                    "p.likeCount, p.commentCount, p.timestamp) FROM Post p JOIN p.author a ";
+
     public PostDAO(EntityManager entityManager) {
         super(entityManager, Post.class);
     }
 
+    // Bulk inserts (createAll) count the hashtag uses once per chunk.
+    // The hashtags must already exist; the in-memory counters of the Hashtag objects are not used.
+    @Override
+    protected void afterChunk(List<Post> chunk) {
+        Map<String, Integer> usesPerTag = new HashMap<>();
+        for (Post post : chunk) {
+            for (Hashtag hashtag : post.getHashtags()) {
+                usesPerTag.merge(hashtag.getTag(), 1, Integer::sum);
+            }
+        }
+        addToCounter("UPDATE Hashtag h SET h.usageCount = h.usageCount + :delta WHERE h.tag IN :ids", usesPerTag);
+    }
+
     // Find posts by author
     public List<Post> findByAuthor(Long userId) {
         TypedQuery<Post> query = entityManager.createQuery(
@@ -22,6 +52,20 @@ public class PostDAO extends GenericDAO<Post> {
         return query.getResultList();
     }
 
+    public Page<Post> findByAuthor(Long userId, String cursor, int limit) {
+        TypedQuery<Post> query = createNewestFirstQuery(
+                "SELECT p FROM Post p WHERE p.author.id = :userId", "p", Cursor.decode(cursor), limit, Post.class);
+        query.setParameter("userId", userId);
+        return toPage(query.getResultList(), limit);
+    }
+
+    public Page<PostSummary> findSummariesByAuthor(Long userId, String cursor, int limit) {
+        TypedQuery<PostSummary> query = createNewestFirstQuery(
+                SELECT_SUMMARY + "WHERE a.id = :userId", "p", Cursor.decode(cursor), limit, PostSummary.class);
+        query.setParameter("userId", userId);
+        return toSummaryPage(query.getResultList(), limit);
+    }
+
     // Find posts with specific hashtag
     public List<Post> findByHashtag(String hashtag) {
         TypedQuery<Post> query = entityManager.createQuery(
@@ -30,13 +74,28 @@ public class PostDAO extends GenericDAO<Post> {
         return query.getResultList();
     }
 
+    public Page<Post> findByHashtag(String hashtag, String cursor, int limit) {
+        TypedQuery<Post> query = createNewestFirstQuery(
+                "SELECT p FROM Post p JOIN p.hashtags h WHERE h.tag = :hashtag", "p", Cursor.decode(cursor), limit,
+                Post.class);
+        query.setParameter("hashtag", hashtag);
+        return toPage(query.getResultList(), limit);
+    }
+
+    public Page<PostSummary> findSummariesByHashtag(String hashtag, String cursor, int limit) {
+        TypedQuery<PostSummary> query = createNewestFirstQuery(
+                SELECT_SUMMARY + "JOIN p.hashtags h WHERE h.tag = :hashtag", "p", Cursor.decode(cursor), limit,
+                PostSummary.class);
+        query.setParameter("hashtag", hashtag);
+        return toSummaryPage(query.getResultList(), limit);
+    }
+
     // Find trending posts (most liked)
     public List<Post> findTrendingPosts(int limit) {
         TypedQuery<Post> query = entityManager.createQuery(
-                "SELECT p FROM Post p LEFT JOIN p.likedBy l " +
+                "SELECT p FROM Post p " +
                         "WHERE p.isPublic = true " +
-                        "GROUP BY p " +
-                        "ORDER BY COUNT(l) DESC, p.timestamp DESC", Post.class);
+                        "ORDER BY p.likeCount DESC, p.timestamp DESC", Post.class);
         query.setMaxResults(limit);
         return query.getResultList();
     }
@@ -50,6 +109,15 @@ public class PostDAO extends GenericDAO<Post> {
         return query.getResultList();
     }
 
+    public Page<Post> findPostsBetweenDates(LocalDateTime start, LocalDateTime end, String cursor, int limit) {
+        TypedQuery<Post> query = createNewestFirstQuery(
+                "SELECT p FROM Post p WHERE p.timestamp BETWEEN :start AND :end", "p", Cursor.decode(cursor), limit,
+                Post.class);
+        query.setParameter("start", start);
+        query.setParameter("end", end);
+        return toPage(query.getResultList(), limit);
+    }
+
     // Find posts liked by a user
     public List<Post> findPostsLikedByUser(Long userId) {
         TypedQuery<Post> query = entityManager.createQuery(
@@ -58,6 +126,172 @@ public class PostDAO extends GenericDAO<Post> {
         return query.getResultList();
     }
 
+    public Page<Post> findPostsLikedByUser(Long userId, String cursor, int limit) {
+        TypedQuery<Post> query = createNewestFirstQuery(
+                "SELECT p FROM Post p JOIN p.likedBy u WHERE u.id = :userId", "p", Cursor.decode(cursor), limit,
+                Post.class);
+        query.setParameter("userId", userId);
+        return toPage(query.getResultList(), limit);
+    }
+
+    public Page<PostSummary> findSummariesLikedByUser(Long userId, String cursor, int limit) {
+        TypedQuery<PostSummary> query = createNewestFirstQuery(
+                SELECT_SUMMARY + "JOIN p.likedBy u WHERE u.id = :userId", "p", Cursor.decode(cursor), limit,
+                PostSummary.class);
+        query.setParameter("userId", userId);
+        return toSummaryPage(query.getResultList(), limit);
+    }
+
+    // Like a post: the row goes straight into post_likes without loading likedBy,
+    // and likeCount is incremented in the same transaction.
+    // Returns false if the post was already liked (by a concurrent request too), or the post or the user do not exist.
+    public boolean like(Long postId, Long userId) {
+        boolean liked = computeInsideTransaction(em -> {
+            boolean inserted = insertIfAbsent(
+                    "INSERT INTO post_likes (post_id, user_id) " +
+                            "SELECT p.id, u.id FROM posts p, users u " +
+                            "WHERE p.id = ? AND u.id = ? " +
+                            "AND NOT EXISTS (" +
+                            "  SELECT 1 FROM post_likes l WHERE l.post_id = ? AND l.user_id = ?" +
+                            ")", postId, userId, postId, userId);
+            if (inserted) {
+                updateLikeCount(em, postId, 1);
+            }
+            return inserted;
+        });
+        if (liked) {
+            evict(postId);
+        }
+        return liked;
+    }
+
+    // Returns false if the post was not liked by the user
+    public boolean unlike(Long postId, Long userId) {
+        boolean unliked = computeInsideTransaction(em -> {
+            int deleted = em.createNativeQuery(
+                    "DELETE FROM post_likes WHERE post_id = :postId AND user_id = :userId")
+                    .unwrap(NativeQuery.class)
+                    .addSynchronizedQuerySpace("post_likes")
+                    .setParameter("postId", postId)
+                    .setParameter("userId", userId)
+                    .executeUpdate();
+            if (deleted > 0) {
+                updateLikeCount(em, postId, -deleted);
+            }
+            return deleted > 0;
+        });
+        if (unliked) {
+            evict(postId);
+        }
+        return unliked;
+    }
+
+    // Likes as (post id, user id) pairs, for bulk loads: one JDBC batch, skipping the likes that already exist,
+    // and one counter update per distinct delta. Returns the number of likes added.
+    public int likeAll(List<long[]> likes) {
+        if (likes.isEmpty()) {
+            return 0;
+        }
+        return computeInsideTransaction(em -> {
+            int[] inserted = new int[likes.size()];
+            em.unwrap(Session.class).doWork(connection -> {
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO post_likes (post_id, user_id) SELECT ?, ? WHERE NOT EXISTS (" +
+                                "SELECT 1 FROM post_likes l WHERE l.post_id = ? AND l.user_id = ?)")) {
+                    for (long[] like : likes) {
+                        insert.setLong(1, like[0]);
+                        insert.setLong(2, like[1]);
+                        insert.setLong(3, like[0]);
+                        insert.setLong(4, like[1]);
+                        insert.addBatch();
+                    }
+                    System.arraycopy(insert.executeBatch(), 0, inserted, 0, inserted.length);
+                }
+            });
+            Map<Long, Integer> likesPerPost = new HashMap<>();
+            int added = 0;
+            for (int i = 0; i < inserted.length; i++) {
+                if (inserted[i] > 0) {
+                    likesPerPost.merge(likes.get(i)[0], 1, Integer::sum);
+                    added++;
+                }
+            }
+            addToCounter("UPDATE Post p SET p.likeCount = p.likeCount + :delta WHERE p.id IN :ids", likesPerPost);
+            return added;
+        });
+    }
+
+    // Hashtags of existing posts, for parallel bulk loads: one JDBC batch into post_hashtags, without counting
+    // the uses. Counting them here would have every loading thread waiting on the rows of the hot tags; the
+    // caller adds them up and applies them once with HashtagDAO.addUsage. The hashtags must already exist.
+    public void tagAll(Map<Long, ? extends Collection<String>> tagsByPost) {
+        if (tagsByPost.isEmpty()) {
+            return;
+        }
+        executeInsideTransaction(em -> em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO post_hashtags (post_id, hashtag_id) VALUES (?, ?)")) {
+                for (Map.Entry<Long, ? extends Collection<String>> post : tagsByPost.entrySet()) {
+                    for (String tag : post.getValue()) {
+                        insert.setLong(1, post.getKey());
+                        insert.setString(2, tag);
+                        insert.addBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+        }));
+    }
+
+    // Delete a post with its comments, their replies, its likes and hashtag links, in the caller's transaction,
+    // with set-based statements like UserDAO.deleteWithContent instead of cascades through loaded entities.
+    // All the comments go with the post, so the only counters left to fix are the usage counts of its hashtags.
+    public DeletedRows deleteWithComments(Long postId) {
+        return computeInsideTransaction(em -> {
+            List<Long> postIds = Collections.singletonList(postId);
+            List<Long> commentIds = selectIn("SELECT c.id FROM Comment c WHERE c.post.id IN :ids", postIds, Long.class);
+            List<String> tags = selectIn("SELECT h.tag FROM Post p JOIN p.hashtags h WHERE p.id IN :ids", postIds,
+                    String.class);
+
+            executeIn("DELETE FROM post_likes WHERE post_id IN (:ids)", postIds, "post_likes");
+            executeIn("DELETE FROM post_hashtags WHERE post_id IN (:ids)", postIds, "post_hashtags");
+            executeIn("UPDATE comments SET parent_comment_id = NULL WHERE id IN (:ids)", commentIds, "comments");
+            executeIn("DELETE FROM comments WHERE id IN (:ids)", commentIds, "comments");
+            int posts = executeIn("DELETE FROM posts WHERE id IN (:ids)", postIds, "posts");
+
+            executeIn("UPDATE hashtags h SET usage_count = " +
+                    "(SELECT COUNT(*) FROM post_hashtags t WHERE t.hashtag_id = h.tag) WHERE h.tag IN (:ids)",
+                    tags, "hashtags");
+            return new DeletedRows(0, posts > 0 ? postIds : Collections.emptyList(), commentIds);
+        });
+    }
+
+    public boolean hasLiked(Long postId, Long userId) {
+        TypedQuery<Long> query = entityManager.createQuery(
+                "SELECT COUNT(u) FROM Post p JOIN p.likedBy u WHERE p.id = :postId AND u.id = :userId", Long.class);
+        query.setParameter("postId", postId);
+        query.setParameter("userId", userId);
+        return query.getSingleResult() > 0;
+    }
+
+    private static void updateLikeCount(EntityManager em, Long postId, int delta) {
+        em.createQuery("UPDATE Post p SET p.likeCount = p.likeCount + :delta WHERE p.id = :postId")
+                .setParameter("delta", delta)
+                .setParameter("postId", postId)
+                .executeUpdate();
+    }
+
+    // likeCount and likedBy were changed behind the persistence context: reload the managed copy,
+    // if there is one. getReference does not hit the database when the post is not loaded.
+    private void evict(Long postId) {
+        Post post = entityManager.getReference(Post.class, postId);
+        if (Hibernate.isInitialized(post)) {
+            entityManager.refresh(post);
+        } else {
+            entityManager.detach(post);
+        }
+    }
+
     // COMPLEX SEARCH: Find posts with multiple hashtags
     public List<Post> findPostsWithHashtags(List<String> hashtags) {
         TypedQuery<Post> query = entityManager.createQuery(
@@ -70,4 +304,64 @@ public class PostDAO extends GenericDAO<Post> {
         query.setParameter("tagCount", (long) hashtags.size());
         return query.getResultList();
     }
-}
\ No newline at end of file
+
+    // Find posts by ids, newest first
+    public List<Post> findByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TypedQuery<Post> query = entityManager.createQuery(
+                "SELECT p FROM Post p WHERE p.id IN :ids ORDER BY p.id DESC", Post.class);
+        query.setParameter("ids", ids);
+        return query.getResultList();
+    }
+
+    // Find posts by ids, in the order of the ids
+    public List<Post> findByIdsInOrder(List<Long> ids) {
+        return inOrder(ids, findByIds(ids), Post::getId);
+    }
+
+    // Summaries of posts by ids, newest first
+    public List<PostSummary> findSummariesByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TypedQuery<PostSummary> query = entityManager.createQuery(
+                SELECT_SUMMARY + "WHERE p.id IN :ids ORDER BY p.id DESC", PostSummary.class);
+        query.setParameter("ids", ids);
+        return query.getResultList();
+    }
+
+    public List<PostSummary> findSummariesByIdsInOrder(List<Long> ids) {
+        return inOrder(ids, findSummariesByIds(ids), PostSummary::getId);
+    }
+
+    // Engagement counters of the public posts written since a date: (id, timestamp, likeCount, commentCount)
+    public List<Object[]> findEngagementSince(LocalDateTime since) {
+        TypedQuery<Object[]> query = entityManager.createQuery(
+                "SELECT p.id, p.timestamp, p.likeCount, p.commentCount FROM Post p " +
+                        "WHERE p.isPublic = true AND p.timestamp >= :since " +
+                        "ORDER BY p.timestamp, p.id", Object[].class);
+        query.setParameter("since", since);
+        return query.getResultList();
+    }
+
+    // Latest posts written by the users someone follows, newest first: (id, timestamp)
+    public List<Object[]> findFeedPostKeys(Long userId, int limit) {
+        TypedQuery<Object[]> query = entityManager.createQuery(
+                "SELECT p.id, p.timestamp FROM Post p WHERE p.author.id IN (" +
+                        "  SELECT f.id FROM User u JOIN u.following f WHERE u.id = :userId" +
+                        ") ORDER BY p.timestamp DESC, p.id DESC", Object[].class);
+        query.setParameter("userId", userId);
+        query.setMaxResults(limit);
+        return query.getResultList();
+    }
+
+    private static Page<Post> toPage(List<Post> rows, int limit) {
+        return Page.of(rows, limit, post -> Cursor.encode(post.getTimestamp(), post.getId()));
+    }
+
+    private static Page<PostSummary> toSummaryPage(List<PostSummary> rows, int limit) {
+        return Page.of(rows, limit, post -> Cursor.encode(post.getTimestamp(), post.getId()));
+    }
+}
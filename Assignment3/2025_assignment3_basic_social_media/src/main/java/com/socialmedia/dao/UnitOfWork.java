@@ -0,0 +1,89 @@
+package com.socialmedia.dao;
+
+import com.socialmedia.metrics.Metrics;
+import com.socialmedia.metrics.UnitOfWorkProbe;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.util.function.Function;
+
+// Runs a unit of work on its own short-lived EntityManager from the shared factory.
+// EntityManagers are not thread-safe, but every call gets a new one, so a UnitOfWork can be shared
+// between threads. Entities returned by the work are detached: lazy associations must be read inside it.
+//
+// With metrics, the statements and transactions of every unit of work run inside a timed operation
+// (Metrics.time) are charged to that operation.
+public class UnitOfWork {
+
+    private final EntityManagerFactory emf;
+    private final Metrics metrics;
+
+    public UnitOfWork(EntityManagerFactory emf) {
+        this(emf, null);
+    }
+
+    // Metrics may be null
+    public UnitOfWork(EntityManagerFactory emf, Metrics metrics) {
+        this.emf = emf;
+        this.metrics = metrics;
+    }
+
+    public EntityManagerFactory getEntityManagerFactory() {
+        return emf;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    // Run the work in a transaction, committed when it returns and rolled back if it throws.
+    // DAO calls made by the work join this transaction.
+    public <R> R inTransaction(Function<EntityManager, R> work) {
+        EntityManager em = emf.createEntityManager();
+        UnitOfWorkProbe probe = startProbe(em);
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            R result = work.apply(em);
+            tx.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } finally {
+            close(em, probe);
+        }
+    }
+
+    // Run read-only work without a transaction
+    public <R> R read(Function<EntityManager, R> work) {
+        return withEntityManager(work);
+    }
+
+    // Run work that manages its own transactions, like the chunked bulk inserts
+    public <R> R withEntityManager(Function<EntityManager, R> work) {
+        EntityManager em = emf.createEntityManager();
+        UnitOfWorkProbe probe = startProbe(em);
+        try {
+            return work.apply(em);
+        } finally {
+            close(em, probe);
+        }
+    }
+
+    private UnitOfWorkProbe startProbe(EntityManager em) {
+        return metrics != null ? metrics.start(em) : null;
+    }
+
+    private static void close(EntityManager em, UnitOfWorkProbe probe) {
+        try {
+            if (probe != null) {
+                probe.finish(em);
+            }
+        } finally {
+            em.close();
+        }
+    }
+}
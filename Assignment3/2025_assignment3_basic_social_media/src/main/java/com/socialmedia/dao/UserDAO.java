@@ -1,10 +1,24 @@
 package com.socialmedia.dao;
 
+import com.socialmedia.dto.UserSummary;
 import com.socialmedia.entities.User;
+import org.hibernate.Session;
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.query.NativeQuery;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.TypedQuery;
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 public class UserDAO extends GenericDAO<User> {
 
@@ -13,15 +27,9 @@ public class UserDAO extends GenericDAO<User> {
     }
 
     // Find by username
+    // username is the natural id: resolved through the natural-id cache, then the users cache
     public User findByUsername(String username) {
-        try {
-            TypedQuery<User> query = entityManager.createQuery(
-                    "SELECT u FROM User u WHERE u.username = :username", User.class);
-            query.setParameter("username", username);
-            return query.getSingleResult();
-        } catch (NoResultException e) {
-            return null;
-        }
+        return entityManager.unwrap(Session.class).bySimpleNaturalId(User.class).load(username);
     }
 
     // Find by email
@@ -30,6 +38,8 @@ public class UserDAO extends GenericDAO<User> {
             TypedQuery<User> query = entityManager.createQuery(
                     "SELECT u FROM User u WHERE u.email = :email", User.class);
             query.setParameter("email", email);
+            // in the query cache, invalidated by any change to the users table
+            query.setHint(QueryHints.CACHEABLE, true);
             return query.getSingleResult();
         } catch (NoResultException e) {
             return null;
@@ -60,6 +70,17 @@ public class UserDAO extends GenericDAO<User> {
         return query.getResultList();
     }
 
+    public Page<User> findFollowers(Long userId, String cursor, int limit) {
+        return findFollowPage("SELECT u FROM User u JOIN u.following f WHERE f.id = :userId", "u",
+                userId, cursor, limit, User.class, User::getId);
+    }
+
+    public Page<UserSummary> findFollowerSummaries(Long userId, String cursor, int limit) {
+        return findFollowPage("SELECT NEW com.socialmedia.dto.UserSummary(u.id, u.username, u.joinDate) " +
+                        "FROM User u JOIN u.following f WHERE f.id = :userId", "u",
+                userId, cursor, limit, UserSummary.class, UserSummary::getId);
+    }
+
     // Find users following a user
     public List<User> findFollowing(Long userId) {
         TypedQuery<User> query = entityManager.createQuery(
@@ -67,4 +88,212 @@ public class UserDAO extends GenericDAO<User> {
         query.setParameter("userId", userId);
         return query.getResultList();
     }
+
+    public Page<User> findFollowing(Long userId, String cursor, int limit) {
+        return findFollowPage("SELECT f FROM User u JOIN u.following f WHERE u.id = :userId", "f",
+                userId, cursor, limit, User.class, User::getId);
+    }
+
+    public Page<UserSummary> findFollowingSummaries(Long userId, String cursor, int limit) {
+        return findFollowPage("SELECT NEW com.socialmedia.dto.UserSummary(f.id, f.username, f.joinDate) " +
+                        "FROM User u JOIN u.following f WHERE u.id = :userId", "f",
+                userId, cursor, limit, UserSummary.class, UserSummary::getId);
+    }
+
+    // Follow edges carry no timestamp, so follower lists are paged by user id
+    private <E> Page<E> findFollowPage(String jpql, String alias, Long userId, String cursor, int limit,
+                                       Class<E> resultClass, Function<E, Long> idOf) {
+        checkLimit(limit);
+        Cursor after = Cursor.decode(cursor);
+        if (after != null) {
+            jpql += " AND " + alias + ".id > :cursorId";
+        }
+        TypedQuery<E> query = entityManager.createQuery(jpql + " ORDER BY " + alias + ".id", resultClass);
+        query.setParameter("userId", userId);
+        if (after != null) {
+            query.setParameter("cursorId", after.getId());
+        }
+        query.setMaxResults(limit + 1);
+        return Page.of(query.getResultList(), limit, row -> Cursor.encode(null, idOf.apply(row)));
+    }
+
+    // Follow a user: the row goes straight into user_following, without loading the following
+    // and followers sets of the two users.
+    // Returns false if the edge was already there (added by a concurrent request too), or one of the users
+    // does not exist.
+    public boolean follow(Long followerId, Long followedId) {
+        return computeInsideTransaction(em -> insertIfAbsent(
+                "INSERT INTO user_following (follower_id, followed_id) " +
+                        "SELECT f.id, u.id FROM users f, users u " +
+                        "WHERE f.id = ? AND u.id = ? " +
+                        "AND NOT EXISTS (" +
+                        "  SELECT 1 FROM user_following e WHERE e.follower_id = ? AND e.followed_id = ?" +
+                        ")", followerId, followedId, followerId, followedId));
+    }
+
+    // Returns false if there was no such edge
+    public boolean unfollow(Long followerId, Long followedId) {
+        return computeInsideTransaction(em -> em.createNativeQuery(
+                        "DELETE FROM user_following WHERE follower_id = :followerId AND followed_id = :followedId")
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace("user_following")
+                .setParameter("followerId", followerId)
+                .setParameter("followedId", followedId)
+                .executeUpdate() > 0);
+    }
+
+    // Follow edges as (follower id, followed id) pairs, for bulk loads: one JDBC batch, skipping the edges
+    // that already exist. Returns the number of edges added.
+    public int followAll(List<long[]> edges) {
+        if (edges.isEmpty()) {
+            return 0;
+        }
+        return computeInsideTransaction(em -> {
+            int[] added = new int[1];
+            em.unwrap(Session.class).doWork(connection -> {
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO user_following (follower_id, followed_id) SELECT ?, ? WHERE NOT EXISTS (" +
+                                "SELECT 1 FROM user_following e WHERE e.follower_id = ? AND e.followed_id = ?)")) {
+                    for (long[] edge : edges) {
+                        insert.setLong(1, edge[0]);
+                        insert.setLong(2, edge[1]);
+                        insert.setLong(3, edge[0]);
+                        insert.setLong(4, edge[1]);
+                        insert.addBatch();
+                    }
+                    for (int count : insert.executeBatch()) {
+                        added[0] += Math.max(0, count);
+                    }
+                }
+            });
+            return added[0];
+        });
+    }
+
+    // Locations of the given regular users (admins have none), with one query per 1000 users
+    public Map<Long, String> findLocations(Collection<Long> userIds) {
+        Map<Long, String> locations = new HashMap<>();
+        List<Long> ids = new ArrayList<>(userIds);
+        for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + IN_CHUNK_SIZE));
+            addLocations(locations, entityManager.createQuery(
+                            "SELECT u.id, u.location FROM RegularUser u " +
+                                    "WHERE u.id IN :ids AND u.location IS NOT NULL", Object[].class)
+                    .setParameter("ids", chunk)
+                    .getResultList());
+        }
+        return locations;
+    }
+
+    public Map<Long, String> findAllLocations() {
+        Map<Long, String> locations = new HashMap<>();
+        addLocations(locations, entityManager.createQuery(
+                        "SELECT u.id, u.location FROM RegularUser u WHERE u.location IS NOT NULL", Object[].class)
+                .getResultList());
+        return locations;
+    }
+
+    private static void addLocations(Map<Long, String> locations, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            locations.put((Long) row[0], (String) row[1]);
+        }
+    }
+
+    // Users with no post and no comment after the date, by increasing id from afterId (excluded, null to start)
+    public List<Long> findInactiveUserIds(LocalDateTime lastActiveBefore, Long afterId, int limit) {
+        TypedQuery<Long> query = entityManager.createQuery(
+                "SELECT u.id FROM User u WHERE u.id > :afterId " +
+                        "AND NOT EXISTS (SELECT p FROM Post p WHERE p.author = u AND p.timestamp > :date) " +
+                        "AND NOT EXISTS (SELECT c FROM Comment c WHERE c.author = u AND c.timestamp > :date) " +
+                        "ORDER BY u.id", Long.class);
+        query.setParameter("afterId", afterId != null ? afterId : Long.MIN_VALUE);
+        query.setParameter("date", lastActiveBefore);
+        query.setMaxResults(limit);
+        return query.getResultList();
+    }
+
+    // Delete users with everything that depends on them, in the caller's transaction, with set-based
+    // statements instead of cascades through loaded entities: their posts, their comments, the comments
+    // on their posts and the replies to any of those, their likes and follow edges.
+    // The counters of the surviving rows that pointed at deleted ones are then recounted.
+    // Native statements declare their tables, so only the affected second-level cache regions are evicted.
+    public DeletedRows deleteWithContent(List<Long> userIds) {
+        return computeInsideTransaction(em -> {
+            List<Long> postIds = selectIn("SELECT p.id FROM Post p WHERE p.author.id IN :ids", userIds, Long.class);
+            Set<Long> commentIds = new LinkedHashSet<>(
+                    selectIn("SELECT c.id FROM Comment c WHERE c.author.id IN :ids", userIds, Long.class));
+            commentIds.addAll(selectIn("SELECT c.id FROM Comment c WHERE c.post.id IN :ids", postIds, Long.class));
+            List<Long> level = new ArrayList<>(commentIds);
+            while (!level.isEmpty()) {
+                level = selectIn("SELECT c.id FROM Comment c WHERE c.parentComment.id IN :ids", level, Long.class);
+                level.removeIf(id -> !commentIds.add(id));
+            }
+
+            // surviving rows whose counters include deleted ones
+            Set<Long> likedPosts = new HashSet<>(
+                    selectIn("SELECT p.id FROM Post p JOIN p.likedBy u WHERE u.id IN :ids", userIds, Long.class));
+            Set<String> tags = new HashSet<>(
+                    selectIn("SELECT h.tag FROM Post p JOIN p.hashtags h WHERE p.id IN :ids", postIds, String.class));
+            Set<Long> parentComments = new HashSet<>(selectIn(
+                    "SELECT c.parentComment.id FROM Comment c WHERE c.id IN :ids AND c.parentComment IS NOT NULL",
+                    commentIds, Long.class));
+            Set<Long> commentedPosts = new HashSet<>(
+                    selectIn("SELECT c.post.id FROM Comment c WHERE c.id IN :ids", commentIds, Long.class));
+            likedPosts.removeAll(postIds);
+            commentedPosts.removeAll(postIds);
+            parentComments.removeAll(commentIds);
+
+            // dependents first
+            executeIn("DELETE FROM post_likes WHERE user_id IN (:ids)", userIds, "post_likes");
+            executeIn("DELETE FROM post_likes WHERE post_id IN (:ids)", postIds, "post_likes");
+            executeIn("DELETE FROM post_hashtags WHERE post_id IN (:ids)", postIds, "post_hashtags");
+            // no comment is left pointing at a deleted parent, whatever the order of the chunks
+            executeIn("UPDATE comments SET parent_comment_id = NULL WHERE id IN (:ids)", commentIds, "comments");
+            executeIn("DELETE FROM comments WHERE id IN (:ids)", commentIds, "comments");
+            executeIn("DELETE FROM posts WHERE id IN (:ids)", postIds, "posts");
+            executeIn("DELETE FROM user_following WHERE follower_id IN (:ids)", userIds, "user_following");
+            executeIn("DELETE FROM user_following WHERE followed_id IN (:ids)", userIds, "user_following");
+            executeIn("DELETE FROM regular_users WHERE user_id IN (:ids)", userIds, "regular_users");
+            executeIn("DELETE FROM admin_users WHERE user_id IN (:ids)", userIds, "admin_users");
+            // ids with no user are not counted
+            int users = executeIn("DELETE FROM users WHERE id IN (:ids)", userIds, "users");
+
+            // reply counts first: the replied comment counts of the posts depend on them
+            executeIn("UPDATE comments c SET reply_count = " +
+                    "(SELECT COUNT(*) FROM comments r WHERE r.parent_comment_id = c.id) WHERE c.id IN (:ids)",
+                    parentComments, "comments");
+            executeIn("UPDATE posts p SET " +
+                    "comment_count = (SELECT COUNT(*) FROM comments c WHERE c.post_id = p.id), " +
+                    "replied_comment_count = " +
+                    "(SELECT COUNT(*) FROM comments c WHERE c.post_id = p.id AND c.reply_count > 0) " +
+                    "WHERE p.id IN (:ids)", commentedPosts, "posts");
+            executeIn("UPDATE posts p SET like_count = " +
+                    "(SELECT COUNT(*) FROM post_likes l WHERE l.post_id = p.id) WHERE p.id IN (:ids)",
+                    likedPosts, "posts");
+            executeIn("UPDATE hashtags h SET usage_count = " +
+                    "(SELECT COUNT(*) FROM post_hashtags t WHERE t.hashtag_id = h.tag) WHERE h.tag IN (:ids)",
+                    tags, "hashtags");
+
+            return new DeletedRows(users, postIds, new ArrayList<>(commentIds));
+        });
+    }
+
+    // Find ids of the followers of a user, up to maxResults
+    public List<Long> findFollowerIds(Long userId, int maxResults) {
+        TypedQuery<Long> query = entityManager.createQuery(
+                "SELECT u.id FROM User u JOIN u.following f WHERE f.id = :userId", Long.class);
+        query.setParameter("userId", userId);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    // Find which of the given users are followed by a user
+    public List<Long> findFollowedIdsAmong(Long userId, Collection<Long> candidateIds) {
+        TypedQuery<Long> query = entityManager.createQuery(
+                "SELECT f.id FROM User u JOIN u.following f WHERE u.id = :userId AND f.id IN :candidateIds",
+                Long.class);
+        query.setParameter("userId", userId);
+        query.setParameter("candidateIds", candidateIds);
+        return query.getResultList();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.socialmedia.dto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Detached comment of a discussion thread with the replies loaded so far. Not an entity:
+// built from a projection, so rendering a thread does not touch lazy associations.
+public class CommentNode {
+
+    private final Long id;
+    private final Long parentId;
+    private final Long authorId;
+    private final String authorUsername;
+    private final String content;
+    private final LocalDateTime timestamp;
+    // all the direct replies, loaded or not
+    private final int replyCount;
+    private final List<CommentNode> replies = new ArrayList<>();
+
+    public CommentNode(Long id, Long parentId, Long authorId, String authorUsername, String content,
+                       LocalDateTime timestamp, int replyCount) {
+        this.id = id;
+        this.parentId = parentId;
+        this.authorId = authorId;
+        this.authorUsername = authorUsername;
+        this.content = content;
+        this.timestamp = timestamp;
+        this.replyCount = replyCount;
+    }
+
+    public void addReply(CommentNode reply) {
+        replies.add(reply);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getParentId() {
+        return parentId;
+    }
+
+    public Long getAuthorId() {
+        return authorId;
+    }
+
+    public String getAuthorUsername() {
+        return authorUsername;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public int getReplyCount() {
+        return replyCount;
+    }
+
+    public List<CommentNode> getReplies() {
+        return Collections.unmodifiableList(replies);
+    }
+
+    // Replies cut by the page size or the depth limit: load them with loadReplies
+    public boolean hasMoreReplies() {
+        return replies.size() < replyCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CommentNode{id=" + id + ", author='" + authorUsername + "', replies=" + replies.size() +
+                "/" + replyCount + "}";
+    }
+}
@@ -0,0 +1,59 @@
+package com.socialmedia.dto;
+
+import java.time.LocalDateTime;
+
+// Read-only row of a comment listing, from a constructor projection
+public class CommentSummary {
+
+    private final Long id;
+    private final Long postId;
+    private final Long authorId;
+    private final String authorUsername;
+    private final String snippet;
+    private final int replyCount;
+    private final LocalDateTime timestamp;
+
+    public CommentSummary(Long id, Long postId, Long authorId, String authorUsername, String content,
+                          int replyCount, LocalDateTime timestamp) {
+        this.id = id;
+        this.postId = postId;
+        this.authorId = authorId;
+        this.authorUsername = authorUsername;
+        this.snippet = Snippets.of(content, Snippets.LENGTH);
+        this.replyCount = replyCount;
+        this.timestamp = timestamp;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getPostId() {
+        return postId;
+    }
+
+    public Long getAuthorId() {
+        return authorId;
+    }
+
+    public String getAuthorUsername() {
+        return authorUsername;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public int getReplyCount() {
+        return replyCount;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "CommentSummary{id=" + id + ", post=" + postId + ", author='" + authorUsername + "'}";
+    }
+}
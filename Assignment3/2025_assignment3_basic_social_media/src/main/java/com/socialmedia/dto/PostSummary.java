@@ -0,0 +1,66 @@
+package com.socialmedia.dto;
+
+import java.time.LocalDateTime;
+
+// Read-only row of a feed or post listing, from a constructor projection: no managed state, no lazy loading
+public class PostSummary {
+
+    private final Long id;
+    private final Long authorId;
+    private final String authorUsername;
+    private final String snippet;
+    private final String postType;
+    private final int likeCount;
+    private final int commentCount;
+    private final LocalDateTime timestamp;
+
+    public PostSummary(Long id, Long authorId, String authorUsername, String content, String postType,
+                       int likeCount, int commentCount, LocalDateTime timestamp) {
+        this.id = id;
+        this.authorId = authorId;
+        this.authorUsername = authorUsername;
+        this.snippet = Snippets.of(content, Snippets.LENGTH);
+        this.postType = postType;
+        this.likeCount = likeCount;
+        this.commentCount = commentCount;
+        this.timestamp = timestamp;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getAuthorId() {
+        return authorId;
+    }
+
+    public String getAuthorUsername() {
+        return authorUsername;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public String getPostType() {
+        return postType;
+    }
+
+    public int getLikeCount() {
+        return likeCount;
+    }
+
+    public int getCommentCount() {
+        return commentCount;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "PostSummary{id=" + id + ", author='" + authorUsername + "', likes=" + likeCount +
+                ", comments=" + commentCount + "}";
+    }
+}
@@ -0,0 +1,20 @@
+package com.socialmedia.dto;
+
+// Content snippets of the summaries
+public final class Snippets {
+
+    // Characters of content shown in a listing. The projections read LENGTH + 1 characters, to tell whether
+    // the content was cut.
+    public static final int LENGTH = 140;
+
+    private Snippets() {
+    }
+
+    // The text cut to length characters, with an ellipsis when it was longer
+    static String of(String text, int length) {
+        if (text == null || text.length() <= length) {
+            return text;
+        }
+        return text.substring(0, length) + "…";
+    }
+}
@@ -0,0 +1,34 @@
+package com.socialmedia.dto;
+
+import java.time.LocalDate;
+
+// Read-only row of a user listing (followers, following), from a constructor projection
+public class UserSummary {
+
+    private final Long id;
+    private final String username;
+    private final LocalDate joinDate;
+
+    public UserSummary(Long id, String username, LocalDate joinDate) {
+        this.id = id;
+        this.username = username;
+        this.joinDate = joinDate;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public LocalDate getJoinDate() {
+        return joinDate;
+    }
+
+    @Override
+    public String toString() {
+        return "UserSummary{id=" + id + ", username='" + username + "'}";
+    }
+}
@@ -6,11 +6,15 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "comments")
+@Table(name = "comments", indexes = {
+        @Index(name = "idx_comments_post_timestamp", columnList = "post_id, timestamp, id"),
+        @Index(name = "idx_comments_author_timestamp", columnList = "author_id, timestamp, id")
+})
 public class Comment {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "comments_seq")
+    @SequenceGenerator(name = "comments_seq", sequenceName = "comments_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "content", length = 1000)
@@ -29,25 +33,31 @@ public class Comment {
     @JoinColumn(name = "author_id")
     private User author;
 
+    // Number of direct replies, maintained by CommentDAO.create
+    @Column(name = "reply_count", nullable = false, updatable = false)
+    private int replyCount = 0;
+
     // SELF-LOOP: Comment can have a parent comment
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "parent_comment_id")
     private Comment parentComment;
 
     // SELF-LOOP: Comment can have replies
-    @OneToMany(mappedBy = "parentComment", cascade = CascadeType.ALL)
+    // Every cascade but REFRESH: refreshing a parent (see CommentDAO.create) would load all of its replies
+    @OneToMany(mappedBy = "parentComment",
+            cascade = {CascadeType.PERSIST, CascadeType.MERGE, CascadeType.REMOVE, CascadeType.DETACH})
     private List<Comment> replies = new ArrayList<>();
 
     // Constructors
     public Comment() {
-        this.timestamp = LocalDateTime.now();
+        this.timestamp = Timestamps.now();
     }
 
     public Comment(String content, Post post, User author) {
         this.content = content;
         this.post = post;
         this.author = author;
-        this.timestamp = LocalDateTime.now();
+        this.timestamp = Timestamps.now();
     }
 
     // Helper method to add reply
@@ -105,6 +115,10 @@ public class Comment {
         this.parentComment = parentComment;
     }
 
+    public int getReplyCount() {
+        return replyCount;
+    }
+
     public List<Comment> getReplies() {
         return replies;
     }
@@ -116,7 +130,6 @@ public class Comment {
     @Override
     public String toString() {
         return "Comment{id=" + id + ", content='" + content.substring(0, Math.min(content.length(), 30)) +
-                "...', author=" + (author != null ? author.getUsername() : "null") +
-                ", replies=" + replies.size() + "}";
+                "...', author=" + User.describe(author) + ", replies=" + replyCount + "}";
     }
 }
\ No newline at end of file
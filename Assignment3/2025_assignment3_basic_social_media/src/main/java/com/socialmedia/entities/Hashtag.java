@@ -1,17 +1,23 @@
 package com.socialmedia.entities;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import javax.persistence.*;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
 @Table(name = "hashtags")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "hashtags")
 public class Hashtag {
 
     @Id
     private String tag; // e.g., "#Java", "#Programming"
 
-    @Column(name = "usage_count")
+    // Number of posts using the tag, maintained with bulk updates by HashtagDAO like the Post counters.
+    // The updates invalidate the second-level cache region when they commit.
+    @Column(name = "usage_count", nullable = false, updatable = false)
     private int usageCount = 0;
 
     // Many-to-Many: Hashtag used in many Posts
@@ -26,11 +32,6 @@ public class Hashtag {
         this.tag = tag;
     }
 
-    // Helper method to increment usage
-    public void incrementUsage() {
-        this.usageCount++;
-    }
-
     // Getters and Setters
     public String getTag() {
         return tag;
@@ -8,11 +8,17 @@ import java.util.List;
 import java.util.Set;
 
 @Entity
-@Table(name = "posts")
+@Table(name = "posts", indexes = {
+        @Index(name = "idx_posts_author_timestamp", columnList = "author_id, timestamp, id"),
+        @Index(name = "idx_posts_timestamp", columnList = "timestamp, id"),
+        @Index(name = "idx_posts_like_count", columnList = "like_count, timestamp"),
+        @Index(name = "idx_posts_comment_count", columnList = "comment_count, replied_comment_count")
+})
 public class Post {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "posts_seq")
+    @SequenceGenerator(name = "posts_seq", sequenceName = "posts_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "content", length = 2000)
@@ -27,6 +33,19 @@ public class Post {
     @Column(name = "is_public")
     private boolean isPublic = true;
 
+    // Number of rows in post_likes, maintained with atomic updates by PostDAO.like/unlike.
+    // Not updatable from the entity, so a stale copy can never overwrite it.
+    @Column(name = "like_count", nullable = false, updatable = false)
+    private int likeCount = 0;
+
+    // Number of comments (replies included) and of comments with at least one reply,
+    // maintained by CommentDAO.create in the same way as likeCount
+    @Column(name = "comment_count", nullable = false, updatable = false)
+    private int commentCount = 0;
+
+    @Column(name = "replied_comment_count", nullable = false, updatable = false)
+    private int repliedCommentCount = 0;
+
     // Many-to-One: Post belongs to a User
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "author_id", nullable = false)
@@ -56,14 +75,14 @@ public class Post {
 
     // Constructors
     public Post() {
-        this.timestamp = LocalDateTime.now();
+        this.timestamp = Timestamps.now();
     }
 
     public Post(String content, String postType, User author) {
         this.content = content;
         this.postType = postType;
         this.author = author;
-        this.timestamp = LocalDateTime.now();
+        this.timestamp = Timestamps.now();
     }
 
     // Getters and Setters
@@ -145,31 +164,27 @@ public class Post {
         this.comments.add(comment);
     }
 
+    // Owning side only: hashtag.getPosts() would load every post of the tag.
+    // The use is counted by HashtagDAO.resolveAll.
     public void addHashtag(Hashtag hashtag) {
         this.hashtags.add(hashtag);
-        hashtag.getPosts().add(this);
-        hashtag.incrementUsage();
-    }
-
-    public void like(User user) {
-        this.likedBy.add(user);
-    }
-
-    public void unlike(User user) {
-        this.likedBy.remove(user);
     }
 
     public int getLikeCount() {
-        return this.likedBy.size();
+        return likeCount;
     }
 
     public int getCommentCount() {
-        return this.comments.size();
+        return commentCount;
+    }
+
+    public int getRepliedCommentCount() {
+        return repliedCommentCount;
     }
 
     @Override
     public String toString() {
         return "Post{id=" + id + ", content='" + content.substring(0, Math.min(content.length(), 50)) +
-                "...', type='" + postType + "', author=" + (author != null ? author.getUsername() : "null") + "}";
+                "...', type='" + postType + "', author=" + User.describe(author) + "}";
     }
 }
\ No newline at end of file
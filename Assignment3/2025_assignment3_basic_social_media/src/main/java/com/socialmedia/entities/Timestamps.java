@@ -0,0 +1,15 @@
+package com.socialmedia.entities;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+final class Timestamps {
+
+    private Timestamps() {
+    }
+
+    // Same precision as the timestamp columns, so that in-memory and stored values compare equal
+    static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+    }
+}
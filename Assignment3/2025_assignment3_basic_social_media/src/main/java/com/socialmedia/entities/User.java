@@ -1,5 +1,11 @@
 package com.socialmedia.entities;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.proxy.HibernateProxy;
 import javax.persistence.*;
 import java.time.LocalDate;
 import java.util.HashSet;
@@ -8,11 +14,17 @@ import java.util.Set;
 @Entity
 @Table(name = "users") // "user" is reserved in SQL
 @Inheritance(strategy = InheritanceType.JOINED)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
+@NaturalIdCache(region = "users-natural-id")
 public abstract class User {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence: ids are allocated 50 at a time, so inserts can be batched (IDENTITY disables batching)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     private Long id;
 
+    @NaturalId(mutable = true)
     @Column(unique = true, nullable = false, length = 50)
     private String username;
 
@@ -144,4 +156,16 @@ public abstract class User {
     public String toString() {
         return "User [id=" + id + ", username=" + username + ", email=" + email + "]";
     }
+
+    // For the toString of the entities pointing at a user: the username if the user is loaded, else its id.
+    // Reading the username of a lazy proxy would run a query, or fail once the proxy is detached.
+    static String describe(User user) {
+        if (user == null) {
+            return "null";
+        }
+        if (Hibernate.isInitialized(user)) {
+            return user.getUsername();
+        }
+        return "#" + ((HibernateProxy) user).getHibernateLazyInitializer().getIdentifier();
+    }
 }
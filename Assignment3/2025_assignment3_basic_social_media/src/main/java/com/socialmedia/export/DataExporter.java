@@ -0,0 +1,152 @@
+package com.socialmedia.export;
+
+import com.socialmedia.dao.UnitOfWork;
+import org.hibernate.annotations.QueryHints;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+// Streams the tables out as NDJSON or CSV with a heap use that does not depend on the row count.
+// Rows come from forward-only result streams (Hibernate scrolls them) read fetch size rows at a time;
+// they are scalar projections, so the persistence context stays empty and never needs clearing.
+// Text goes through a fixed size buffer, and optionally gzip, straight to the channel.
+public class DataExporter {
+
+    private static final int SCAN_FETCH_SIZE = 1_000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final UnitOfWork unitOfWork;
+
+    public DataExporter(UnitOfWork unitOfWork) {
+        this.unitOfWork = unitOfWork;
+    }
+
+    // One file per table in the directory, named after the table, e.g. posts.ndjson.gz.
+    // All the tables are read in one transaction, so the files agree with each other as far as the
+    // isolation level allows.
+    public ExportResult exportAll(Path directory, ExportFormat format, boolean gzip) {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Map<ExportTable, Long> rows = new EnumMap<>(ExportTable.class);
+        long bytes = unitOfWork.read(em -> {
+            long written = 0;
+            for (ExportTable table : ExportTable.values()) {
+                Path file = directory.resolve(fileName(table, format, gzip));
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    rows.put(table, write(em, table, channel, format, gzip));
+                    written += channel.size();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return written;
+        });
+        return new ExportResult(rows, bytes, System.nanoTime() - start);
+    }
+
+    // One table into a channel owned by the caller, left open. Returns the number of records.
+    public long export(ExportTable table, WritableByteChannel channel, ExportFormat format, boolean gzip) {
+        return unitOfWork.read(em -> {
+            try {
+                return write(em, table, channel, format, gzip);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    public static String fileName(ExportTable table, ExportFormat format, boolean gzip) {
+        return table.getFileName() + "." + format.getExtension() + (gzip ? ".gz" : "");
+    }
+
+    private long write(EntityManager em, ExportTable table, WritableByteChannel channel, ExportFormat format,
+                       boolean gzip) throws IOException {
+        // not closed: closing the streams would close the channel
+        OutputStream bytes = Channels.newOutputStream(channel);
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(bytes, BUFFER_SIZE) : null;
+        Writer text = new BufferedWriter(
+                new OutputStreamWriter(gzip ? compressed : bytes, StandardCharsets.UTF_8), BUFFER_SIZE);
+        RecordWriter out = RecordWriter.of(format, text, table.getColumns());
+
+        long count = 0;
+        try (Stream<?> rows = scan(em, table)) {
+            Iterator<?> iterator = rows.iterator();
+            if (table == ExportTable.POSTS) {
+                count = writePosts(iterator, out);
+            } else {
+                while (iterator.hasNext()) {
+                    Object row = iterator.next();
+                    out.write(row instanceof Object[] ? (Object[]) row : new Object[] {row});
+                    count++;
+                }
+            }
+        }
+        text.flush();
+        if (compressed != null) {
+            compressed.finish();
+        }
+        return count;
+    }
+
+    // Rows come ordered by post, one per hashtag: the tags of consecutive rows are collected into a list.
+    // Only the current post is held in memory.
+    private static long writePosts(Iterator<?> rows, RecordWriter out) throws IOException {
+        long count = 0;
+        Object[] post = null;
+        List<String> tags = null;
+        while (rows.hasNext()) {
+            Object[] row = (Object[]) rows.next();
+            int last = row.length - 1;
+            if (post == null || !post[0].equals(row[0])) {
+                if (post != null) {
+                    out.write(post);
+                    count++;
+                }
+                post = row.clone();
+                tags = new ArrayList<>();
+                post[last] = tags;
+            }
+            if (row[last] != null) {
+                tags.add((String) row[last]);
+            }
+        }
+        if (post != null) {
+            out.write(post);
+            count++;
+        }
+        return count;
+    }
+
+    private static Stream<?> scan(EntityManager em, ExportTable table) {
+        Query query = table.isNativeQuery()
+                ? em.createNativeQuery(table.getQuery())
+                : em.createQuery(table.getQuery());
+        return query.setHint(QueryHints.FETCH_SIZE, SCAN_FETCH_SIZE)
+                .setHint(QueryHints.READ_ONLY, true)
+                .getResultStream();
+    }
+}
@@ -0,0 +1,396 @@
+package com.socialmedia.export;
+
+import com.socialmedia.dao.CommentDAO;
+import com.socialmedia.dao.HashtagCache;
+import com.socialmedia.dao.HashtagDAO;
+import com.socialmedia.dao.PostDAO;
+import com.socialmedia.dao.UnitOfWork;
+import com.socialmedia.dao.UserDAO;
+import com.socialmedia.entities.AdminUser;
+import com.socialmedia.entities.Comment;
+import com.socialmedia.entities.Hashtag;
+import com.socialmedia.entities.Post;
+import com.socialmedia.entities.RegularUser;
+import com.socialmedia.entities.User;
+import com.socialmedia.util.LongLongHashMap;
+import javax.persistence.EntityManager;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+// Loads files in the DataExporter layout (one per table, NDJSON or CSV, optionally gzipped) into the
+// database, for migrations of millions of rows. The ids in the files are external: every user, post and
+// comment gets a generated id, and references are translated through primitive maps.
+//
+// Each table is a two-stage pipeline: a parser thread streams the file into batches of records and hands
+// them over a bounded queue to the calling thread, which writes each batch in one transaction with JDBC
+// batched inserts (createAll for the entities, likeAll and followAll for the edges). Counters are built
+// from the imported rows; the counter columns of the files are ignored.
+//
+// Every committed batch is recorded in a checkpoint file: a run over the same files with the same
+// checkpoint skips what was already written, so a failed or killed import resumes where it stopped.
+// Records that refer to a user, post or comment missing from the import are rejected and counted.
+public class DataImporter {
+
+    private static final int BATCH_SIZE = 1_000;
+    // parsed batches waiting for the writer: enough to smooth out slow commits, bounded to keep the heap flat
+    private static final int QUEUE_CAPACITY = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // end of the records of a table, compared by identity
+    private static final List<Map<String, Object>> END = Collections.unmodifiableList(new ArrayList<>());
+
+    private final UnitOfWork unitOfWork;
+    private final HashtagCache hashtagCache;
+
+    public DataImporter(UnitOfWork unitOfWork, HashtagCache hashtagCache) {
+        this.unitOfWork = unitOfWork;
+        this.hashtagCache = hashtagCache;
+    }
+
+    // Tables are loaded in dependency order; a table with no file in the directory is skipped
+    public ImportResult importAll(Path directory, ExportFormat format, boolean gzip, Path checkpointFile) {
+        long start = System.nanoTime();
+        Progress progress = new Progress();
+        try (ImportCheckpoint checkpoint = ImportCheckpoint.open(checkpointFile, this::exists)) {
+            for (ExportTable table : ExportTable.values()) {
+                Path file = directory.resolve(DataExporter.fileName(table, format, gzip));
+                if (Files.exists(file)) {
+                    importTable(table, file, format, gzip, checkpoint, progress);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ImportResult(progress.rows, progress.rejected, progress.resumed, progress.batches,
+                System.nanoTime() - start);
+    }
+
+    private void importTable(ExportTable table, Path file, ExportFormat format, boolean gzip,
+                             ImportCheckpoint checkpoint, Progress progress) {
+        long consumed = checkpoint.getConsumed(table);
+        progress.resumed += consumed;
+        BlockingQueue<List<Map<String, Object>>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicReference<Exception> parseFailure = new AtomicReference<>();
+        Thread parser = new Thread(() -> parse(file, format, gzip, consumed, queue, parseFailure),
+                "import-parser-" + table.getFileName());
+        parser.setDaemon(true);
+        parser.start();
+        try {
+            long done = consumed;
+            for (List<Map<String, Object>> batch = queue.take(); batch != END; batch = queue.take()) {
+                done += batch.size();
+                write(table, batch, done, checkpoint, progress);
+                progress.batches++;
+            }
+            Exception failure = parseFailure.get();
+            if (failure != null) {
+                throw new IllegalStateException("Cannot read " + file + ": " + failure.getMessage(), failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import of " + file + " interrupted", e);
+        } finally {
+            // stops a parser blocked on the queue when the writer failed
+            parser.interrupt();
+        }
+    }
+
+    // Parser stage: skips the records written by previous runs, then hands out batches until the end,
+    // which is always signalled, after a failure too
+    private static void parse(Path file, ExportFormat format, boolean gzip, long skip,
+                              BlockingQueue<List<Map<String, Object>>> queue, AtomicReference<Exception> failure) {
+        try {
+            try (Reader in = open(file, gzip)) {
+                RecordReader reader = RecordReader.of(format, in);
+                for (long i = 0; i < skip && reader.next() != null; i++) {
+                    // already imported
+                }
+                List<Map<String, Object>> batch = new ArrayList<>(BATCH_SIZE);
+                for (Map<String, Object> record = reader.next(); record != null; record = reader.next()) {
+                    batch.add(record);
+                    if (batch.size() == BATCH_SIZE) {
+                        queue.put(batch);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    queue.put(batch);
+                }
+            } catch (IOException | RuntimeException e) {
+                failure.set(e);
+            }
+            queue.put(END);
+        } catch (InterruptedException e) {
+            // the writer gave up
+        }
+    }
+
+    private static Reader open(Path file, boolean gzip) throws IOException {
+        InputStream bytes = Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ));
+        InputStream in = gzip ? new GZIPInputStream(bytes, BUFFER_SIZE) : bytes;
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    // Writer stage: one transaction per batch, whose checkpoint entry is on disk before the commit
+    private void write(ExportTable table, List<Map<String, Object>> batch, long consumed,
+                       ImportCheckpoint checkpoint, Progress progress) {
+        long[] written = unitOfWork.inTransaction(em -> {
+            switch (table) {
+                case USERS:
+                    return writeUsers(em, batch, consumed, checkpoint);
+                case POSTS:
+                    return writePosts(em, batch, consumed, checkpoint);
+                case COMMENTS:
+                    return writeComments(em, batch, consumed, checkpoint);
+                case LIKES:
+                    return writeLikes(em, batch, consumed, checkpoint);
+                default:
+                    return writeFollows(em, batch, consumed, checkpoint);
+            }
+        });
+        progress.rows.merge(table, written[0], Long::sum);
+        progress.rejected.merge(table, written[1], Long::sum);
+    }
+
+    // Each write* returns {rows written, records rejected}
+
+    private static long[] writeUsers(EntityManager em, List<Map<String, Object>> batch, long consumed,
+                                     ImportCheckpoint checkpoint) {
+        List<User> users = new ArrayList<>(batch.size());
+        for (Map<String, Object> record : batch) {
+            String username = text(record, "username");
+            String email = text(record, "email");
+            User user;
+            if ("ADMIN".equals(text(record, "type"))) {
+                AdminUser admin = new AdminUser(username, email, text(record, "admin_level"),
+                        text(record, "department"));
+                LocalDate promotionDate = date(record, "promotion_date");
+                if (promotionDate != null) {
+                    admin.setPromotionDate(promotionDate);
+                }
+                user = admin;
+            } else {
+                user = new RegularUser(username, email, text(record, "bio"), date(record, "birth_date"),
+                        text(record, "location"));
+            }
+            LocalDate joinDate = date(record, "join_date");
+            if (joinDate != null) {
+                user.setJoinDate(joinDate);
+            }
+            users.add(user);
+        }
+        new UserDAO(em).createAll(users, users.size());
+
+        long[] pairs = new long[batch.size() * 2];
+        for (int i = 0; i < batch.size(); i++) {
+            pairs[2 * i] = requiredId(batch.get(i), "id");
+            pairs[2 * i + 1] = users.get(i).getId();
+        }
+        checkpoint.append(ExportTable.USERS, consumed, pairs);
+        return new long[] {users.size(), 0};
+    }
+
+    private long[] writePosts(EntityManager em, List<Map<String, Object>> batch, long consumed,
+                              ImportCheckpoint checkpoint) {
+        LongLongHashMap userIds = checkpoint.getIds(ExportTable.USERS);
+        Set<String> tags = new LinkedHashSet<>();
+        batch.forEach(record -> tags.addAll(tags(record)));
+        new HashtagDAO(em, hashtagCache).createMissing(tags);
+
+        List<Post> posts = new ArrayList<>(batch.size());
+        List<Long> externalIds = new ArrayList<>(batch.size());
+        for (Map<String, Object> record : batch) {
+            long authorId = userIds.get(requiredId(record, "author_id"));
+            if (authorId < 0) {
+                continue;
+            }
+            Post post = new Post(text(record, "content"), text(record, "post_type"),
+                    em.getReference(User.class, authorId));
+            LocalDateTime timestamp = timestamp(record, "timestamp");
+            if (timestamp != null) {
+                post.setTimestamp(timestamp);
+            }
+            Object isPublic = record.get("public");
+            post.setPublic(isPublic == null || Boolean.parseBoolean(isPublic.toString()));
+            for (String tag : tags(record)) {
+                post.getHashtags().add(em.getReference(Hashtag.class, tag));
+            }
+            posts.add(post);
+            externalIds.add(requiredId(record, "id"));
+        }
+        new PostDAO(em).createAll(posts, Math.max(1, posts.size()));
+        checkpoint.append(ExportTable.POSTS, consumed, pairs(externalIds, posts, Post::getId));
+        return new long[] {posts.size(), batch.size() - posts.size()};
+    }
+
+    private static long[] writeComments(EntityManager em, List<Map<String, Object>> batch, long consumed,
+                                        ImportCheckpoint checkpoint) {
+        LongLongHashMap userIds = checkpoint.getIds(ExportTable.USERS);
+        LongLongHashMap postIds = checkpoint.getIds(ExportTable.POSTS);
+        LongLongHashMap commentIds = checkpoint.getIds(ExportTable.COMMENTS);
+        // parents written earlier in this batch have no entry in commentIds yet
+        Map<Long, Comment> batchComments = new HashMap<>();
+
+        List<Comment> comments = new ArrayList<>(batch.size());
+        List<Long> externalIds = new ArrayList<>(batch.size());
+        for (Map<String, Object> record : batch) {
+            long postId = postIds.get(requiredId(record, "post_id"));
+            long authorId = userIds.get(requiredId(record, "author_id"));
+            Long externalParentId = optionalId(record, "parent_id");
+            Comment parent = null;
+            if (externalParentId != null) {
+                parent = batchComments.get(externalParentId);
+                long parentId = commentIds.get(externalParentId);
+                if (parent == null && parentId >= 0) {
+                    parent = em.getReference(Comment.class, parentId);
+                }
+            }
+            if (postId < 0 || authorId < 0 || (externalParentId != null && parent == null)) {
+                continue;
+            }
+            Comment comment = new Comment(text(record, "content"), em.getReference(Post.class, postId),
+                    em.getReference(User.class, authorId));
+            LocalDateTime timestamp = timestamp(record, "timestamp");
+            if (timestamp != null) {
+                comment.setTimestamp(timestamp);
+            }
+            comment.setParentComment(parent);
+            long externalId = requiredId(record, "id");
+            batchComments.put(externalId, comment);
+            comments.add(comment);
+            externalIds.add(externalId);
+        }
+        new CommentDAO(em).createAll(comments, Math.max(1, comments.size()));
+        checkpoint.append(ExportTable.COMMENTS, consumed, pairs(externalIds, comments, Comment::getId));
+        return new long[] {comments.size(), batch.size() - comments.size()};
+    }
+
+    private static long[] writeLikes(EntityManager em, List<Map<String, Object>> batch, long consumed,
+                                     ImportCheckpoint checkpoint) {
+        List<long[]> likes = edges(batch, "post_id", checkpoint.getIds(ExportTable.POSTS),
+                "user_id", checkpoint.getIds(ExportTable.USERS));
+        int added = new PostDAO(em).likeAll(likes);
+        checkpoint.append(ExportTable.LIKES, consumed, new long[0]);
+        return new long[] {added, batch.size() - likes.size()};
+    }
+
+    private static long[] writeFollows(EntityManager em, List<Map<String, Object>> batch, long consumed,
+                                       ImportCheckpoint checkpoint) {
+        LongLongHashMap userIds = checkpoint.getIds(ExportTable.USERS);
+        List<long[]> edges = edges(batch, "follower_id", userIds, "followed_id", userIds);
+        int added = new UserDAO(em).followAll(edges);
+        checkpoint.append(ExportTable.FOLLOWS, consumed, new long[0]);
+        return new long[] {added, batch.size() - edges.size()};
+    }
+
+    // Generated pairs of the records whose both ends are known
+    private static List<long[]> edges(List<Map<String, Object>> batch, String from, LongLongHashMap fromIds,
+                                      String to, LongLongHashMap toIds) {
+        List<long[]> edges = new ArrayList<>(batch.size());
+        for (Map<String, Object> record : batch) {
+            long fromId = fromIds.get(requiredId(record, from));
+            long toId = toIds.get(requiredId(record, to));
+            if (fromId >= 0 && toId >= 0) {
+                edges.add(new long[] {fromId, toId});
+            }
+        }
+        return edges;
+    }
+
+    private static <E> long[] pairs(List<Long> externalIds, List<E> entities, Function<E, Long> idOf) {
+        long[] pairs = new long[externalIds.size() * 2];
+        for (int i = 0; i < externalIds.size(); i++) {
+            pairs[2 * i] = externalIds.get(i);
+            pairs[2 * i + 1] = idOf.apply(entities.get(i));
+        }
+        return pairs;
+    }
+
+    // Whether a row written by a batch of an interrupted run was committed
+    private boolean exists(ExportTable table, Long id) {
+        String entity = table == ExportTable.USERS ? "User" : table == ExportTable.POSTS ? "Post" : "Comment";
+        return unitOfWork.read(em -> em.createQuery(
+                        "SELECT COUNT(e) FROM " + entity + " e WHERE e.id = :id", Long.class)
+                .setParameter("id", id)
+                .getSingleResult()) > 0;
+    }
+
+    private static String text(Map<String, Object> record, String column) {
+        Object value = record.get(column);
+        return value != null ? value.toString() : null;
+    }
+
+    private static Long optionalId(Map<String, Object> record, String column) {
+        Object value = record.get(column);
+        if (value == null) {
+            return null;
+        }
+        return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+    }
+
+    private static long requiredId(Map<String, Object> record, String column) {
+        Long id = optionalId(record, column);
+        if (id == null) {
+            throw new IllegalArgumentException("Record without " + column + ": " + record);
+        }
+        return id;
+    }
+
+    private static LocalDate date(Map<String, Object> record, String column) {
+        String value = text(record, column);
+        return value != null ? LocalDate.parse(value) : null;
+    }
+
+    private static LocalDateTime timestamp(Map<String, Object> record, String column) {
+        String value = text(record, column);
+        return value != null ? LocalDateTime.parse(value) : null;
+    }
+
+    // A list in NDJSON, space separated in CSV
+    private static List<String> tags(Map<String, Object> record) {
+        Object value = record.get("hashtags");
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        List<String> tags = new ArrayList<>();
+        if (value instanceof List) {
+            ((List<?>) value).forEach(tag -> tags.add(tag.toString()));
+        } else if (!value.toString().isEmpty()) {
+            tags.addAll(Arrays.asList(value.toString().split(" ")));
+        }
+        return tags;
+    }
+
+    private static final class Progress {
+
+        private final Map<ExportTable, Long> rows = new EnumMap<>(ExportTable.class);
+        private final Map<ExportTable, Long> rejected = new EnumMap<>(ExportTable.class);
+        private long resumed;
+        private long batches;
+    }
+}
@@ -0,0 +1,19 @@
+package com.socialmedia.export;
+
+public enum ExportFormat {
+
+    // One JSON object per line
+    NDJSON("ndjson"),
+    // RFC 4180, with a header line; list values are joined with spaces
+    CSV("csv");
+
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
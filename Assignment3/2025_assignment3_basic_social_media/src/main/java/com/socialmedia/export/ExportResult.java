@@ -0,0 +1,45 @@
+package com.socialmedia.export;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Outcome of an export: records written per table, bytes written (compressed, if gzipped) and elapsed time
+public class ExportResult {
+
+    private final Map<ExportTable, Long> rows;
+    private final long bytes;
+    private final long elapsedNanos;
+
+    public ExportResult(Map<ExportTable, Long> rows, long bytes, long elapsedNanos) {
+        this.rows = Collections.unmodifiableMap(new EnumMap<>(rows));
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRows(ExportTable table) {
+        return rows.getOrDefault(table, 0L);
+    }
+
+    public long getTotalRows() {
+        return rows.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : getTotalRows() * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ExportResult{rows=" + rows + ", bytes=" + bytes + ", elapsedMillis=" + getElapsedMillis() +
+                ", rowsPerSecond=" + String.format("%.0f", getRowsPerSecond()) + "}";
+    }
+}
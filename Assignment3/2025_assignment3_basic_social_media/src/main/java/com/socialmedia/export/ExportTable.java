@@ -0,0 +1,63 @@
+package com.socialmedia.export;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// What can be exported, with the columns of each record. Every table is read with a scalar projection
+// ordered by key, so no entity enters the persistence context however many rows there are.
+public enum ExportTable {
+
+    // the profile columns of the other subclass are null
+    USERS("users", false,
+            "SELECT u.id, CASE WHEN a.id IS NOT NULL THEN 'ADMIN' ELSE 'REGULAR' END, u.username, u.email, " +
+                    "u.joinDate, r.bio, r.birthDate, r.location, a.adminLevel, a.department, a.promotionDate " +
+                    "FROM User u LEFT JOIN RegularUser r ON r.id = u.id LEFT JOIN AdminUser a ON a.id = u.id " +
+                    "ORDER BY u.id",
+            "id", "type", "username", "email", "join_date", "bio", "birth_date", "location", "admin_level",
+            "department", "promotion_date"),
+    // one row per hashtag: the exporter folds the rows of a post into its hashtags column
+    POSTS("posts", false,
+            "SELECT p.id, p.author.id, p.postType, p.content, p.isPublic, p.likeCount, p.commentCount, " +
+                    "p.timestamp, h.tag FROM Post p LEFT JOIN p.hashtags h ORDER BY p.id",
+            "id", "author_id", "post_type", "content", "public", "like_count", "comment_count", "timestamp",
+            "hashtags"),
+    COMMENTS("comments", false,
+            "SELECT c.id, c.post.id, c.author.id, c.parentComment.id, c.content, c.replyCount, c.timestamp " +
+                    "FROM Comment c ORDER BY c.id",
+            "id", "post_id", "author_id", "parent_id", "content", "reply_count", "timestamp"),
+    LIKES("likes", true,
+            "SELECT post_id, user_id FROM post_likes ORDER BY post_id, user_id",
+            "post_id", "user_id"),
+    FOLLOWS("follows", true,
+            "SELECT follower_id, followed_id FROM user_following ORDER BY follower_id, followed_id",
+            "follower_id", "followed_id");
+
+    private final String fileName;
+    private final boolean nativeQuery;
+    private final String query;
+    private final List<String> columns;
+
+    ExportTable(String fileName, boolean nativeQuery, String query, String... columns) {
+        this.fileName = fileName;
+        this.nativeQuery = nativeQuery;
+        this.query = query;
+        this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    boolean isNativeQuery() {
+        return nativeQuery;
+    }
+
+    String getQuery() {
+        return query;
+    }
+}
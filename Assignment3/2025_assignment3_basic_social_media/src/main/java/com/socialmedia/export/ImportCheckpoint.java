@@ -0,0 +1,155 @@
+package com.socialmedia.export;
+
+import com.socialmedia.util.LongLongHashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+// Append-only log of the batches written by an import, so that a restarted import skips them.
+// An entry holds the table, how many of its records have been consumed so far and the (external id,
+// generated id) pairs of the batch; loading the log rebuilds the id maps.
+//
+// An entry is forced to disk before its transaction commits. On load, the last entry may belong to a
+// transaction that did not commit: it is kept only if its first generated id exists, and edge tables
+// (no ids) always replay their last batch, their inserts being idempotent. A torn last entry is cut off.
+class ImportCheckpoint implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final Map<ExportTable, Long> consumed = new EnumMap<>(ExportTable.class);
+    private final Map<ExportTable, LongLongHashMap> ids = new EnumMap<>(ExportTable.class);
+
+    private ImportCheckpoint(FileChannel channel) {
+        this.channel = channel;
+        for (ExportTable table : ExportTable.values()) {
+            ids.put(table, new LongLongHashMap(1024));
+        }
+    }
+
+    // committed tells whether the row with the given generated id of the table exists
+    static ImportCheckpoint open(Path file, BiPredicate<ExportTable, Long> committed) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        ImportCheckpoint checkpoint = new ImportCheckpoint(channel);
+        try {
+            checkpoint.load(committed);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return checkpoint;
+    }
+
+    private void load(BiPredicate<ExportTable, Long> committed) throws IOException {
+        // mapped, so that a log of millions of ids is not copied to the heap
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        Entry last = null;
+        long lastStart = 0;
+        long end = 0;
+        while (true) {
+            Entry entry = Entry.read(buffer);
+            if (entry == null) {
+                break;
+            }
+            if (last != null) {
+                apply(last);
+            }
+            last = entry;
+            lastStart = end;
+            end = buffer.position();
+        }
+        if (last != null) {
+            boolean keep = last.pairs.length > 0 && committed.test(last.table, last.pairs[1]);
+            if (keep) {
+                apply(last);
+            } else {
+                end = lastStart;
+            }
+        }
+        channel.truncate(end);
+        channel.position(end);
+    }
+
+    private void apply(Entry entry) {
+        consumed.put(entry.table, entry.consumed);
+        LongLongHashMap map = ids.get(entry.table);
+        for (int i = 0; i < entry.pairs.length; i += 2) {
+            map.put(entry.pairs[i], entry.pairs[i + 1]);
+        }
+    }
+
+    long getConsumed(ExportTable table) {
+        return consumed.getOrDefault(table, 0L);
+    }
+
+    // External id to generated id, for the tables whose rows get generated ids
+    LongLongHashMap getIds(ExportTable table) {
+        return ids.get(table);
+    }
+
+    // pairs: external and generated ids, interleaved. Applied to the maps, and forced to disk.
+    void append(ExportTable table, long consumedRecords, long[] pairs) {
+        ByteBuffer buffer = ByteBuffer.allocate(Entry.HEADER_BYTES + pairs.length * Long.BYTES);
+        buffer.putInt(table.ordinal()).putLong(consumedRecords).putInt(pairs.length / 2);
+        for (long value : pairs) {
+            buffer.putLong(value);
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        apply(new Entry(table, consumedRecords, pairs));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static final class Entry {
+
+        static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+        final ExportTable table;
+        final long consumed;
+        final long[] pairs;
+
+        Entry(ExportTable table, long consumed, long[] pairs) {
+            this.table = table;
+            this.consumed = consumed;
+            this.pairs = pairs;
+        }
+
+        // The next complete entry, or null at the end or on a torn entry
+        static Entry read(ByteBuffer buffer) {
+            if (buffer.remaining() < HEADER_BYTES) {
+                return null;
+            }
+            int start = buffer.position();
+            int ordinal = buffer.getInt();
+            long consumed = buffer.getLong();
+            int pairCount = buffer.getInt();
+            if (ordinal < 0 || ordinal >= ExportTable.values().length || pairCount < 0
+                    || buffer.remaining() < (long) pairCount * 2 * Long.BYTES) {
+                buffer.position(start);
+                return null;
+            }
+            long[] pairs = new long[pairCount * 2];
+            for (int i = 0; i < pairs.length; i++) {
+                pairs[i] = buffer.getLong();
+            }
+            return new Entry(ExportTable.values()[ordinal], consumed, pairs);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.socialmedia.export;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Outcome of an import: records written and rejected per table, records skipped because a previous run
+// had already written them, transactions committed and elapsed time
+public class ImportResult {
+
+    private final Map<ExportTable, Long> rows;
+    private final Map<ExportTable, Long> rejected;
+    private final long resumed;
+    private final long batches;
+    private final long elapsedNanos;
+
+    public ImportResult(Map<ExportTable, Long> rows, Map<ExportTable, Long> rejected, long resumed, long batches,
+                        long elapsedNanos) {
+        this.rows = Collections.unmodifiableMap(new EnumMap<>(rows));
+        this.rejected = Collections.unmodifiableMap(new EnumMap<>(rejected));
+        this.resumed = resumed;
+        this.batches = batches;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRows(ExportTable table) {
+        return rows.getOrDefault(table, 0L);
+    }
+
+    public long getTotalRows() {
+        return rows.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    // Records referring to a user, post or comment that is not in the import
+    public long getRejected(ExportTable table) {
+        return rejected.getOrDefault(table, 0L);
+    }
+
+    public long getResumed() {
+        return resumed;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : getTotalRows() * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult{rows=" + rows + ", rejected=" + rejected + ", resumed=" + resumed +
+                ", batches=" + batches + ", elapsedMillis=" + getElapsedMillis() +
+                ", rowsPerSecond=" + String.format("%.0f", getRowsPerSecond()) + "}";
+    }
+}
@@ -0,0 +1,295 @@
+package com.socialmedia.export;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reads the records written by RecordWriter, one at a time, keyed by column name. NDJSON values come back
+// as String, Long, Double, Boolean, List or null; CSV values as String, with empty fields as null.
+// Only flat NDJSON objects are accepted, and arrays of scalars.
+abstract class RecordReader {
+
+    protected final Reader in;
+
+    RecordReader(Reader in) {
+        this.in = in;
+    }
+
+    static RecordReader of(ExportFormat format, Reader in) throws IOException {
+        return format == ExportFormat.CSV ? new CsvReader(in) : new JsonReader(in);
+    }
+
+    // The next record, or null at the end of the input
+    abstract Map<String, Object> next() throws IOException;
+
+    private static final class JsonReader extends RecordReader {
+
+        private int peeked = -2;
+        private long line = 1;
+
+        JsonReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        Map<String, Object> next() throws IOException {
+            int c = skipWhitespace();
+            if (c == -1) {
+                return null;
+            }
+            expect(c, '{');
+            Map<String, Object> record = new HashMap<>();
+            c = skipWhitespace();
+            if (c == '}') {
+                return record;
+            }
+            while (true) {
+                expect(c, '"');
+                String name = string();
+                expect(skipWhitespace(), ':');
+                record.put(name, value(skipWhitespace()));
+                c = skipWhitespace();
+                if (c == '}') {
+                    return record;
+                }
+                expect(c, ',');
+                c = skipWhitespace();
+            }
+        }
+
+        private Object value(int c) throws IOException {
+            switch (c) {
+                case '"':
+                    return string();
+                case '[':
+                    List<Object> list = new ArrayList<>();
+                    c = skipWhitespace();
+                    if (c == ']') {
+                        return list;
+                    }
+                    while (true) {
+                        if (c == '[' || c == '{') {
+                            throw error("nested value");
+                        }
+                        list.add(value(c));
+                        c = skipWhitespace();
+                        if (c == ']') {
+                            return list;
+                        }
+                        expect(c, ',');
+                        c = skipWhitespace();
+                    }
+                case 't':
+                    literal("rue");
+                    return Boolean.TRUE;
+                case 'f':
+                    literal("alse");
+                    return Boolean.FALSE;
+                case 'n':
+                    literal("ull");
+                    return null;
+                default:
+                    if (c == '-' || (c >= '0' && c <= '9')) {
+                        return number(c);
+                    }
+                    throw error(c == -1 ? "end of input" : "'" + (char) c + "'");
+            }
+        }
+
+        private String string() throws IOException {
+            StringBuilder text = new StringBuilder();
+            while (true) {
+                int c = read();
+                if (c == -1) {
+                    throw error("end of input in a string");
+                }
+                if (c == '"') {
+                    return text.toString();
+                }
+                if (c != '\\') {
+                    text.append((char) c);
+                    continue;
+                }
+                c = read();
+                switch (c) {
+                    case 'n': text.append('\n'); break;
+                    case 'r': text.append('\r'); break;
+                    case 't': text.append('\t'); break;
+                    case 'b': text.append('\b'); break;
+                    case 'f': text.append('\f'); break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < 4; i++) {
+                            hex[i] = (char) read();
+                        }
+                        text.append((char) Integer.parseInt(new String(hex), 16));
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        text.append((char) c);
+                        break;
+                    default:
+                        throw error("escape \\" + (char) c);
+                }
+            }
+        }
+
+        private Object number(int first) throws IOException {
+            StringBuilder digits = new StringBuilder().append((char) first);
+            boolean integral = true;
+            while (true) {
+                int c = read();
+                if ((c >= '0' && c <= '9') || c == '-' || c == '+') {
+                    digits.append((char) c);
+                } else if (c == '.' || c == 'e' || c == 'E') {
+                    integral = false;
+                    digits.append((char) c);
+                } else {
+                    peeked = c;
+                    break;
+                }
+            }
+            if (integral) {
+                return Long.parseLong(digits.toString());
+            }
+            return Double.parseDouble(digits.toString());
+        }
+
+        private void literal(String rest) throws IOException {
+            for (int i = 0; i < rest.length(); i++) {
+                if (read() != rest.charAt(i)) {
+                    throw error("literal");
+                }
+            }
+        }
+
+        private int skipWhitespace() throws IOException {
+            int c = read();
+            while (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                c = read();
+            }
+            return c;
+        }
+
+        private int read() throws IOException {
+            int c;
+            if (peeked != -2) {
+                c = peeked;
+                peeked = -2;
+            } else {
+                c = in.read();
+                if (c == '\n') {
+                    line++;
+                }
+            }
+            return c;
+        }
+
+        private void expect(int c, char expected) {
+            if (c != expected) {
+                throw error(c == -1 ? "end of input" : "'" + (char) c + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String found) {
+            return new IllegalArgumentException("Unexpected " + found + " in NDJSON line " + line);
+        }
+    }
+
+    private static final class CsvReader extends RecordReader {
+
+        private List<String> header;
+        private int peeked = -2;
+
+        CsvReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        Map<String, Object> next() throws IOException {
+            if (header == null) {
+                header = fields();
+                if (header == null) {
+                    return null;
+                }
+            }
+            List<String> fields = fields();
+            if (fields == null) {
+                return null;
+            }
+            if (fields.size() != header.size()) {
+                throw new IllegalArgumentException("CSV record has " + fields.size() + " fields, the header " +
+                        header.size() + ": " + fields);
+            }
+            Map<String, Object> record = new HashMap<>();
+            for (int i = 0; i < fields.size(); i++) {
+                record.put(header.get(i), fields.get(i));
+            }
+            return record;
+        }
+
+        // One record, whose quoted fields may span lines; null at the end of the input
+        private List<String> fields() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (c == '"' && field.length() == 0 && !quoted) {
+                    quoted = true;
+                    c = quotedField(field);
+                }
+                if (c == ',' || c == '\n' || c == '\r' || c == -1) {
+                    fields.add(field.length() == 0 && !quoted ? null : field.toString());
+                    if (c != ',') {
+                        if (c == '\r') {
+                            int lf = read();
+                            if (lf != '\n') {
+                                peeked = lf;
+                            }
+                        }
+                        return fields;
+                    }
+                    field.setLength(0);
+                    quoted = false;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        // Reads up to the closing quote, "" being a quote; returns the character after it
+        private int quotedField(StringBuilder field) throws IOException {
+            while (true) {
+                int c = read();
+                if (c == -1) {
+                    throw new IllegalArgumentException("End of input in a quoted CSV field");
+                }
+                if (c == '"') {
+                    c = read();
+                    if (c != '"') {
+                        return c;
+                    }
+                }
+                field.append((char) c);
+            }
+        }
+
+        private int read() throws IOException {
+            if (peeked != -2) {
+                int c = peeked;
+                peeked = -2;
+                return c;
+            }
+            return in.read();
+        }
+    }
+}
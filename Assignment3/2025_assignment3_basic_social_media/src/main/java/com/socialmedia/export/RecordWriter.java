@@ -0,0 +1,137 @@
+package com.socialmedia.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Writes records as text lines in one of the export formats. Values are written as they come:
+// numbers and booleans as literals, lists as arrays (NDJSON) or space separated (CSV), anything else,
+// dates included, as its toString().
+abstract class RecordWriter {
+
+    protected final Writer out;
+    protected final List<String> columns;
+
+    RecordWriter(Writer out, List<String> columns) {
+        this.out = out;
+        this.columns = columns;
+    }
+
+    static RecordWriter of(ExportFormat format, Writer out, List<String> columns) throws IOException {
+        RecordWriter writer = format == ExportFormat.CSV ? new CsvWriter(out, columns) : new JsonWriter(out, columns);
+        writer.start();
+        return writer;
+    }
+
+    void start() throws IOException {
+    }
+
+    abstract void write(Object[] values) throws IOException;
+
+    private static final class JsonWriter extends RecordWriter {
+
+        JsonWriter(Writer out, List<String> columns) {
+            super(out, columns);
+        }
+
+        @Override
+        void write(Object[] values) throws IOException {
+            out.write('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                string(columns.get(i));
+                out.write(':');
+                value(values[i]);
+            }
+            out.write("}\n");
+        }
+
+        private void value(Object value) throws IOException {
+            if (value == null) {
+                out.write("null");
+            } else if (value instanceof Number || value instanceof Boolean) {
+                out.write(value.toString());
+            } else if (value instanceof List) {
+                out.write('[');
+                List<?> list = (List<?>) value;
+                for (int i = 0; i < list.size(); i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    value(list.get(i));
+                }
+                out.write(']');
+            } else {
+                string(value.toString());
+            }
+        }
+
+        private void string(String text) throws IOException {
+            out.write('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '"': out.write("\\\""); break;
+                    case '\\': out.write("\\\\"); break;
+                    case '\n': out.write("\\n"); break;
+                    case '\r': out.write("\\r"); break;
+                    case '\t': out.write("\\t"); break;
+                    default:
+                        if (c < 0x20) {
+                            out.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            out.write(c);
+                        }
+                }
+            }
+            out.write('"');
+        }
+    }
+
+    private static final class CsvWriter extends RecordWriter {
+
+        CsvWriter(Writer out, List<String> columns) {
+            super(out, columns);
+        }
+
+        @Override
+        void start() throws IOException {
+            write(columns.toArray());
+        }
+
+        @Override
+        void write(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                Object value = values[i];
+                if (value instanceof List) {
+                    field(((List<?>) value).stream().map(String::valueOf).collect(Collectors.joining(" ")));
+                } else if (value != null) {
+                    field(value.toString());
+                }
+            }
+            // CRLF, as RFC 4180 asks
+            out.write("\r\n");
+        }
+
+        private void field(String text) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < text.length() && !quote; i++) {
+                char c = text.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                out.write(text);
+                return;
+            }
+            out.write('"');
+            out.write(text.replace("\"", "\"\""));
+            out.write('"');
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.socialmedia.facade;
+
+import com.socialmedia.dao.Page;
+import com.socialmedia.dto.CommentNode;
+import com.socialmedia.dto.PostSummary;
+import com.socialmedia.entities.*;
+import com.socialmedia.export.ExportFormat;
+import com.socialmedia.export.ExportResult;
+import com.socialmedia.graph.Recommendation;
+import com.socialmedia.search.SearchFilter;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+// Non-blocking version of SocialMediaFacade for async callers.
+// Every operation runs on its own virtual thread, so blocking JDBC calls do not hold a platform thread.
+// A semaphore bounds how many operations run at once: the others wait (cheaply, on their virtual thread)
+// instead of piling up on the connection pool.
+// Futures fail with the exception thrown by the operation, e.g. IllegalArgumentException for a missing user.
+public class AsyncSocialMediaFacade implements AutoCloseable {
+
+    // Same as hibernate.connection.pool_size in persistence.xml
+    private static final int DEFAULT_MAX_CONCURRENCY = 10;
+
+    private final SocialMediaFacade facade;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    public AsyncSocialMediaFacade(SocialMediaFacade facade) {
+        this(facade, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    // The synchronous facade is not closed by close(), its owner closes it
+    public AsyncSocialMediaFacade(SocialMediaFacade facade, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Max concurrency must be positive: " + maxConcurrency);
+        }
+        this.facade = facade;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    // ========== USER OPERATIONS ==========
+
+    public CompletableFuture<RegularUser> createRegularUser(String username, String email, String bio,
+                                                           LocalDate birthDate, String location) {
+        return submit(() -> facade.createRegularUser(username, email, bio, birthDate, location));
+    }
+
+    public CompletableFuture<AdminUser> createAdminUser(String username, String email, String adminLevel,
+                                                       String department) {
+        return submit(() -> facade.createAdminUser(username, email, adminLevel, department));
+    }
+
+    public CompletableFuture<User> findUserById(Long id) {
+        return submit(() -> facade.findUserById(id));
+    }
+
+    public CompletableFuture<User> findUserByUsername(String username) {
+        return submit(() -> facade.findUserByUsername(username));
+    }
+
+    // ========== POST OPERATIONS ==========
+
+    public CompletableFuture<Post> createPost(String content, String postType, Long authorId) {
+        return submit(() -> facade.createPost(content, postType, authorId));
+    }
+
+    public CompletableFuture<Post> createPostWithHashtags(String content, String postType, Long authorId,
+                                                          List<String> hashtags) {
+        return submit(() -> facade.createPostWithHashtags(content, postType, authorId, hashtags));
+    }
+
+    public CompletableFuture<Post> findPostById(Long id) {
+        return submit(() -> facade.findPostById(id));
+    }
+
+    public CompletableFuture<Page<Post>> findPostsByAuthor(Long authorId, String cursor, int limit) {
+        return submit(() -> facade.findPostsByAuthor(authorId, cursor, limit));
+    }
+
+    public CompletableFuture<List<Post>> findTrendingPosts(int limit) {
+        return submit(() -> facade.findTrendingPosts(limit));
+    }
+
+    public CompletableFuture<Page<Post>> getHomeTimeline(Long userId, String cursor, int limit) {
+        return submit(() -> facade.getHomeTimeline(userId, cursor, limit));
+    }
+
+    public CompletableFuture<Page<PostSummary>> getHomeTimelineSummaries(Long userId, String cursor, int limit) {
+        return submit(() -> facade.getHomeTimelineSummaries(userId, cursor, limit));
+    }
+
+    public CompletableFuture<Page<PostSummary>> searchPosts(String query, SearchFilter filter, String cursor,
+                                                           int limit) {
+        return submit(() -> facade.searchPosts(query, filter, cursor, limit));
+    }
+
+    // ========== COMMENT OPERATIONS ==========
+
+    public CompletableFuture<Comment> createComment(String content, Long postId, Long authorId) {
+        return submit(() -> facade.createComment(content, postId, authorId));
+    }
+
+    public CompletableFuture<Comment> createReply(String content, Long parentCommentId, Long authorId) {
+        return submit(() -> facade.createReply(content, parentCommentId, authorId));
+    }
+
+    public CompletableFuture<Page<CommentNode>> loadThread(Long postId, int maxDepth, int pageSize) {
+        return submit(() -> facade.loadThread(postId, maxDepth, pageSize));
+    }
+
+    // ========== RELATIONSHIP OPERATIONS ==========
+
+    public CompletableFuture<Void> followUser(Long followerId, Long followedId) {
+        return run(() -> facade.followUser(followerId, followedId));
+    }
+
+    public CompletableFuture<Void> unfollowUser(Long followerId, Long followedId) {
+        return run(() -> facade.unfollowUser(followerId, followedId));
+    }
+
+    public CompletableFuture<List<Recommendation>> getFollowRecommendations(Long userId, int limit) {
+        return submit(() -> facade.getFollowRecommendations(userId, limit));
+    }
+
+    public CompletableFuture<Void> likePost(Long userId, Long postId) {
+        return run(() -> facade.likePost(userId, postId));
+    }
+
+    public CompletableFuture<Void> unlikePost(Long userId, Long postId) {
+        return run(() -> facade.unlikePost(userId, postId));
+    }
+
+    public CompletableFuture<Boolean> hasLiked(Long userId, Long postId) {
+        return submit(() -> facade.hasLiked(userId, postId));
+    }
+
+    // ========== EXPORT ==========
+
+    public CompletableFuture<ExportResult> exportData(Path directory, ExportFormat format, boolean gzip) {
+        return submit(() -> facade.exportData(directory, format, gzip));
+    }
+
+    // ========== COMPLEX SEARCH OPERATIONS ==========
+
+    public CompletableFuture<List<User>> findActiveUsers(LocalDateTime since) {
+        return submit(() -> facade.findActiveUsers(since));
+    }
+
+    public CompletableFuture<List<Post>> findPopularPostsByHashtag(String hashtag, int minLikes) {
+        return submit(() -> facade.findPopularPostsByHashtag(hashtag, minLikes));
+    }
+
+    public CompletableFuture<List<User>> findUsersEngagingWithHashtags(List<String> hashtags) {
+        return submit(() -> facade.findUsersEngagingWithHashtags(hashtags));
+    }
+
+    public CompletableFuture<List<Post>> findActiveDiscussions(int minComments, int minReplies) {
+        return submit(() -> facade.findActiveDiscussions(minComments, minReplies));
+    }
+
+    // ========== UTILITY METHODS ==========
+
+    // Stop accepting operations and wait for the running ones to finish
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    private CompletableFuture<Void> run(Runnable operation) {
+        return submit(() -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    private <R> CompletableFuture<R> submit(Supplier<R> operation) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.completeExceptionally(e);
+                    return;
+                }
+                try {
+                    future.complete(operation.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e); // already closed
+        }
+        return future;
+    }
+}
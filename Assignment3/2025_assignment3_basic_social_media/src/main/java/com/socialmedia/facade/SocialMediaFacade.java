@@ -1,33 +1,127 @@
 package com.socialmedia.facade;
 
 import com.socialmedia.dao.*;
+import com.socialmedia.dto.CommentNode;
+import com.socialmedia.dto.CommentSummary;
+import com.socialmedia.dto.PostSummary;
+import com.socialmedia.dto.UserSummary;
 import com.socialmedia.entities.*;
+import com.socialmedia.export.DataExporter;
+import com.socialmedia.export.DataImporter;
+import com.socialmedia.export.ExportFormat;
+import com.socialmedia.export.ExportResult;
+import com.socialmedia.export.ExportTable;
+import com.socialmedia.export.ImportResult;
+import com.socialmedia.generator.DataGenerator;
+import com.socialmedia.generator.GeneratedData;
+import com.socialmedia.generator.GeneratorConfig;
+import com.socialmedia.graph.FollowRecommender;
+import com.socialmedia.graph.Recommendation;
+import com.socialmedia.graph.SocialGraph;
+import com.socialmedia.metrics.Metrics;
+import com.socialmedia.search.SearchDocument;
+import com.socialmedia.search.SearchFilter;
+import com.socialmedia.search.SearchHit;
+import com.socialmedia.search.SearchService;
+import com.socialmedia.service.HashtagTrend;
+import com.socialmedia.service.RegisteredUserFilter;
+import com.socialmedia.service.SocialMediaService;
+import com.socialmedia.service.TimelineEntry;
+import com.socialmedia.service.TimelineService;
+import com.socialmedia.service.TrendingHashtagService;
+import com.socialmedia.service.TrendingPostService;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class SocialMediaFacade {
 
-    private EntityManagerFactory emf;
-    private EntityManager em;
+    // Home timelines keep the latest 800 posts; authors above 10k followers are merged on read
+    private static final int TIMELINE_SIZE = 800;
+    private static final int FAN_OUT_LIMIT = 10_000;
+    private static final int MAX_TIMELINES = 100_000;
 
-    private UserDAO userDAO;
-    private PostDAO postDAO;
-    private CommentDAO commentDAO;
-    private HashtagDAO hashtagDAO;
+    // Known hashtags kept in memory, enough for the tags in daily use
+    private static final int HASHTAG_CACHE_SIZE = 10_000;
+
+    // Follow suggestions: computed on demand within 50 ms, 20 per user in batch mode
+    private static final Duration RECOMMENDATION_BUDGET = Duration.ofMillis(50);
+    private static final int PRECOMPUTED_RECOMMENDATIONS = 20;
+
+    // Rows committed per transaction by the bulk operations
+    private static final int BULK_CHUNK_SIZE = 5_000;
+
+    // Follow and unfollow of the same pair share a lock, held across the commit and the graph update
+    private static final int FOLLOW_LOCK_STRIPES = 64;
+
+    // Every operation runs on its own EntityManager, so the facade can be used by many threads at once
+    private final EntityManagerFactory emf;
+    private final UnitOfWork unitOfWork;
+    // Latency and database cost of every operation, also published over JMX
+    private final Metrics metrics;
+
+    private final TimelineService timelineService;
+    private final TrendingHashtagService trendingHashtags;
+    private final TrendingPostService trendingPosts;
+    private final HashtagCache hashtagCache;
+    private final RegisteredUserFilter registeredUsers;
+    private final SearchService search;
+    private final SocialGraph socialGraph;
+    private final FollowRecommender recommender;
+    private final Object[] followLocks = new Object[FOLLOW_LOCK_STRIPES];
+
+    private final SocialMediaService service;
 
     public SocialMediaFacade() {
-        emf = Persistence.createEntityManagerFactory("socialmedia-pu");
-        em = emf.createEntityManager();
+        this(Persistence.createEntityManagerFactory("socialmedia-pu"));
+    }
 
-        userDAO = new UserDAO(em);
-        postDAO = new PostDAO(em);
-        commentDAO = new CommentDAO(em);
-        hashtagDAO = new HashtagDAO(em);
+    // The facade takes ownership of the factory and closes it in close()
+    public SocialMediaFacade(EntityManagerFactory emf) {
+        this.emf = emf;
+        this.metrics = new Metrics(emf);
+        this.unitOfWork = new UnitOfWork(emf, metrics);
+
+        timelineService = new TimelineService(TIMELINE_SIZE, FAN_OUT_LIMIT, MAX_TIMELINES);
+        trendingHashtags = new TrendingHashtagService();
+        trendingPosts = new TrendingPostService();
+        rebuildTrendingPosts();
+        hashtagCache = new HashtagCache(HASHTAG_CACHE_SIZE);
+        registeredUsers = new RegisteredUserFilter();
+        registeredUsers.rebuild(unitOfWork);
+        search = new SearchService();
+        search.rebuild(unitOfWork);
+        socialGraph = new SocialGraph();
+        socialGraph.load(unitOfWork);
+        recommender = new FollowRecommender(socialGraph, unitOfWork);
+        Arrays.setAll(followLocks, stripe -> new Object());
+
+        service = new SocialMediaService(unitOfWork, trendingHashtags, trendingPosts, hashtagCache, registeredUsers,
+                socialGraph, search, timelineService);
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    // Business rules and statistics, sharing this facade's factory and in-memory state
+    public SocialMediaService getService() {
+        return service;
     }
 
     // ========== USER OPERATIONS ==========
@@ -35,228 +129,688 @@ public class SocialMediaFacade {
     // CREATE
     public RegularUser createRegularUser(String username, String email, String bio,
                                          LocalDate birthDate, String location) {
-        RegularUser user = new RegularUser(username, email, bio, birthDate, location);
-        userDAO.create(user);
-        return user;
+        return metrics.time("SocialMediaFacade.createRegularUser", () -> {
+            RegularUser user = new RegularUser(username, email, bio, birthDate, location);
+            unitOfWork.inTransaction(em -> {
+                new UserDAO(em).create(user);
+                return user;
+            });
+            userRegistered(user);
+            return user;
+        });
     }
 
     public AdminUser createAdminUser(String username, String email, String adminLevel, String department) {
-        AdminUser user = new AdminUser(username, email, adminLevel, department);
-        userDAO.create(user);
-        return user;
+        return metrics.time("SocialMediaFacade.createAdminUser", () -> {
+            AdminUser user = new AdminUser(username, email, adminLevel, department);
+            unitOfWork.inTransaction(em -> {
+                new UserDAO(em).create(user);
+                return user;
+            });
+            userRegistered(user);
+            return user;
+        });
     }
 
     // READ
     public User findUserById(Long id) {
-        return userDAO.findById(id);
+        return metrics.time("SocialMediaFacade.findUserById",
+                () -> unitOfWork.read(em -> new UserDAO(em).findById(id)));
     }
 
     public User findUserByUsername(String username) {
-        return userDAO.findByUsername(username);
+        return metrics.time("SocialMediaFacade.findUserByUsername",
+                () -> unitOfWork.read(em -> new UserDAO(em).findByUsername(username)));
     }
 
     public List<User> findAllUsers() {
-        return userDAO.findAll();
+        return metrics.time("SocialMediaFacade.findAllUsers", () -> unitOfWork.read(em -> new UserDAO(em).findAll()));
+    }
+
+    public Page<User> findAllUsers(String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findAllUsers(page)",
+                () -> unitOfWork.read(em -> new UserDAO(em).findAll(cursor, limit)));
+    }
+
+    public Page<User> findFollowers(Long userId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findFollowers",
+                () -> unitOfWork.read(em -> new UserDAO(em).findFollowers(userId, cursor, limit)));
+    }
+
+    public Page<User> findFollowing(Long userId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findFollowing",
+                () -> unitOfWork.read(em -> new UserDAO(em).findFollowing(userId, cursor, limit)));
+    }
+
+    // Summaries for listings: read-only projections, no managed entities
+    public Page<UserSummary> findFollowerSummaries(Long userId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findFollowerSummaries",
+                () -> unitOfWork.read(em -> new UserDAO(em).findFollowerSummaries(userId, cursor, limit)));
+    }
+
+    public Page<UserSummary> findFollowingSummaries(Long userId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findFollowingSummaries",
+                () -> unitOfWork.read(em -> new UserDAO(em).findFollowingSummaries(userId, cursor, limit)));
     }
 
     // UPDATE
     public User updateUser(User user) {
-        return userDAO.update(user);
+        return metrics.time("SocialMediaFacade.updateUser", () -> {
+            boolean[] renamed = new boolean[1];
+            User updated = unitOfWork.inTransaction(em -> {
+                UserDAO userDAO = new UserDAO(em);
+                // from the second-level cache: merge copies onto this same instance
+                User stored = userDAO.findById(user.getId());
+                renamed[0] = stored != null && (!Objects.equals(stored.getUsername(), user.getUsername())
+                        || !Objects.equals(stored.getEmail(), user.getEmail()));
+                return userDAO.update(user);
+            });
+            if (renamed[0]) {
+                // the old username or email stays in the filter until it is rebuilt
+                registeredUsers.recordRemovals(1);
+                userRegistered(updated);
+            }
+            return updated;
+        });
     }
 
     // DELETE
     public void deleteUser(Long id) {
-        userDAO.deleteById(id);
+        metrics.time("SocialMediaFacade.deleteUser", () -> {
+            // set-based, recounting the posts, comments and hashtags that keep counting the deleted rows
+            DeletedRows deleted = unitOfWork.inTransaction(
+                    em -> new UserDAO(em).deleteWithContent(Collections.singletonList(id)));
+            deleted.getPostIds().forEach(trendingPosts::remove);
+            search.removeDeleted(deleted);
+            socialGraph.removeUser(id);
+            // nothing to forget if there was no such user
+            registeredUsers.recordRemovals(deleted.getUsers());
+            rebuildRegisteredUsersIfNeeded();
+        });
     }
 
     // ========== POST OPERATIONS ==========
 
     // CREATE
     public Post createPost(String content, String postType, Long authorId) {
-        User author = userDAO.findById(authorId);
-        if (author == null) {
-            throw new IllegalArgumentException("Author not found with id: " + authorId);
-        }
-
-        Post post = new Post(content, postType, author);
-        postDAO.create(post);
-        author.addPost(post);
-        return post;
+        return metrics.time("SocialMediaFacade.createPost", () -> {
+            Post post = unitOfWork.inTransaction(em -> persistPost(em, content, postType, authorId));
+            service.postCreated(post, Collections.emptyList());
+            return post;
+        });
     }
 
     public Post createPostWithHashtags(String content, String postType, Long authorId, List<String> hashtagStrings) {
-        Post post = createPost(content, postType, authorId);
-
-        for (String tag : hashtagStrings) {
-            Hashtag hashtag = hashtagDAO.findOrCreate(tag);
-            post.addHashtag(hashtag);
-        }
-
-        postDAO.update(post);
-        return post;
+        return metrics.time("SocialMediaFacade.createPostWithHashtags", () -> {
+            // the distinct tags attached to the post: a tag repeated in the input is one use
+            List<String> tags = new ArrayList<>();
+            Post post = unitOfWork.inTransaction(em -> {
+                Post created = persistPost(em, content, postType, authorId);
+                for (Hashtag hashtag : new HashtagDAO(em, hashtagCache).resolveAll(hashtagStrings)) {
+                    created.addHashtag(hashtag);
+                    tags.add(hashtag.getTag());
+                }
+                return created;
+            });
+            service.postCreated(post, tags);
+            return post;
+        });
     }
 
     // READ
     public Post findPostById(Long id) {
-        return postDAO.findById(id);
+        return metrics.time("SocialMediaFacade.findPostById",
+                () -> unitOfWork.read(em -> new PostDAO(em).findById(id)));
     }
 
     public List<Post> findPostsByAuthor(Long authorId) {
-        return postDAO.findByAuthor(authorId);
+        return metrics.time("SocialMediaFacade.findPostsByAuthor",
+                () -> unitOfWork.read(em -> new PostDAO(em).findByAuthor(authorId)));
+    }
+
+    public Page<Post> findPostsByAuthor(Long authorId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findPostsByAuthor(page)",
+                () -> unitOfWork.read(em -> new PostDAO(em).findByAuthor(authorId, cursor, limit)));
+    }
+
+    public Page<Post> findPostsByHashtag(String hashtag, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findPostsByHashtag",
+                () -> unitOfWork.read(em -> new PostDAO(em).findByHashtag(hashtag, cursor, limit)));
+    }
+
+    public Page<Post> findPostsBetweenDates(LocalDateTime start, LocalDateTime end, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findPostsBetweenDates",
+                () -> unitOfWork.read(em -> new PostDAO(em).findPostsBetweenDates(start, end, cursor, limit)));
     }
 
+    public Page<Post> findPostsLikedByUser(Long userId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findPostsLikedByUser",
+                () -> unitOfWork.read(em -> new PostDAO(em).findPostsLikedByUser(userId, cursor, limit)));
+    }
+
+    // Summaries for listings: read-only projections, no managed entities
+    public Page<PostSummary> findPostSummariesByAuthor(Long authorId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findPostSummariesByAuthor",
+                () -> unitOfWork.read(em -> new PostDAO(em).findSummariesByAuthor(authorId, cursor, limit)));
+    }
+
+    public Page<PostSummary> findPostSummariesByHashtag(String hashtag, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findPostSummariesByHashtag",
+                () -> unitOfWork.read(em -> new PostDAO(em).findSummariesByHashtag(hashtag, cursor, limit)));
+    }
+
+    public Page<PostSummary> findPostSummariesLikedByUser(Long userId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findPostSummariesLikedByUser",
+                () -> unitOfWork.read(em -> new PostDAO(em).findSummariesLikedByUser(userId, cursor, limit)));
+    }
+
+    // Most engaging recent posts, ranked in memory
     public List<Post> findTrendingPosts(int limit) {
-        return postDAO.findTrendingPosts(limit);
+        return metrics.time("SocialMediaFacade.findTrendingPosts", () -> {
+            List<Long> postIds = trendingPosts.findTrendingPostIds(limit);
+            return unitOfWork.read(em -> new PostDAO(em).findByIdsInOrder(postIds));
+        });
+    }
+
+    public List<PostSummary> findTrendingPostSummaries(int limit) {
+        return metrics.time("SocialMediaFacade.findTrendingPostSummaries", () -> {
+            List<Long> postIds = trendingPosts.findTrendingPostIds(limit);
+            return unitOfWork.read(em -> new PostDAO(em).findSummariesByIdsInOrder(postIds));
+        });
+    }
+
+    // Home timeline: posts of the followed users, newest first
+    public Page<Post> getHomeTimeline(Long userId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.getHomeTimeline",
+                () -> getHomeTimeline(userId, cursor, limit, PostDAO::findByIdsInOrder));
+    }
+
+    public Page<PostSummary> getHomeTimelineSummaries(Long userId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.getHomeTimelineSummaries",
+                () -> getHomeTimeline(userId, cursor, limit, PostDAO::findSummariesByIdsInOrder));
+    }
+
+    private <T> Page<T> getHomeTimeline(Long userId, String cursor, int limit,
+                                        BiFunction<PostDAO, List<Long>, List<T>> fetchPosts) {
+        TimelineEntry after = TimelineEntry.fromCursor(cursor);
+        return unitOfWork.read(em -> {
+            PostDAO postDAO = new PostDAO(em);
+            List<Long> followedCelebrities = new ArrayList<>();
+            for (Long celebrity : timelineService.getCelebrities()) {
+                if (socialGraph.follows(userId, celebrity)) {
+                    followedCelebrities.add(celebrity);
+                }
+            }
+
+            List<TimelineEntry> entries = timelineService.read(userId,
+                    () -> postDAO.findFeedPostKeys(userId, timelineService.getTimelineSize()).stream()
+                            .map(row -> new TimelineEntry((LocalDateTime) row[1], (Long) row[0]))
+                            .collect(Collectors.toList()),
+                    followedCelebrities, after, limit + 1);
+            String nextCursor = null;
+            if (entries.size() > limit) {
+                entries = entries.subList(0, limit);
+                nextCursor = entries.get(limit - 1).toCursor();
+            }
+            List<Long> postIds = entries.stream().map(TimelineEntry::getPostId).collect(Collectors.toList());
+            return new Page<>(fetchPosts.apply(postDAO, postIds), nextCursor);
+        });
     }
 
     // UPDATE
     public Post updatePost(Post post) {
-        return postDAO.update(post);
+        return metrics.time("SocialMediaFacade.updatePost", () -> {
+            List<SearchDocument> document = new ArrayList<>(1);
+            // likes and comments of a post made public again, to rank it again
+            List<int[]> republished = new ArrayList<>(1);
+            Post updated = unitOfWork.inTransaction(em -> {
+                PostDAO postDAO = new PostDAO(em);
+                // merge copies onto this same instance: until then it holds the stored flag and counters
+                Post stored = postDAO.findById(post.getId());
+                if (stored != null && !stored.isPublic() && post.isPublic()) {
+                    republished.add(new int[]{stored.getLikeCount(), stored.getCommentCount()});
+                }
+                Post merged = postDAO.update(post);
+                document.add(SearchDocument.of(merged));
+                return merged;
+            });
+            if (!republished.isEmpty()) {
+                int[] counters = republished.get(0);
+                trendingPosts.onPostCreated(updated.getId(), updated.getTimestamp(), counters[0], counters[1]);
+            }
+            if (updated.isPublic()) {
+                search.indexPost(document.get(0));
+            } else {
+                trendingPosts.remove(updated.getId());
+                search.removePost(updated.getId());
+            }
+            return updated;
+        });
     }
 
     // DELETE
     public void deletePost(Long id) {
-        postDAO.deleteById(id);
+        metrics.time("SocialMediaFacade.deletePost", () -> {
+            DeletedRows deleted = unitOfWork.inTransaction(em -> new PostDAO(em).deleteWithComments(id));
+            trendingPosts.remove(id);
+            search.removeDeleted(deleted);
+        });
+    }
+
+    // ========== HASHTAG OPERATIONS ==========
+
+    public List<HashtagTrend> getTrendingHashtags(int limit, Duration window) {
+        return metrics.time("SocialMediaFacade.getTrendingHashtags",
+                () -> trendingHashtags.getTrendingHashtags(limit, window));
+    }
+
+    public HashtagCache getHashtagCache() {
+        return hashtagCache;
     }
 
     // ========== COMMENT OPERATIONS ==========
 
     // CREATE
     public Comment createComment(String content, Long postId, Long authorId) {
-        Post post = postDAO.findById(postId);
-        User author = userDAO.findById(authorId);
+        return metrics.time("SocialMediaFacade.createComment", () -> {
+            Comment comment = unitOfWork.inTransaction(em -> {
+                Post post = new PostDAO(em).findById(postId);
+                User author = new UserDAO(em).findById(authorId);
+
+                if (post == null || author == null) {
+                    throw new IllegalArgumentException("Post or Author not found");
+                }
+
+                Comment created = new Comment(content, post, author);
+                new CommentDAO(em).create(created);
+                return created;
+            });
+            trendingPosts.onComment(postId, 1);
+            search.indexComment(SearchDocument.of(comment));
+
+            return comment;
+        });
+    }
 
-        if (post == null || author == null) {
-            throw new IllegalArgumentException("Post or Author not found");
-        }
+    public Comment createReply(String content, Long parentCommentId, Long authorId) {
+        return metrics.time("SocialMediaFacade.createReply", () -> {
+            List<Long> postId = new ArrayList<>(1);
+            Comment reply = unitOfWork.inTransaction(em -> {
+                CommentDAO commentDAO = new CommentDAO(em);
+                Comment parent = commentDAO.findById(parentCommentId);
+                User author = new UserDAO(em).findById(authorId);
+
+                if (parent == null || author == null) {
+                    throw new IllegalArgumentException("Parent comment or Author not found");
+                }
+
+                Comment created = new Comment(content, parent.getPost(), author);
+                created.setParentComment(parent);
+                commentDAO.create(created);
+                postId.add(created.getPost().getId());
+                return created;
+            });
+            trendingPosts.onComment(postId.get(0), 1);
+            search.indexComment(SearchDocument.of(reply));
+
+            return reply;
+        });
+    }
 
-        Comment comment = new Comment(content, post, author);
-        commentDAO.create(comment);
-        post.addComment(comment);
-        author.addComment(comment);
+    // READ
+    public Comment findCommentById(Long id) {
+        return metrics.time("SocialMediaFacade.findCommentById",
+                () -> unitOfWork.read(em -> new CommentDAO(em).findById(id)));
+    }
 
-        return comment;
+    public List<Comment> findCommentsByPost(Long postId) {
+        return metrics.time("SocialMediaFacade.findCommentsByPost",
+                () -> unitOfWork.read(em -> new CommentDAO(em).findByPost(postId)));
     }
 
-    public Comment createReply(String content, Long parentCommentId, Long authorId) {
-        Comment parent = commentDAO.findById(parentCommentId);
-        User author = userDAO.findById(authorId);
+    public Page<Comment> findCommentsByPost(Long postId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findCommentsByPost(page)",
+                () -> unitOfWork.read(em -> new CommentDAO(em).findByPost(postId, cursor, limit)));
+    }
 
-        if (parent == null || author == null) {
-            throw new IllegalArgumentException("Parent comment or Author not found");
-        }
+    public Page<Comment> findCommentsByAuthor(Long authorId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findCommentsByAuthor",
+                () -> unitOfWork.read(em -> new CommentDAO(em).findByAuthor(authorId, cursor, limit)));
+    }
 
-        Comment reply = new Comment(content, parent.getPost(), author);
-        reply.setParentComment(parent);
-        commentDAO.create(reply);
-        parent.addReply(reply);
+    public Page<CommentSummary> findCommentSummariesByPost(Long postId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findCommentSummariesByPost",
+                () -> unitOfWork.read(em -> new CommentDAO(em).findSummariesByPost(postId, cursor, limit)));
+    }
 
-        return reply;
+    public Page<CommentSummary> findCommentSummariesByAuthor(Long authorId, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.findCommentSummariesByAuthor",
+                () -> unitOfWork.read(em -> new CommentDAO(em).findSummariesByAuthor(authorId, cursor, limit)));
     }
 
-    // READ
-    public Comment findCommentById(Long id) {
-        return commentDAO.findById(id);
+    // Thread of a post in one query: top-level comments newest first, each with its replies
+    public Page<CommentNode> loadThread(Long postId, int maxDepth, int pageSize) {
+        return loadThread(postId, null, maxDepth, pageSize);
     }
 
-    public List<Comment> findCommentsByPost(Long postId) {
-        return commentDAO.findByPost(postId);
+    public Page<CommentNode> loadThread(Long postId, String cursor, int maxDepth, int pageSize) {
+        return metrics.time("SocialMediaFacade.loadThread",
+                () -> unitOfWork.read(em -> new CommentDAO(em).loadThread(postId, cursor, maxDepth, pageSize)));
+    }
+
+    // Replies cut from a loaded thread (CommentNode.hasMoreReplies)
+    public Page<CommentNode> loadReplies(Long commentId, String cursor, int maxDepth, int pageSize) {
+        return metrics.time("SocialMediaFacade.loadReplies",
+                () -> unitOfWork.read(em -> new CommentDAO(em).loadReplies(commentId, cursor, maxDepth, pageSize)));
     }
 
     // ========== RELATIONSHIP OPERATIONS ==========
 
+    // Does nothing if one of the users does not exist.
+    // Concurrent follows and unfollows of a pair reach the graph in the order they committed.
     public void followUser(Long followerId, Long followedId) {
-        User follower = userDAO.findById(followerId);
-        User followed = userDAO.findById(followedId);
+        metrics.time("SocialMediaFacade.followUser", () -> {
+            synchronized (followLock(followerId, followedId)) {
+                if (!unitOfWork.inTransaction(em -> new UserDAO(em).follow(followerId, followedId))) {
+                    return;
+                }
+                socialGraph.addFollow(followerId, followedId);
+            }
+            timelineService.invalidate(followerId);
+        });
+    }
 
-        if (follower != null && followed != null) {
-            follower.follow(followed);
-            userDAO.update(follower);
-            userDAO.update(followed);
-        }
+    public void unfollowUser(Long followerId, Long followedId) {
+        metrics.time("SocialMediaFacade.unfollowUser", () -> {
+            synchronized (followLock(followerId, followedId)) {
+                if (!unitOfWork.inTransaction(em -> new UserDAO(em).unfollow(followerId, followedId))) {
+                    return;
+                }
+                socialGraph.removeFollow(followerId, followedId);
+            }
+            timelineService.invalidate(followerId);
+        });
+    }
+
+    private Object followLock(Long followerId, Long followedId) {
+        return followLocks[(31 * followerId.hashCode() + followedId.hashCode()) & (FOLLOW_LOCK_STRIPES - 1)];
+    }
+
+    // Answered by the in-memory graph, with no query
+    public boolean isFollowing(Long followerId, Long followedId) {
+        return metrics.time("SocialMediaFacade.isFollowing", () -> socialGraph.follows(followerId, followedId));
+    }
+
+    public boolean areMutualFollowers(Long userId, Long otherUserId) {
+        return metrics.time("SocialMediaFacade.areMutualFollowers",
+                () -> socialGraph.followEachOther(userId, otherUserId));
+    }
+
+    public int getFollowerCount(Long userId) {
+        return metrics.time("SocialMediaFacade.getFollowerCount", () -> socialGraph.getFollowerCount(userId));
+    }
+
+    public int getFollowingCount(Long userId) {
+        return metrics.time("SocialMediaFacade.getFollowingCount", () -> socialGraph.getFollowingCount(userId));
+    }
+
+    // "Who to follow", best first
+    public List<Recommendation> getFollowRecommendations(Long userId, int limit) {
+        return metrics.time("SocialMediaFacade.getFollowRecommendations",
+                () -> recommender.recommend(userId, limit, RECOMMENDATION_BUDGET));
+    }
+
+    // Batch mode, e.g. nightly: returns the number of users with recommendations
+    public int precomputeFollowRecommendations() {
+        return metrics.time("SocialMediaFacade.precomputeFollowRecommendations",
+                () -> recommender.precomputeAll(PRECOMPUTED_RECOMMENDATIONS));
+    }
+
+    public SocialGraph getSocialGraph() {
+        return socialGraph;
     }
 
     public void likePost(Long userId, Long postId) {
-        User user = userDAO.findById(userId);
-        Post post = postDAO.findById(postId);
+        metrics.time("SocialMediaFacade.likePost", () -> {
+            if (unitOfWork.inTransaction(em -> new PostDAO(em).like(postId, userId))) {
+                trendingPosts.onLike(postId, 1);
+            }
+        });
+    }
 
-        if (user != null && post != null) {
-            post.like(user);
-            postDAO.update(post);
-        }
+    public void unlikePost(Long userId, Long postId) {
+        metrics.time("SocialMediaFacade.unlikePost", () -> {
+            if (unitOfWork.inTransaction(em -> new PostDAO(em).unlike(postId, userId))) {
+                trendingPosts.onLike(postId, -1);
+            }
+        });
+    }
+
+    public boolean hasLiked(Long userId, Long postId) {
+        return metrics.time("SocialMediaFacade.hasLiked",
+                () -> unitOfWork.read(em -> new PostDAO(em).hasLiked(postId, userId)));
+    }
+
+    // ========== SEARCH OPERATIONS ==========
+    // Full-text search over the in-memory index: every term must match, "quoted phrases" as written.
+    // Results are ranked by relevance (BM25); the cursor continues the same ranking.
+
+    public Page<PostSummary> searchPosts(String query, String cursor, int limit) {
+        return searchPosts(query, SearchFilter.none(), cursor, limit);
+    }
+
+    public Page<PostSummary> searchPosts(String query, SearchFilter filter, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.searchPosts", () -> resolveHits(
+                search.searchPosts(query, filter, cursor, limit), limit,
+                (em, ids) -> new PostDAO(em).findSummariesByIdsInOrder(ids), PostSummary::getId, search::removePost));
+    }
+
+    public Page<CommentSummary> searchComments(String query, SearchFilter filter, String cursor, int limit) {
+        return metrics.time("SocialMediaFacade.searchComments", () -> resolveHits(
+                search.searchComments(query, filter, cursor, limit), limit,
+                (em, ids) -> new CommentDAO(em).findSummariesByIdsInOrder(ids), CommentSummary::getId,
+                search::removeComment));
+    }
+
+    public SearchService getSearchService() {
+        return search;
+    }
+
+    // ========== BULK OPERATIONS ==========
+    // For backfills: JDBC batched inserts, one transaction per chunk and a flat heap for any input size,
+    // as long as the Iterable produces the entities lazily. Build the entities with their constructors
+    // (and setParentComment for replies): the add* helpers would cascade the persist to other entities.
+    // Counters are updated once per chunk.
+
+    public BulkResult createUsers(Iterable<? extends User> users) {
+        return metrics.time("SocialMediaFacade.createUsers", () -> {
+            BulkResult result = unitOfWork.withEntityManager(em -> new UserDAO(em).createAll(users, BULK_CHUNK_SIZE));
+            registeredUsers.rebuild(unitOfWork);
+            return result;
+        });
+    }
+
+    // Hashtags attached to the posts must already exist
+    public BulkResult createPosts(Iterable<Post> posts) {
+        return metrics.time("SocialMediaFacade.createPosts", () -> {
+            BulkResult result = unitOfWork.withEntityManager(em -> new PostDAO(em).createAll(posts, BULK_CHUNK_SIZE));
+            timelineService.invalidateAll();
+            rebuildTrendingPosts();
+            search.rebuild(unitOfWork);
+            return result;
+        });
+    }
+
+    public BulkResult createComments(Iterable<Comment> comments) {
+        return metrics.time("SocialMediaFacade.createComments", () -> {
+            BulkResult result = unitOfWork.withEntityManager(
+                    em -> new CommentDAO(em).createAll(comments, BULK_CHUNK_SIZE));
+            rebuildTrendingPosts();
+            search.rebuild(unitOfWork);
+            return result;
+        });
+    }
+
+    // ========== EXPORT AND IMPORT ==========
+    // Users, posts with their hashtags, comments, likes and follows, streamed with a flat heap
+
+    public ExportResult exportData(Path directory, ExportFormat format, boolean gzip) {
+        return metrics.time("SocialMediaFacade.exportData",
+                () -> new DataExporter(unitOfWork).exportAll(directory, format, gzip));
+    }
+
+    public long exportTable(ExportTable table, WritableByteChannel channel, ExportFormat format, boolean gzip) {
+        return metrics.time("SocialMediaFacade.exportTable",
+                () -> new DataExporter(unitOfWork).export(table, channel, format, gzip));
+    }
+
+    // Load files in the export layout, for migrations. Running it again with the same checkpoint file
+    // resumes a failed import. The in-memory state is reloaded afterwards, after a failure too, since the
+    // batches written so far are committed.
+    public ImportResult importData(Path directory, ExportFormat format, boolean gzip, Path checkpointFile) {
+        return metrics.time("SocialMediaFacade.importData", () -> {
+            try {
+                return new DataImporter(unitOfWork, hashtagCache).importAll(directory, format, gzip, checkpointFile);
+            } finally {
+                reloadInMemoryState();
+            }
+        });
+    }
+
+    // ========== SYNTHETIC DATA ==========
+
+    // Fill the database with a realistic, reproducible dataset for load tests (see DataGenerator).
+    // The in-memory state is reloaded afterwards, after a failure too, like after an import.
+    public GeneratedData generateData(GeneratorConfig config) {
+        return metrics.time("SocialMediaFacade.generateData", () -> {
+            try {
+                return new DataGenerator(unitOfWork, hashtagCache).generate(config);
+            } finally {
+                reloadInMemoryState();
+            }
+        });
+    }
+
+    // After bulk writes that bypass the services: name filters, social graph, timelines, trending posts
+    // and search index are rebuilt from the database
+    private void reloadInMemoryState() {
+        registeredUsers.rebuild(unitOfWork);
+        socialGraph.load(unitOfWork);
+        timelineService.invalidateAll();
+        rebuildTrendingPosts();
+        search.rebuild(unitOfWork);
     }
 
     // ========== COMPLEX SEARCH OPERATIONS ==========
 
     // 1. Find active users (posted recently and have followers)
     public List<User> findActiveUsers(LocalDateTime since) {
-        String jpql = "SELECT DISTINCT u FROM User u " +
-                "WHERE u.id IN (" +
-                "  SELECT p.author.id FROM Post p WHERE p.timestamp > :since" +
-                ")";
-
-        return em.createQuery(jpql, User.class)
-                .setParameter("since", since)
-                .getResultList();
+        return metrics.time("SocialMediaFacade.findActiveUsers", () -> {
+            String jpql = "SELECT DISTINCT u FROM User u " +
+                    "WHERE u.id IN (" +
+                    "  SELECT p.author.id FROM Post p WHERE p.timestamp > :since" +
+                    ")";
+
+            return unitOfWork.read(em -> em.createQuery(jpql, User.class)
+                    .setParameter("since", since)
+                    .getResultList());
+        });
     }
 
     // 2. Find popular posts by hashtag and likes
     public List<Post> findPopularPostsByHashtag(String hashtag, int minLikes) {
-        String jpql = "SELECT p FROM Post p " +
-                "JOIN p.hashtags h " +
-                "WHERE h.tag = :hashtag " +
-                "AND SIZE(p.likedBy) >= :minLikes " +
-                "ORDER BY SIZE(p.likedBy) DESC, p.timestamp DESC";
-
-        return em.createQuery(jpql, Post.class)
-                .setParameter("hashtag", hashtag)
-                .setParameter("minLikes", minLikes)
-                .getResultList();
+        return metrics.time("SocialMediaFacade.findPopularPostsByHashtag", () -> {
+            String jpql = "SELECT p FROM Post p " +
+                    "JOIN p.hashtags h " +
+                    "WHERE h.tag = :hashtag " +
+                    "AND p.likeCount >= :minLikes " +
+                    "ORDER BY p.likeCount DESC, p.timestamp DESC";
+
+            return unitOfWork.read(em -> em.createQuery(jpql, Post.class)
+                    .setParameter("hashtag", hashtag)
+                    .setParameter("minLikes", minLikes)
+                    .getResultList());
+        });
     }
 
     // 3. Find users engaging with specific hashtags
     public List<User> findUsersEngagingWithHashtags(List<String> hashtags) {
-        String jpql = "SELECT DISTINCT u FROM User u " +
-                "JOIN u.posts p " +
-                "JOIN p.hashtags h " +
-                "WHERE h.tag IN :hashtags " +
-                "GROUP BY u " +
-                "HAVING COUNT(DISTINCT h.tag) >= :minTags ";
-
-        return em.createQuery(jpql, User.class)
-                .setParameter("hashtags", hashtags)
-                .setParameter("minTags", (long) (hashtags.size() / 2 + 1))
-                .getResultList();
+        return metrics.time("SocialMediaFacade.findUsersEngagingWithHashtags", () -> {
+            String jpql = "SELECT DISTINCT u FROM User u " +
+                    "JOIN u.posts p " +
+                    "JOIN p.hashtags h " +
+                    "WHERE h.tag IN :hashtags " +
+                    "GROUP BY u " +
+                    "HAVING COUNT(DISTINCT h.tag) >= :minTags ";
+
+            return unitOfWork.read(em -> em.createQuery(jpql, User.class)
+                    .setParameter("hashtags", hashtags)
+                    .setParameter("minTags", (long) (hashtags.size() / 2 + 1))
+                    .getResultList());
+        });
     }
 
     // 4. Find discussions (posts with many comments and replies)
     public List<Post> findActiveDiscussions(int minComments, int minReplies) {
-        String jpql = "SELECT p FROM Post p " +
-                "WHERE p.id IN (" +
-                "  SELECT p2.id FROM Post p2 " +
-                "  WHERE (" +
-                "    SELECT COUNT(c) FROM Comment c WHERE c.post = p2" +
-                "  ) >= :minComments " +
-                "  AND (" +
-                "    SELECT COUNT(c2) FROM Comment c2 " +
-                "    WHERE c2.post = p2 AND (" +
-                "      SELECT COUNT(r) FROM Comment r WHERE r.parentComment = c2" +
-                "    ) > 0" +
-                "  ) >= :minReplies" +
-                ")";
-
-        return em.createQuery(jpql, Post.class)
-                .setParameter("minComments", (long) minComments)  // CAST to Long!
-                .setParameter("minReplies", (long) minReplies)    // CAST to Long!
-                .getResultList();
+        return metrics.time("SocialMediaFacade.findActiveDiscussions", () -> {
+            String jpql = "SELECT p FROM Post p " +
+                    "WHERE p.commentCount >= :minComments " +
+                    "AND p.repliedCommentCount >= :minReplies " +
+                    "ORDER BY p.commentCount DESC, p.id DESC";
+
+            return unitOfWork.read(em -> em.createQuery(jpql, Post.class)
+                    .setParameter("minComments", minComments)
+                    .setParameter("minReplies", minReplies)
+                    .getResultList());
+        });
     }
 
     // ========== UTILITY METHODS ==========
 
-    public void close() {
-        if (em != null && em.isOpen()) {
-            em.close();
+    private Post persistPost(EntityManager em, String content, String postType, Long authorId) {
+        User author = new UserDAO(em).findById(authorId);
+        if (author == null) {
+            throw new IllegalArgumentException("Author not found with id: " + authorId);
+        }
+
+        Post post = new Post(content, postType, author);
+        new PostDAO(em).create(post);
+        return post;
+    }
+
+    private void userRegistered(User user) {
+        registeredUsers.add(user.getUsername(), user.getEmail());
+        rebuildRegisteredUsersIfNeeded();
+    }
+
+    private void rebuildRegisteredUsersIfNeeded() {
+        if (registeredUsers.needsRebuild()) {
+            registeredUsers.rebuild(unitOfWork);
         }
+    }
+
+    private void rebuildTrendingPosts() {
+        trendingPosts.rebuild(unitOfWork.read(em -> new PostDAO(em)
+                .findEngagementSince(LocalDateTime.now().minus(trendingPosts.getWindow()))));
+    }
+
+    // Resolve a page of search hits with one query. Hits that no longer resolve were deleted after the
+    // search: they are dropped from the page and from the index.
+    private <T> Page<T> resolveHits(List<SearchHit> hits, int limit,
+                                    BiFunction<EntityManager, List<Long>, List<T>> fetch,
+                                    Function<T, Long> idOf, Consumer<Long> removeStale) {
+        Page<SearchHit> page = Page.of(hits, limit, SearchHit::toCursor);
+        List<Long> ids = page.getItems().stream().map(SearchHit::getId).collect(Collectors.toList());
+        List<T> rows = unitOfWork.read(em -> fetch.apply(em, ids));
+        if (rows.size() < ids.size()) {
+            Set<Long> found = rows.stream().map(idOf).collect(Collectors.toSet());
+            ids.stream().filter(id -> !found.contains(id)).forEach(removeStale);
+        }
+        return new Page<>(rows, page.getNextCursor());
+    }
+
+    public void close() {
+        metrics.close();
         if (emf != null && emf.isOpen()) {
             emf.close();
         }
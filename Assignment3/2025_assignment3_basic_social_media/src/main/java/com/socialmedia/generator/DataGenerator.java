@@ -0,0 +1,450 @@
+package com.socialmedia.generator;
+
+import com.socialmedia.dao.CommentDAO;
+import com.socialmedia.dao.HashtagCache;
+import com.socialmedia.dao.HashtagDAO;
+import com.socialmedia.dao.PostDAO;
+import com.socialmedia.dao.UnitOfWork;
+import com.socialmedia.dao.UserDAO;
+import com.socialmedia.entities.AdminUser;
+import com.socialmedia.entities.Comment;
+import com.socialmedia.entities.Post;
+import com.socialmedia.entities.RegularUser;
+import com.socialmedia.entities.User;
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Fills the database with a synthetic social network shaped like a real one, for load tests and benchmarks:
+// - follows go to users drawn by a Zipf law over a popularity ranking, so follower counts are power-law
+//   distributed (a few celebrities, a long tail with almost none), while followings per user are lognormal
+// - hashtags, commenters, likers and the words of the texts are drawn by Zipf laws as well
+// - posts, comments and likes per user or post are lognormal around the configured averages
+// - posts come in sessions of a few minutes, which start more often in the evening than in the morning;
+//   comments follow their post, and replies their comment, after exponential delays
+// - comments form threads: about half of them reply to an earlier comment of the post
+//
+// Users are generated in chunks of 1000, each with its own random stream derived from the seed, the phase
+// and the chunk number: the same configuration gives the same data whatever the number of threads and
+// the order in which the chunks run (only the generated ids differ). Chunks are written in parallel with the
+// bulk paths of the DAOs: users first, then the follows and the content (posts, comments and likes of the
+// users of a chunk) of all the chunks. Hashtag uses are added up in memory and written once at the end,
+// so that the threads do not queue on the counter rows of the popular tags.
+public class DataGenerator {
+
+    private static final int USERS_PER_CHUNK = 1_000;
+    // rows per transaction
+    private static final int WRITE_CHUNK_SIZE = 5_000;
+
+    // sigma of the lognormal counts: with 1, a tenth of the users post about 3.5 times the average
+    private static final double COUNT_SPREAD = 1.0;
+    private static final double REPLY_PROBABILITY = 0.5;
+    private static final int MAX_REPLY_DEPTH = 5;
+    private static final int MAX_TAGS_PER_POST = 3;
+    private static final double PUBLIC_SHARE = 0.9;
+    private static final double NEW_SESSION_PROBABILITY = 0.3;
+    private static final double MEAN_POST_GAP_SECONDS = 10 * 60;
+    private static final double MEAN_COMMENT_DELAY_SECONDS = 2 * 60 * 60;
+    // hour of the day with the most activity; twelve hours later it is at a tenth of it
+    private static final int PEAK_HOUR = 20;
+
+    private static final String[] WORDS = {
+            "the", "a", "today", "new", "great", "just", "love", "day", "time", "people", "really", "work",
+            "good", "think", "world", "life", "best", "happy", "week", "music", "game", "news", "photo", "friends",
+            "city", "coffee", "project", "weekend", "trip", "book", "movie", "team", "idea", "code", "food",
+            "summer", "night", "morning", "update", "launch", "release", "travel", "sport", "art", "design",
+            "science", "data", "market", "health", "family"
+    };
+    private static final String[] LOCATIONS = {
+            "Rome", "Milan", "Naples", "Turin", "Paris", "Berlin", "Madrid", "London", "Vienna", "Lisbon",
+            "Amsterdam", "Warsaw", "Athens", "Dublin", "Prague", "Stockholm"
+    };
+    private static final String[] ADMIN_LEVELS = {"SUPPORT", "MODERATOR", "SUPER_ADMIN"};
+    private static final String[] DEPARTMENTS = {"Trust and Safety", "Support", "Engineering", "Community"};
+    // with the share of the posts of each type
+    private static final String[] POST_TYPES = {"TEXT", "IMAGE", "VIDEO"};
+    private static final double[] POST_TYPE_SHARES = {0.75, 0.2, 0.05};
+
+    // phases, for the random streams
+    private static final int USERS = 1;
+    private static final int FOLLOWS = 2;
+    private static final int CONTENT = 3;
+
+    private final UnitOfWork unitOfWork;
+    private final HashtagCache hashtagCache;
+
+    public DataGenerator(UnitOfWork unitOfWork, HashtagCache hashtagCache) {
+        this.unitOfWork = unitOfWork;
+        this.hashtagCache = hashtagCache;
+    }
+
+    // Usernames must not be in use: pick a new prefix to add to existing data
+    public GeneratedData generate(GeneratorConfig config) {
+        long start = System.nanoTime();
+        Run run = new Run(config);
+        unitOfWork.withEntityManager(em -> {
+            new HashtagDAO(em, hashtagCache).createMissing(run.tags);
+            return null;
+        });
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(config.getThreads(), task -> {
+            Thread thread = new Thread(task, "generator-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            int chunks = (config.getUsers() + USERS_PER_CHUNK - 1) / USERS_PER_CHUNK;
+            List<Callable<long[]>> tasks = new ArrayList<>();
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int index = chunk;
+                tasks.add(() -> generateUsers(run, index));
+            }
+            long[] counts = runAll(executor, tasks);
+
+            tasks.clear();
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int index = chunk;
+                tasks.add(() -> generateFollows(run, index));
+                tasks.add(() -> generateContent(run, index));
+            }
+            long[] more = runAll(executor, tasks);
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += more[i];
+            }
+
+            Map<String, Integer> usesPerTag = new LinkedHashMap<>(run.usesPerTag);
+            unitOfWork.withEntityManager(em -> {
+                new HashtagDAO(em, hashtagCache).addUsage(usesPerTag);
+                return null;
+            });
+            return new GeneratedData(counts[0], counts[1], counts[2], counts[3], counts[4], run.tags,
+                    System.nanoTime() - start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Each task returns {users, follows, posts, comments, likes} written. A failure cancels the other tasks.
+    private static long[] runAll(ExecutorService executor, List<Callable<long[]>> tasks) {
+        List<Future<long[]>> futures = new ArrayList<>(tasks.size());
+        tasks.forEach(task -> futures.add(executor.submit(task)));
+        long[] counts = new long[5];
+        try {
+            for (Future<long[]> future : futures) {
+                long[] done = future.get();
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += done[i];
+                }
+            }
+            return counts;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Data generation interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Data generation failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private long[] generateUsers(Run run, int chunk) {
+        GeneratorConfig config = run.config;
+        SplittableRandom random = random(config.getSeed(), USERS, chunk);
+        int from = chunk * USERS_PER_CHUNK;
+        int to = Math.min(config.getUsers(), from + USERS_PER_CHUNK);
+
+        List<User> users = new ArrayList<>(to - from);
+        for (int index = from; index < to; index++) {
+            String username = config.getUsernamePrefix() + index;
+            String email = username + "@example.com";
+            User user;
+            if (random.nextDouble() < config.getAdminShare()) {
+                user = new AdminUser(username, email, pick(random, ADMIN_LEVELS), pick(random, DEPARTMENTS));
+            } else {
+                LocalDate birthDate = LocalDate.of(1950, 1, 1).plusDays(random.nextInt(58 * 365));
+                user = new RegularUser(username, email, text(random, run.words, 3, 12), birthDate,
+                        pick(random, LOCATIONS));
+            }
+            // joined up to two years before the period of the posts
+            user.setJoinDate(config.getFrom().toLocalDate().minusDays(random.nextInt(730)));
+            users.add(user);
+        }
+        unitOfWork.withEntityManager(em -> new UserDAO(em).createAll(users, WRITE_CHUNK_SIZE));
+        for (int i = 0; i < users.size(); i++) {
+            run.userIds[from + i] = users.get(i).getId();
+        }
+        return new long[] {users.size(), 0, 0, 0, 0};
+    }
+
+    private long[] generateFollows(Run run, int chunk) {
+        GeneratorConfig config = run.config;
+        SplittableRandom random = random(config.getSeed(), FOLLOWS, chunk);
+        int from = chunk * USERS_PER_CHUNK;
+        int to = Math.min(config.getUsers(), from + USERS_PER_CHUNK);
+
+        List<long[]> edges = new ArrayList<>();
+        for (int follower = from; follower < to; follower++) {
+            int follows = (int) Math.min(config.getUsers() - 1, count(random, config.getFollowsPerUser()));
+            for (int followed : run.popularUsers(random, follows, follower)) {
+                edges.add(new long[] {run.userIds[follower], run.userIds[followed]});
+            }
+        }
+        long[] added = new long[1];
+        inChunks(edges, batch -> added[0] += unitOfWork.withEntityManager(em -> new UserDAO(em).followAll(batch)));
+        return new long[] {0, added[0], 0, 0, 0};
+    }
+
+    // Posts, comments and likes of the users of a chunk
+    private long[] generateContent(Run run, int chunk) {
+        GeneratorConfig config = run.config;
+        SplittableRandom random = random(config.getSeed(), CONTENT, chunk);
+        int from = chunk * USERS_PER_CHUNK;
+        int to = Math.min(config.getUsers(), from + USERS_PER_CHUNK);
+
+        return unitOfWork.withEntityManager(em -> {
+            List<Post> posts = new ArrayList<>();
+            List<List<String>> postTags = new ArrayList<>();
+            List<Integer> authors = new ArrayList<>();
+            for (int author = from; author < to; author++) {
+                long count = count(random, config.getPostsPerUser());
+                LocalDateTime time = run.sessionStart(random);
+                for (long i = 0; i < count; i++) {
+                    if (i > 0) {
+                        time = random.nextDouble() < NEW_SESSION_PROBABILITY
+                                ? run.sessionStart(random)
+                                : after(random, time, MEAN_POST_GAP_SECONDS);
+                    }
+                    if (time.isAfter(config.getTo())) {
+                        time = config.getTo();
+                    }
+                    List<String> tags = run.tags(random);
+                    StringBuilder content = new StringBuilder(text(random, run.words, 5, 25));
+                    tags.forEach(tag -> content.append(" #").append(tag));
+                    Post post = new Post(content.toString(), postType(random),
+                            em.getReference(User.class, run.userIds[author]));
+                    post.setTimestamp(time);
+                    post.setPublic(random.nextDouble() < PUBLIC_SHARE);
+                    posts.add(post);
+                    postTags.add(tags);
+                    authors.add(author);
+                }
+            }
+            new PostDAO(em).createAll(posts, WRITE_CHUNK_SIZE);
+
+            Map<Long, List<String>> tagsByPost = new LinkedHashMap<>();
+            for (int i = 0; i < posts.size(); i++) {
+                if (!postTags.get(i).isEmpty()) {
+                    tagsByPost.put(posts.get(i).getId(), postTags.get(i));
+                    postTags.get(i).forEach(tag -> run.usesPerTag.merge(tag, 1, Integer::sum));
+                }
+            }
+            new PostDAO(em).tagAll(tagsByPost);
+
+            List<Comment> comments = new ArrayList<>();
+            List<long[]> likes = new ArrayList<>();
+            for (int i = 0; i < posts.size(); i++) {
+                Post post = posts.get(i);
+                addComments(em, run, random, post, comments);
+                int likeCount = (int) Math.min(config.getUsers() - 1, count(random, config.getLikesPerPost()));
+                for (int liker : run.popularUsers(random, likeCount, authors.get(i))) {
+                    likes.add(new long[] {post.getId(), run.userIds[liker]});
+                }
+            }
+            new CommentDAO(em).createAll(comments, WRITE_CHUNK_SIZE);
+
+            long[] liked = new long[1];
+            inChunks(likes, batch -> liked[0] += new PostDAO(em).likeAll(batch));
+            return new long[] {0, 0, posts.size(), comments.size(), liked[0]};
+        });
+    }
+
+    // A thread is a list: each comment replies to the post or to an earlier comment not too deep already
+    private static void addComments(EntityManager em, Run run, SplittableRandom random, Post post,
+                                    List<Comment> comments) {
+        long count = count(random, run.config.getCommentsPerPost());
+        Post reference = em.getReference(Post.class, post.getId());
+        List<Comment> thread = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            Comment parent = null;
+            int depth = 0;
+            if (!thread.isEmpty() && random.nextDouble() < REPLY_PROBABILITY) {
+                int candidate = random.nextInt(thread.size());
+                if (depths.get(candidate) < MAX_REPLY_DEPTH) {
+                    parent = thread.get(candidate);
+                    depth = depths.get(candidate) + 1;
+                }
+            }
+            int author = run.popularUser(random);
+            Comment comment = new Comment(text(random, run.words, 3, 15), reference,
+                    em.getReference(User.class, run.userIds[author]));
+            comment.setTimestamp(after(random, parent != null ? parent.getTimestamp() : post.getTimestamp(),
+                    MEAN_COMMENT_DELAY_SECONDS));
+            comment.setParentComment(parent);
+            thread.add(comment);
+            depths.add(depth);
+            comments.add(comment);
+        }
+    }
+
+    private static <T> void inChunks(List<T> rows, Consumer<List<T>> write) {
+        for (int from = 0; from < rows.size(); from += WRITE_CHUNK_SIZE) {
+            write.accept(rows.subList(from, Math.min(rows.size(), from + WRITE_CHUNK_SIZE)));
+        }
+    }
+
+    // Lognormal with the given mean, rounded up or down at random so that the mean is kept
+    private static long count(SplittableRandom random, double mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+        double mu = Math.log(mean) - COUNT_SPREAD * COUNT_SPREAD / 2;
+        double value = Math.exp(mu + COUNT_SPREAD * random.nextGaussian());
+        long whole = (long) value;
+        return whole + (random.nextDouble() < value - whole ? 1 : 0);
+    }
+
+    private static LocalDateTime after(SplittableRandom random, LocalDateTime time, double meanSeconds) {
+        return time.plusSeconds((long) (-meanSeconds * Math.log(1 - random.nextDouble())));
+    }
+
+    private static String text(SplittableRandom random, ZipfSampler words, int minWords, int maxWords) {
+        int count = minWords + random.nextInt(maxWords - minWords + 1);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[words.sample(random) - 1]);
+        }
+        return text.toString();
+    }
+
+    private static String postType(SplittableRandom random) {
+        double share = random.nextDouble();
+        for (int i = 0; i < POST_TYPES.length - 1; i++) {
+            share -= POST_TYPE_SHARES[i];
+            if (share < 0) {
+                return POST_TYPES[i];
+            }
+        }
+        return POST_TYPES[POST_TYPES.length - 1];
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    // Independent stream per phase and chunk: MurmurHash3 finalizer over the seed and the stream number
+    private static SplittableRandom random(long seed, int phase, int chunk) {
+        long hash = seed ^ (((long) phase << 32) | chunk) * 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return new SplittableRandom(hash);
+    }
+
+    // State shared by the chunks of one generation
+    private static final class Run {
+
+        private final GeneratorConfig config;
+        // generated id of each user, by user number
+        private final long[] userIds;
+        private final List<String> tags = new ArrayList<>();
+        private final Map<String, Integer> usesPerTag = new ConcurrentHashMap<>();
+        private final ZipfSampler userRanks;
+        private final ZipfSampler tagRanks;
+        private final ZipfSampler words;
+        // popularity rank to user number: a permutation, so that popularity does not follow the user numbers
+        private final long step;
+        private final long offset;
+        private final long periodSeconds;
+
+        Run(GeneratorConfig config) {
+            this.config = config;
+            this.userIds = new long[config.getUsers()];
+            for (int i = 0; i < config.getHashtags(); i++) {
+                tags.add("tag" + i);
+            }
+            this.userRanks = new ZipfSampler(config.getUsers(), config.getZipfExponent());
+            this.tagRanks = new ZipfSampler(config.getHashtags(), config.getZipfExponent());
+            this.words = new ZipfSampler(WORDS.length, 1.0);
+
+            SplittableRandom random = random(config.getSeed(), 0, 0);
+            long n = config.getUsers();
+            long candidate = 1 + random.nextLong(n);
+            while (gcd(candidate, n) != 1) {
+                candidate = candidate % n + 1;
+            }
+            this.step = candidate;
+            this.offset = random.nextLong(n);
+            this.periodSeconds = Duration.between(config.getFrom(), config.getTo()).getSeconds();
+        }
+
+        int popularUser(SplittableRandom random) {
+            return (int) (((userRanks.sample(random) - 1) * step + offset) % config.getUsers());
+        }
+
+        // Distinct users other than the given one, by popularity. Gives up on a few of them when the most
+        // popular users are nearly all taken already, so the count is a target.
+        Set<Integer> popularUsers(SplittableRandom random, int count, int except) {
+            Set<Integer> users = new HashSet<>();
+            for (int attempts = 4 * count + 16; users.size() < count && attempts > 0; attempts--) {
+                int user = popularUser(random);
+                if (user != except) {
+                    users.add(user);
+                }
+            }
+            return users;
+        }
+
+        List<String> tags(SplittableRandom random) {
+            int count = random.nextInt(MAX_TAGS_PER_POST + 1);
+            List<String> chosen = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String tag = tags.get(tagRanks.sample(random) - 1);
+                if (!chosen.contains(tag)) {
+                    chosen.add(tag);
+                }
+            }
+            return chosen;
+        }
+
+        // Uniform over the period, thinned by the hour of the day
+        LocalDateTime sessionStart(SplittableRandom random) {
+            while (true) {
+                LocalDateTime time = config.getFrom().plusSeconds((long) (random.nextDouble() * periodSeconds));
+                double weight = 0.55 + 0.45 * Math.cos(2 * Math.PI * (time.getHour() - PEAK_HOUR) / 24);
+                if (random.nextDouble() < weight) {
+                    return time;
+                }
+            }
+        }
+
+        private static long gcd(long a, long b) {
+            return b == 0 ? a : gcd(b, a % b);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.socialmedia.generator;
+
+import java.util.Collections;
+import java.util.List;
+
+// Outcome of a generation: rows written per kind, the hashtags the posts draw from and elapsed time
+public class GeneratedData {
+
+    private final long users;
+    private final long follows;
+    private final long posts;
+    private final long comments;
+    private final long likes;
+    // by popularity rank, the most used first
+    private final List<String> hashtags;
+    private final long elapsedNanos;
+
+    public GeneratedData(long users, long follows, long posts, long comments, long likes, List<String> hashtags,
+                         long elapsedNanos) {
+        this.users = users;
+        this.follows = follows;
+        this.posts = posts;
+        this.comments = comments;
+        this.likes = likes;
+        this.hashtags = Collections.unmodifiableList(hashtags);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getUsers() {
+        return users;
+    }
+
+    public long getFollows() {
+        return follows;
+    }
+
+    public long getPosts() {
+        return posts;
+    }
+
+    public long getComments() {
+        return comments;
+    }
+
+    public long getLikes() {
+        return likes;
+    }
+
+    public List<String> getHashtags() {
+        return hashtags;
+    }
+
+    public long getTotalRows() {
+        return users + follows + posts + comments + likes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : getTotalRows() * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "GeneratedData{users=" + users + ", follows=" + follows + ", posts=" + posts +
+                ", comments=" + comments + ", likes=" + likes + ", elapsedMillis=" + getElapsedMillis() +
+                ", rowsPerSecond=" + String.format("%.0f", getRowsPerSecond()) + "}";
+    }
+}
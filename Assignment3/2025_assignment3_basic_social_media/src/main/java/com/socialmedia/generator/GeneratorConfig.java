@@ -0,0 +1,197 @@
+package com.socialmedia.generator;
+
+import java.time.LocalDateTime;
+
+// Size and shape of a generated dataset; every with* method returns a new configuration.
+// Averages are per user or per post: the actual counts are heavy-tailed around them.
+public final class GeneratorConfig {
+
+    private int users;
+    private long seed = 42;
+    private String usernamePrefix = "user";
+    private double adminShare = 0.001;
+    private double postsPerUser = 5;
+    private double commentsPerPost = 2;
+    private double likesPerPost = 5;
+    private double followsPerUser = 20;
+    private int hashtags = 1_000;
+    private double zipfExponent = 1.1;
+    private LocalDateTime from = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private LocalDateTime to = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private GeneratorConfig(int users) {
+        if (users <= 0) {
+            throw new IllegalArgumentException("Number of users must be positive: " + users);
+        }
+        this.users = users;
+    }
+
+    private GeneratorConfig copy() {
+        GeneratorConfig copy = new GeneratorConfig(users);
+        copy.seed = seed;
+        copy.usernamePrefix = usernamePrefix;
+        copy.adminShare = adminShare;
+        copy.postsPerUser = postsPerUser;
+        copy.commentsPerPost = commentsPerPost;
+        copy.likesPerPost = likesPerPost;
+        copy.followsPerUser = followsPerUser;
+        copy.hashtags = hashtags;
+        copy.zipfExponent = zipfExponent;
+        copy.from = from;
+        copy.to = to;
+        copy.threads = threads;
+        return copy;
+    }
+
+    public static GeneratorConfig of(int users) {
+        return new GeneratorConfig(users);
+    }
+
+    // Same seed and settings, same data (generated ids aside)
+    public GeneratorConfig withSeed(long seed) {
+        GeneratorConfig copy = copy();
+        copy.seed = seed;
+        return copy;
+    }
+
+    // Usernames are the prefix and the user number; emails follow, at example.com
+    public GeneratorConfig withUsernamePrefix(String usernamePrefix) {
+        GeneratorConfig copy = copy();
+        copy.usernamePrefix = usernamePrefix;
+        return copy;
+    }
+
+    public GeneratorConfig withAdminShare(double adminShare) {
+        checkNonNegative("Admin share", adminShare);
+        GeneratorConfig copy = copy();
+        copy.adminShare = adminShare;
+        return copy;
+    }
+
+    public GeneratorConfig withPostsPerUser(double postsPerUser) {
+        checkNonNegative("Posts per user", postsPerUser);
+        GeneratorConfig copy = copy();
+        copy.postsPerUser = postsPerUser;
+        return copy;
+    }
+
+    public GeneratorConfig withCommentsPerPost(double commentsPerPost) {
+        checkNonNegative("Comments per post", commentsPerPost);
+        GeneratorConfig copy = copy();
+        copy.commentsPerPost = commentsPerPost;
+        return copy;
+    }
+
+    public GeneratorConfig withLikesPerPost(double likesPerPost) {
+        checkNonNegative("Likes per post", likesPerPost);
+        GeneratorConfig copy = copy();
+        copy.likesPerPost = likesPerPost;
+        return copy;
+    }
+
+    public GeneratorConfig withFollowsPerUser(double followsPerUser) {
+        checkNonNegative("Follows per user", followsPerUser);
+        GeneratorConfig copy = copy();
+        copy.followsPerUser = followsPerUser;
+        return copy;
+    }
+
+    // Size of the hashtag vocabulary, whose usage follows the Zipf exponent like user popularity
+    public GeneratorConfig withHashtags(int hashtags) {
+        if (hashtags <= 0) {
+            throw new IllegalArgumentException("Number of hashtags must be positive: " + hashtags);
+        }
+        GeneratorConfig copy = copy();
+        copy.hashtags = hashtags;
+        return copy;
+    }
+
+    public GeneratorConfig withZipfExponent(double zipfExponent) {
+        if (zipfExponent <= 0) {
+            throw new IllegalArgumentException("Zipf exponent must be positive: " + zipfExponent);
+        }
+        GeneratorConfig copy = copy();
+        copy.zipfExponent = zipfExponent;
+        return copy;
+    }
+
+    // Posts are written in this period; comments may come a little after its end
+    public GeneratorConfig withPeriod(LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Empty period: " + from + " to " + to);
+        }
+        GeneratorConfig copy = copy();
+        copy.from = from;
+        copy.to = to;
+        return copy;
+    }
+
+    // Chunks written at once, each on its own connection: keep it below the connection pool size
+    public GeneratorConfig withThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        GeneratorConfig copy = copy();
+        copy.threads = threads;
+        return copy;
+    }
+
+    private static void checkNonNegative(String name, double value) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " must not be negative: " + value);
+        }
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public String getUsernamePrefix() {
+        return usernamePrefix;
+    }
+
+    public double getAdminShare() {
+        return adminShare;
+    }
+
+    public double getPostsPerUser() {
+        return postsPerUser;
+    }
+
+    public double getCommentsPerPost() {
+        return commentsPerPost;
+    }
+
+    public double getLikesPerPost() {
+        return likesPerPost;
+    }
+
+    public double getFollowsPerUser() {
+        return followsPerUser;
+    }
+
+    public int getHashtags() {
+        return hashtags;
+    }
+
+    public double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+}
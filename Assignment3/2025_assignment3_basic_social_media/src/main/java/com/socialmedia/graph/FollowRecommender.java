@@ -0,0 +1,222 @@
+package com.socialmedia.graph;
+
+import com.socialmedia.dao.HashtagDAO;
+import com.socialmedia.dao.UnitOfWork;
+import com.socialmedia.dao.UserDAO;
+import com.socialmedia.util.LongIntHashMap;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// "Who to follow": users followed by the users someone follows (2 hops in the social graph), ranked by
+// how many of them lead to the candidate, plus bonuses for hashtags in common and for the same location.
+//
+// precomputeAll ranks every user's candidates in parallel with fork/join and keeps the results;
+// recommend answers from them, or computes a single user on demand within a time budget.
+public class FollowRecommender {
+
+    // score = mutual connections + HASHTAG_WEIGHT * Jaccard similarity of the hashtags + LOCATION_WEIGHT
+    private static final double HASHTAG_WEIGHT = 2.0;
+    private static final double LOCATION_WEIGHT = 1.0;
+
+    // Edges followed per hop, so that following (or being) a celebrity does not blow up the traversal
+    private static final int MAX_EDGES_PER_HOP = 1_000;
+    // Users ranked by each fork/join leaf task
+    private static final int USERS_PER_TASK = 64;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final Comparator<Recommendation> RANKING = Comparator.comparingDouble(Recommendation::getScore)
+            .reversed()
+            .thenComparingLong(Recommendation::getUserId);
+
+    private final SocialGraph graph;
+    private final UnitOfWork unitOfWork;
+    private final ForkJoinPool pool;
+
+    private volatile Map<Long, List<Recommendation>> precomputed = new ConcurrentHashMap<>();
+
+    public FollowRecommender(SocialGraph graph, UnitOfWork unitOfWork) {
+        this(graph, unitOfWork, ForkJoinPool.commonPool());
+    }
+
+    public FollowRecommender(SocialGraph graph, UnitOfWork unitOfWork, ForkJoinPool pool) {
+        this.graph = graph;
+        this.unitOfWork = unitOfWork;
+        this.pool = pool;
+    }
+
+    // Batch mode: the best limit candidates of every user who follows someone, replacing the previous results.
+    // Hashtags and locations are read up front, so the parallel tasks only touch memory.
+    // Returns the number of users with recommendations.
+    public int precomputeAll(int limit) {
+        checkLimit(limit);
+        Profiles profiles = unitOfWork.read(em -> new Profiles(
+                new HashtagDAO(em).findHashtagsUsedByAllUsers(), new UserDAO(em).findAllLocations()));
+        long[] users = graph.getUserIds();
+        Map<Long, List<Recommendation>> results = new ConcurrentHashMap<>();
+        pool.invoke(new BatchTask(users, 0, users.length, limit, profiles, results));
+        precomputed = results;
+        return results.size();
+    }
+
+    // Precomputed recommendations (no more than were precomputed), minus the users followed or deleted since.
+    // Users with none are computed now: past the budget the traversal stops, and the candidates found
+    // so far are ranked by mutual connections only. A deleted user gets none, and its precomputed ones
+    // are dropped.
+    public List<Recommendation> recommend(long userId, int limit, Duration budget) {
+        checkLimit(limit);
+        if (!graph.contains(userId)) {
+            precomputed.remove(userId);
+            return new ArrayList<>();
+        }
+        List<Recommendation> ready = precomputed.get(userId);
+        if (ready != null) {
+            List<Recommendation> current = new ArrayList<>(Math.min(limit, ready.size()));
+            for (Recommendation recommendation : ready) {
+                long candidate = recommendation.getUserId();
+                if (current.size() < limit && graph.contains(candidate) && !graph.follows(userId, candidate)) {
+                    current.add(recommendation);
+                }
+            }
+            return current;
+        }
+
+        long deadline = System.nanoTime() + budget.toNanos();
+        Candidates candidates = collectCandidates(userId, deadline);
+        Profiles profiles = Profiles.NONE;
+        if (!candidates.truncated && System.nanoTime() < deadline) {
+            List<Long> ids = new ArrayList<>();
+            ids.add(userId);
+            candidates.mutuals.forEach((candidate, count) -> ids.add(candidate));
+            profiles = unitOfWork.read(em -> new Profiles(
+                    new HashtagDAO(em).findHashtagsUsedByUsers(ids), new UserDAO(em).findLocations(ids)));
+        }
+        return rank(userId, candidates, profiles, limit);
+    }
+
+    public int getPrecomputedUserCount() {
+        return precomputed.size();
+    }
+
+    // Count, for every user 2 hops away, the followed users leading to it
+    private Candidates collectCandidates(long userId, long deadline) {
+        Candidates candidates = new Candidates();
+        long[] followed = graph.getFollowingIds(userId, MAX_EDGES_PER_HOP);
+        for (int i = 0; i < followed.length; i++) {
+            if (deadline != NO_DEADLINE && System.nanoTime() > deadline) {
+                candidates.truncated = true;
+                break;
+            }
+            for (long candidate : graph.getFollowingIds(followed[i], MAX_EDGES_PER_HOP)) {
+                if (candidate != userId) {
+                    int count = candidates.mutuals.get(candidate);
+                    candidates.mutuals.put(candidate, count < 0 ? 1 : count + 1);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private List<Recommendation> rank(long userId, Candidates candidates, Profiles profiles, int limit) {
+        Set<String> tags = profiles.tagsOf(userId);
+        String location = profiles.locations.get(userId);
+        // worst recommendation on top, so that it is the one dropped past the limit
+        PriorityQueue<Recommendation> best = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        candidates.mutuals.forEach((candidate, mutual) -> {
+            if (graph.follows(userId, candidate)) {
+                return;
+            }
+            Set<String> candidateTags = profiles.tagsOf(candidate);
+            int shared = 0;
+            for (String tag : candidateTags) {
+                if (tags.contains(tag)) {
+                    shared++;
+                }
+            }
+            double similarity = shared == 0 ? 0 : (double) shared / (tags.size() + candidateTags.size() - shared);
+            boolean sameLocation = location != null && location.equalsIgnoreCase(profiles.locations.get(candidate));
+            double score = mutual + HASHTAG_WEIGHT * similarity + (sameLocation ? LOCATION_WEIGHT : 0);
+            best.add(new Recommendation(candidate, mutual, shared, sameLocation, score));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        });
+        List<Recommendation> ranked = new ArrayList<>(best);
+        ranked.sort(RANKING);
+        return ranked;
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Recommendation limit must be positive: " + limit);
+        }
+    }
+
+    // Splits the users in halves down to USERS_PER_TASK, ranked sequentially
+    private final class BatchTask extends RecursiveAction {
+
+        private final long[] users;
+        private final int from;
+        private final int to;
+        private final int limit;
+        private final Profiles profiles;
+        private final Map<Long, List<Recommendation>> results;
+
+        BatchTask(long[] users, int from, int to, int limit, Profiles profiles,
+                  Map<Long, List<Recommendation>> results) {
+            this.users = users;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+            this.profiles = profiles;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= USERS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    long user = users[i];
+                    if (graph.getFollowingCount(user) > 0) {
+                        results.put(user, rank(user, collectCandidates(user, NO_DEADLINE), profiles, limit));
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BatchTask(users, from, middle, limit, profiles, results),
+                    new BatchTask(users, middle, to, limit, profiles, results));
+        }
+    }
+
+    private static final class Candidates {
+
+        private final LongIntHashMap mutuals = new LongIntHashMap(64);
+        private boolean truncated;
+    }
+
+    private static final class Profiles {
+
+        private static final Profiles NONE = new Profiles(Collections.emptyMap(), Collections.emptyMap());
+
+        private final Map<Long, Set<String>> tags;
+        private final Map<Long, String> locations;
+
+        Profiles(Map<Long, Set<String>> tags, Map<Long, String> locations) {
+            this.tags = tags;
+            this.locations = locations;
+        }
+
+        Set<String> tagsOf(long userId) {
+            return tags.getOrDefault(userId, Collections.emptySet());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.socialmedia.graph;
+
+// A user suggested to follow, with what the score is made of
+public final class Recommendation {
+
+    private final long userId;
+    private final int mutualConnections;
+    private final int sharedHashtags;
+    private final boolean sameLocation;
+    private final double score;
+
+    Recommendation(long userId, int mutualConnections, int sharedHashtags, boolean sameLocation, double score) {
+        this.userId = userId;
+        this.mutualConnections = mutualConnections;
+        this.sharedHashtags = sharedHashtags;
+        this.sameLocation = sameLocation;
+        this.score = score;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    // Followed users who follow the suggested one
+    public int getMutualConnections() {
+        return mutualConnections;
+    }
+
+    public int getSharedHashtags() {
+        return sharedHashtags;
+    }
+
+    public boolean isSameLocation() {
+        return sameLocation;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "Recommendation{user=" + userId + ", mutual=" + mutualConnections + ", sharedHashtags=" +
+                sharedHashtags + ", sameLocation=" + sameLocation + ", score=" + String.format("%.2f", score) + "}";
+    }
+}
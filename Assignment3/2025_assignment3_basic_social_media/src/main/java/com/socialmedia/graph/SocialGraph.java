@@ -0,0 +1,462 @@
+package com.socialmedia.graph;
+
+import com.socialmedia.dao.UnitOfWork;
+import com.socialmedia.util.LongIntHashMap;
+import org.hibernate.annotations.QueryHints;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+// The follow graph in memory, as primitive arrays: users are numbered densely and each direction
+// (following, followers) is stored CSR-style, all the rows in one int[] with an offsets array.
+// Rows are sorted, so "does A follow B" is a binary search and counts are a subtraction.
+//
+// CSR arrays cannot grow in place: the first follow/unfollow that changes a row copies it out into its own
+// sorted int[] with spare capacity, used from then on, which doubles when full, so later changes of the row
+// only shift its tail. Every edge is in two rows, one per direction: once the copied rows hold more than a
+// quarter of all the row entries, the arrays are rebuilt from the current rows. Reads share a lock,
+// changes take it exclusively.
+public class SocialGraph {
+
+    private static final int SCAN_FETCH_SIZE = 10_000;
+    private static final int MIN_COMPACTION_EDGES = 1_024;
+    private static final int[] NO_EDGES = new int[0];
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // user id -> node, and back
+    private LongIntHashMap nodes = new LongIntHashMap(16);
+    private long[] ids = new long[16];
+    private int nodeCount;
+    // nodes of the users deleted since the load: they keep their number, with no edges
+    private BitSet deleted = new BitSet();
+
+    private Adjacency following = Adjacency.build(0, NO_EDGES, NO_EDGES, 0, ids.length);
+    private Adjacency followers = Adjacency.build(0, NO_EDGES, NO_EDGES, 0, ids.length);
+    private long edgeCount;
+
+    // Replace the graph with the users and follow edges in the database
+    public void load(UnitOfWork unitOfWork) {
+        lock.writeLock().lock();
+        try {
+            nodes = new LongIntHashMap(1_024);
+            ids = new long[1_024];
+            nodeCount = 0;
+            deleted = new BitSet();
+            int[][] edges = unitOfWork.read(em -> {
+                try (Stream<Long> userIds = em.createQuery("SELECT u.id FROM User u ORDER BY u.id", Long.class)
+                        .setHint(QueryHints.FETCH_SIZE, SCAN_FETCH_SIZE)
+                        .getResultStream()) {
+                    userIds.forEach(this::nodeOf);
+                }
+                int[] from = new int[1_024];
+                int[] to = new int[1_024];
+                int count = 0;
+                try (Stream<?> rows = em.createNativeQuery("SELECT follower_id, followed_id FROM user_following")
+                        .setHint(QueryHints.FETCH_SIZE, SCAN_FETCH_SIZE)
+                        .getResultStream()) {
+                    for (Iterator<?> iterator = rows.iterator(); iterator.hasNext(); ) {
+                        Object[] columns = (Object[]) iterator.next();
+                        if (count == from.length) {
+                            from = Arrays.copyOf(from, count * 2);
+                            to = Arrays.copyOf(to, count * 2);
+                        }
+                        from[count] = nodeOf(((Number) columns[0]).longValue());
+                        to[count] = nodeOf(((Number) columns[1]).longValue());
+                        count++;
+                    }
+                }
+                return new int[][]{from, to, {count}};
+            });
+            rebuild(edges[0], edges[1], edges[2][0]);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Returns false if the edge was already there
+    public boolean addFollow(long followerId, long followedId) {
+        lock.writeLock().lock();
+        try {
+            int follower = nodeOf(followerId);
+            int followed = nodeOf(followedId);
+            if (!following.insert(follower, followed)) {
+                return false;
+            }
+            followers.insert(followed, follower);
+            edgeCount++;
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Returns false if there was no such edge
+    public boolean removeFollow(long followerId, long followedId) {
+        lock.writeLock().lock();
+        try {
+            int follower = nodes.get(followerId);
+            int followed = nodes.get(followedId);
+            if (follower < 0 || followed < 0 || !following.delete(follower, followed)) {
+                return false;
+            }
+            followers.delete(followed, follower);
+            edgeCount--;
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Drop all the edges of a deleted user
+    public void removeUser(long userId) {
+        lock.writeLock().lock();
+        try {
+            int node = nodes.get(userId);
+            if (node < 0) {
+                return;
+            }
+            for (int followed : following.row(node)) {
+                followers.delete(followed, node);
+                edgeCount--;
+            }
+            // a self-follow is gone from both rows by now
+            for (int follower : followers.row(node)) {
+                following.delete(follower, node);
+                edgeCount--;
+            }
+            following.clear(node);
+            followers.clear(node);
+            deleted.set(node);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // False for a user never seen or deleted since
+    public boolean contains(long userId) {
+        lock.readLock().lock();
+        try {
+            int node = nodes.get(userId);
+            return node >= 0 && !deleted.get(node);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean follows(long followerId, long followedId) {
+        lock.readLock().lock();
+        try {
+            int follower = nodes.get(followerId);
+            int followed = nodes.get(followedId);
+            return follower >= 0 && followed >= 0 && following.contains(follower, followed);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean followEachOther(long userId, long otherUserId) {
+        lock.readLock().lock();
+        try {
+            int user = nodes.get(userId);
+            int other = nodes.get(otherUserId);
+            return user >= 0 && other >= 0 && following.contains(user, other) && following.contains(other, user);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getFollowerCount(long userId) {
+        return degree(followers, userId);
+    }
+
+    public int getFollowingCount(long userId) {
+        return degree(following, userId);
+    }
+
+    // Up to limit ids, in no particular order
+    public long[] getFollowerIds(long userId, int limit) {
+        return neighbours(followers, userId, limit);
+    }
+
+    public long[] getFollowingIds(long userId, int limit) {
+        return neighbours(following, userId, limit);
+    }
+
+    // Ids of every user seen, deleted ones included (they have no edges)
+    public long[] getUserIds() {
+        lock.readLock().lock();
+        try {
+            return Arrays.copyOf(ids, nodeCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getEdgeCount() {
+        lock.readLock().lock();
+        try {
+            return edgeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getUserCount() {
+        lock.readLock().lock();
+        try {
+            return nodeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Size of the arrays behind the graph, id map included
+    public long getMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            return nodes.getMemoryBytes() + arrayBytes(ids.length, Long.BYTES)
+                    + following.getMemoryBytes() + followers.getMemoryBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public double getBytesPerEdge() {
+        long edges = getEdgeCount();
+        return edges == 0 ? 0 : (double) getMemoryBytes() / edges;
+    }
+
+    private int degree(Adjacency adjacency, long userId) {
+        lock.readLock().lock();
+        try {
+            int node = nodes.get(userId);
+            return node < 0 ? 0 : adjacency.degree(node);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long[] neighbours(Adjacency adjacency, long userId, int limit) {
+        lock.readLock().lock();
+        try {
+            int node = nodes.get(userId);
+            if (node < 0) {
+                return new long[0];
+            }
+            long[] result = new long[Math.min(limit, adjacency.degree(node))];
+            adjacency.forEach(node, result.length, (i, neighbour) -> result[i] = ids[neighbour]);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Node of the user, numbered on first sight; under the write lock
+    private int nodeOf(long userId) {
+        int node = nodes.get(userId);
+        if (node >= 0) {
+            return node;
+        }
+        node = nodeCount++;
+        if (node == ids.length) {
+            ids = Arrays.copyOf(ids, node * 2);
+        }
+        ids[node] = userId;
+        nodes.put(userId, node);
+        following.ensureCapacity(nodeCount);
+        followers.ensureCapacity(nodeCount);
+        return node;
+    }
+
+    private void compactIfNeeded() {
+        if (following.copiedEdges + followers.copiedEdges > Math.max(MIN_COMPACTION_EDGES, edgeCount / 2)) {
+            int[] from = new int[(int) edgeCount];
+            int[] to = new int[(int) edgeCount];
+            int count = 0;
+            for (int node = 0; node < nodeCount; node++) {
+                for (int followed : following.row(node)) {
+                    from[count] = node;
+                    to[count++] = followed;
+                }
+            }
+            rebuild(from, to, count);
+        }
+    }
+
+    private void rebuild(int[] from, int[] to, int count) {
+        following = Adjacency.build(nodeCount, from, to, count, ids.length);
+        followers = Adjacency.build(nodeCount, to, from, count, ids.length);
+        edgeCount = count;
+    }
+
+    private static long arrayBytes(long length, int elementBytes) {
+        // 16-byte array header
+        return 16 + length * elementBytes;
+    }
+
+    // One direction of the graph: CSR rows of the nodes at the last build, plus the rows changed since
+    private static final class Adjacency {
+
+        private static final int MIN_ROW_CAPACITY = 4;
+
+        private final int[] offsets;
+        private final int[] targets;
+        private final int builtNodes;
+        // a changed row holds its sorted targets in the first sizes[node] slots
+        private int[][] changed;
+        private int[] sizes;
+        private long copiedEdges;
+        private long copiedCapacity;
+
+        private Adjacency(int[] offsets, int[] targets, int builtNodes, int capacity) {
+            this.offsets = offsets;
+            this.targets = targets;
+            this.builtNodes = builtNodes;
+            this.changed = new int[capacity][];
+            this.sizes = new int[capacity];
+        }
+
+        // Counting sort of the edges by source, then each row sorted
+        static Adjacency build(int nodeCount, int[] from, int[] to, int count, int capacity) {
+            int[] offsets = new int[nodeCount + 1];
+            for (int i = 0; i < count; i++) {
+                offsets[from[i] + 1]++;
+            }
+            for (int node = 0; node < nodeCount; node++) {
+                offsets[node + 1] += offsets[node];
+            }
+            int[] targets = new int[count];
+            int[] next = Arrays.copyOf(offsets, nodeCount);
+            for (int i = 0; i < count; i++) {
+                targets[next[from[i]]++] = to[i];
+            }
+            for (int node = 0; node < nodeCount; node++) {
+                Arrays.sort(targets, offsets[node], offsets[node + 1]);
+            }
+            return new Adjacency(offsets, targets, nodeCount, capacity);
+        }
+
+        int degree(int node) {
+            if (changed[node] != null) {
+                return sizes[node];
+            }
+            return node < builtNodes ? offsets[node + 1] - offsets[node] : 0;
+        }
+
+        boolean contains(int node, int target) {
+            int[] row = changed[node];
+            if (row != null) {
+                return Arrays.binarySearch(row, 0, sizes[node], target) >= 0;
+            }
+            return node < builtNodes && Arrays.binarySearch(targets, offsets[node], offsets[node + 1], target) >= 0;
+        }
+
+        void forEach(int node, int limit, NeighbourConsumer consumer) {
+            int[] row = changed[node];
+            int start = row != null ? 0 : offsets[Math.min(node, builtNodes)];
+            int[] source = row != null ? row : targets;
+            for (int i = 0; i < limit; i++) {
+                consumer.accept(i, source[start + i]);
+            }
+        }
+
+        // A copy of the current row, so that it can be iterated while the rows change
+        int[] row(int node) {
+            int[] row = changed[node];
+            if (row != null) {
+                return Arrays.copyOf(row, sizes[node]);
+            }
+            return node < builtNodes ? Arrays.copyOfRange(targets, offsets[node], offsets[node + 1]) : NO_EDGES;
+        }
+
+        boolean insert(int node, int target) {
+            int[] row = changedRow(node);
+            int size = sizes[node];
+            int position = Arrays.binarySearch(row, 0, size, target);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            if (size == row.length) {
+                row = resize(node, Math.max(MIN_ROW_CAPACITY, size * 2));
+            }
+            System.arraycopy(row, position, row, position + 1, size - position);
+            row[position] = target;
+            sizes[node] = size + 1;
+            copiedEdges++;
+            return true;
+        }
+
+        boolean delete(int node, int target) {
+            int[] row = changedRow(node);
+            int size = sizes[node];
+            int position = Arrays.binarySearch(row, 0, size, target);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(row, position + 1, row, position, size - position - 1);
+            sizes[node] = size - 1;
+            copiedEdges--;
+            return true;
+        }
+
+        void clear(int node) {
+            if (changed[node] != null) {
+                copiedEdges -= sizes[node];
+            }
+            sizes[node] = 0;
+            resize(node, 0);
+        }
+
+        void ensureCapacity(int nodeCount) {
+            if (nodeCount > changed.length) {
+                int capacity = Math.max(nodeCount, changed.length * 2);
+                changed = Arrays.copyOf(changed, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+            }
+        }
+
+        long getMemoryBytes() {
+            // changed rows: a 4-byte (compressed) reference and a size per node, plus the copied rows
+            return arrayBytes(offsets.length, Integer.BYTES) + arrayBytes(targets.length, Integer.BYTES)
+                    + arrayBytes(changed.length, 4) + arrayBytes(sizes.length, Integer.BYTES)
+                    + copiedCapacity * Integer.BYTES;
+        }
+
+        // The row of the node as a changed row, copied out of the CSR arrays the first time
+        private int[] changedRow(int node) {
+            int[] row = changed[node];
+            if (row != null) {
+                return row;
+            }
+            int degree = degree(node);
+            row = resize(node, Math.max(MIN_ROW_CAPACITY, degree + degree / 2));
+            if (degree > 0) {
+                System.arraycopy(targets, offsets[node], row, 0, degree);
+            }
+            sizes[node] = degree;
+            copiedEdges += degree;
+            return row;
+        }
+
+        private int[] resize(int node, int capacity) {
+            int[] previous = changed[node];
+            int[] row = capacity == 0 ? NO_EDGES
+                    : previous != null ? Arrays.copyOf(previous, capacity) : new int[capacity];
+            copiedCapacity += capacity - (previous != null ? previous.length : 0);
+            changed[node] = row;
+            return row;
+        }
+    }
+
+    @FunctionalInterface
+    private interface NeighbourConsumer {
+        void accept(int index, int neighbour);
+    }
+}
@@ -0,0 +1,87 @@
+package com.socialmedia.main;
+
+import com.socialmedia.entities.RegularUser;
+import com.socialmedia.facade.AsyncSocialMediaFacade;
+import com.socialmedia.facade.SocialMediaFacade;
+
+import javax.persistence.Persistence;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Runs the same mix of operations through the synchronous facade (one call after the other, as a
+// blocking caller would) and through the async facade (all submitted at once, then joined).
+// Usage: ThroughputComparison [operations] [maxConcurrency]
+// With the in-memory H2 database the queries hardly block, so the gap is far smaller than against a
+// networked database where every call waits for a round trip.
+public class ThroughputComparison {
+
+    private static final int USERS = 50;
+
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int maxConcurrency = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        SocialMediaFacade facade = new SocialMediaFacade(Persistence.createEntityManagerFactory("socialmedia-pu",
+                Map.of("hibernate.show_sql", "false", "hibernate.connection.pool_size", String.valueOf(maxConcurrency))));
+        try (AsyncSocialMediaFacade async = new AsyncSocialMediaFacade(facade, maxConcurrency)) {
+            List<Long> userIds = new ArrayList<>();
+            for (int i = 0; i < USERS; i++) {
+                RegularUser user = facade.createRegularUser("bench" + i, "bench" + i + "@example.com",
+                        "Benchmark user", LocalDate.of(1990, 1, 1), "Milan");
+                userIds.add(user.getId());
+            }
+            Long postId = facade.createPost("Benchmark post", "TEXT", userIds.get(0)).getId();
+
+            // warm up both paths before measuring
+            runSync(facade, userIds, postId, operations / 10);
+            runAsync(async, userIds, postId, operations / 10);
+
+            long syncNanos = runSync(facade, userIds, postId, operations);
+            long asyncNanos = runAsync(async, userIds, postId, operations);
+
+            System.out.println("Operations: " + operations + ", max concurrency: " + maxConcurrency);
+            System.out.printf("Synchronous facade:  %,.0f ops/s%n", operations * 1e9 / syncNanos);
+            System.out.printf("Async facade:        %,.0f ops/s%n", operations * 1e9 / asyncNanos);
+            System.out.printf("Speedup:             %.2fx%n", (double) syncNanos / asyncNanos);
+        } finally {
+            facade.close();
+        }
+    }
+
+    private static long runSync(SocialMediaFacade facade, List<Long> userIds, Long postId, int operations) {
+        LocalDateTime since = LocalDateTime.now().minusDays(1);
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            Long userId = userIds.get(i % userIds.size());
+            switch (i % 4) {
+                case 0 -> facade.createPost("Sync post " + i, "TEXT", userId);
+                case 1 -> facade.likePost(userId, postId);
+                case 2 -> facade.findTrendingPosts(10);
+                default -> facade.findActiveUsers(since);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runAsync(AsyncSocialMediaFacade async, List<Long> userIds, Long postId, int operations) {
+        LocalDateTime since = LocalDateTime.now().minusDays(1);
+        long start = System.nanoTime();
+        List<CompletableFuture<?>> futures = new ArrayList<>(operations);
+        for (int i = 0; i < operations; i++) {
+            Long userId = userIds.get(i % userIds.size());
+            CompletableFuture<?> future = switch (i % 4) {
+                case 0 -> async.createPost("Async post " + i, "TEXT", userId);
+                case 1 -> async.likePost(userId, postId);
+                case 2 -> async.findTrendingPosts(10);
+                default -> async.findActiveUsers(since);
+            };
+            futures.add(future);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,104 @@
+package com.socialmedia.metrics;
+
+import org.hibernate.stat.Statistics;
+
+// Needs hibernate.generate_statistics, as in persistence.xml
+public class HibernateMetrics implements HibernateMetricsMXBean {
+
+    private final Statistics statistics;
+
+    public HibernateMetrics(Statistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public long getStatementsPrepared() {
+        return statistics.getPrepareStatementCount();
+    }
+
+    @Override
+    public long getEntityLoads() {
+        return statistics.getEntityLoadCount();
+    }
+
+    // Loads of lazy associations and proxies, the usual suspects of N+1 queries
+    @Override
+    public long getEntityFetches() {
+        return statistics.getEntityFetchCount();
+    }
+
+    @Override
+    public long getEntityInserts() {
+        return statistics.getEntityInsertCount();
+    }
+
+    @Override
+    public long getEntityUpdates() {
+        return statistics.getEntityUpdateCount();
+    }
+
+    @Override
+    public long getEntityDeletes() {
+        return statistics.getEntityDeleteCount();
+    }
+
+    @Override
+    public long getCollectionLoads() {
+        return statistics.getCollectionLoadCount();
+    }
+
+    @Override
+    public long getCollectionFetches() {
+        return statistics.getCollectionFetchCount();
+    }
+
+    @Override
+    public long getQueryExecutions() {
+        return statistics.getQueryExecutionCount();
+    }
+
+    @Override
+    public long getQueryExecutionMaxMillis() {
+        return statistics.getQueryExecutionMaxTime();
+    }
+
+    @Override
+    public String getSlowestQuery() {
+        return statistics.getQueryExecutionMaxTimeQueryString();
+    }
+
+    @Override
+    public long getTransactions() {
+        return statistics.getTransactionCount();
+    }
+
+    @Override
+    public long getSuccessfulTransactions() {
+        return statistics.getSuccessfulTransactionCount();
+    }
+
+    @Override
+    public long getFlushes() {
+        return statistics.getFlushCount();
+    }
+
+    @Override
+    public long getSessionsOpened() {
+        return statistics.getSessionOpenCount();
+    }
+
+    @Override
+    public long getSecondLevelCacheHits() {
+        return statistics.getSecondLevelCacheHitCount();
+    }
+
+    @Override
+    public long getSecondLevelCacheMisses() {
+        return statistics.getSecondLevelCacheMissCount();
+    }
+
+    @Override
+    public long getOptimisticFailures() {
+        return statistics.getOptimisticFailureCount();
+    }
+}
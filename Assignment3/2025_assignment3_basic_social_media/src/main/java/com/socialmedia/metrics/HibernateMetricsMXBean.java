@@ -0,0 +1,41 @@
+package com.socialmedia.metrics;
+
+// JMX view of the Hibernate statistics of the whole persistence unit, since startup
+public interface HibernateMetricsMXBean {
+
+    long getStatementsPrepared();
+
+    long getEntityLoads();
+
+    long getEntityFetches();
+
+    long getEntityInserts();
+
+    long getEntityUpdates();
+
+    long getEntityDeletes();
+
+    long getCollectionLoads();
+
+    long getCollectionFetches();
+
+    long getQueryExecutions();
+
+    long getQueryExecutionMaxMillis();
+
+    String getSlowestQuery();
+
+    long getTransactions();
+
+    long getSuccessfulTransactions();
+
+    long getFlushes();
+
+    long getSessionsOpened();
+
+    long getSecondLevelCacheHits();
+
+    long getSecondLevelCacheMisses();
+
+    long getOptimisticFailures();
+}
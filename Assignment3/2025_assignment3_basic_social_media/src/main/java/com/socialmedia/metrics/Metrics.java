@@ -0,0 +1,159 @@
+package com.socialmedia.metrics;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Per-operation metrics of the calls made on one persistence unit, published as MXBeans on the
+// platform MBean server (jconsole, VisualVM, any JMX exporter):
+//   com.socialmedia:type=Hibernate,instance=N                the Hibernate statistics
+//   com.socialmedia:type=Operation,instance=N,name=Class.method   one per operation, registered on first use
+// N tells apart the facades living in the same JVM. Operations are timed explicitly under the name they are
+// given, e.g. metrics.time("SocialMediaFacade.createPost", () -> ...), in memory or not; the units of work
+// they run on the same thread (see UnitOfWork) add their statements and transactions to them. Units of work
+// outside a timed operation, like those of the worker threads of the bulk loads, are only seen by the
+// Hibernate statistics. The cost per call is a map lookup and a few striped counter updates.
+public class Metrics implements AutoCloseable {
+
+    private static final String DOMAIN = "com.socialmedia";
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final String instance = String.valueOf(INSTANCES.incrementAndGet());
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final ConcurrentHashMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private final ThreadLocal<OperationScope> current = new ThreadLocal<>();
+    private final HibernateMetrics hibernate;
+
+    public Metrics(EntityManagerFactory emf) {
+        this.hibernate = new HibernateMetrics(emf.unwrap(SessionFactory.class).getStatistics());
+        register(getHibernateObjectName(), hibernate);
+    }
+
+    // Runs the work as one call of the operation; a call that throws counts as a failure
+    public <T> T time(String operation, Supplier<T> work) {
+        OperationScope scope = new OperationScope(operation(operation), current.get());
+        current.set(scope);
+        boolean failed = true;
+        try {
+            T result = work.get();
+            failed = false;
+            return result;
+        } finally {
+            end(scope, failed);
+        }
+    }
+
+    public void time(String operation, Runnable work) {
+        OperationScope scope = new OperationScope(operation(operation), current.get());
+        current.set(scope);
+        boolean failed = true;
+        try {
+            work.run();
+            failed = false;
+        } finally {
+            end(scope, failed);
+        }
+    }
+
+    private void end(OperationScope scope, boolean failed) {
+        if (scope.getOuter() != null) {
+            current.set(scope.getOuter());
+        } else {
+            current.remove();
+        }
+        scope.finish(failed);
+    }
+
+    // Attaches a probe to the session of a unit of work that just started, or returns null outside a
+    // timed operation
+    public UnitOfWorkProbe start(EntityManager em) {
+        OperationScope scope = current.get();
+        if (scope == null) {
+            return null;
+        }
+        UnitOfWorkProbe probe = new UnitOfWorkProbe(scope);
+        em.unwrap(Session.class).addEventListeners(probe);
+        return probe;
+    }
+
+    private OperationMetrics operation(String name) {
+        OperationMetrics metrics = operations.get(name);
+        if (metrics != null) {
+            return metrics;
+        }
+        OperationMetrics created = new OperationMetrics(name);
+        metrics = operations.putIfAbsent(name, created);
+        if (metrics != null) {
+            return metrics;
+        }
+        register(getObjectName(name), created);
+        return created;
+    }
+
+    // Null if the operation never ran
+    public OperationMetrics getOperation(String name) {
+        return operations.get(name);
+    }
+
+    // Sorted by name
+    public Map<String, OperationMetrics> getOperations() {
+        return new TreeMap<>(operations);
+    }
+
+    public HibernateMetrics getHibernate() {
+        return hibernate;
+    }
+
+    public ObjectName getObjectName(String operation) {
+        return objectName("type=Operation,instance=" + instance + ",name=" + operation);
+    }
+
+    public ObjectName getHibernateObjectName() {
+        return objectName("type=Hibernate,instance=" + instance);
+    }
+
+    // Unregisters the MBeans
+    @Override
+    public void close() {
+        unregister(getHibernateObjectName());
+        operations.keySet().forEach(name -> unregister(getObjectName(name)));
+    }
+
+    private void register(ObjectName name, Object mbean) {
+        try {
+            server.registerMBean(mbean, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void unregister(ObjectName name) {
+        try {
+            server.unregisterMBean(name);
+        } catch (InstanceNotFoundException e) {
+            // already gone
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static ObjectName objectName(String properties) {
+        try {
+            return new ObjectName(DOMAIN + ":" + properties);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Invalid MBean name: " + properties, e);
+        }
+    }
+}
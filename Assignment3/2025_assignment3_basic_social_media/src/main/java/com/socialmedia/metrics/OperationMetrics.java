@@ -0,0 +1,141 @@
+package com.socialmedia.metrics;
+
+import com.socialmedia.util.LatencyHistogram;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Totals of the calls of one operation, updated concurrently without locks
+public class OperationMetrics implements OperationMetricsMXBean {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder jdbcNanos = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+    private final LongAdder entities = new LongAdder();
+    private final AtomicLong maxEntities = new AtomicLong();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    void record(OperationScope call, long elapsedNanos, boolean failed) {
+        latency.record(elapsedNanos);
+        if (failed) {
+            failures.increment();
+        }
+        statements.add(call.getStatements());
+        batches.add(call.getBatches());
+        jdbcNanos.add(call.getJdbcNanos());
+        commits.add(call.getCommits());
+        rollbacks.add(call.getRollbacks());
+        entities.add(call.getMaxEntities());
+        if (call.getMaxEntities() > maxEntities.get()) {
+            maxEntities.accumulateAndGet(call.getMaxEntities(), Math::max);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMedianMillis() {
+        return latency.getValueAtPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get90thPercentileMillis() {
+        return latency.getValueAtPercentile(90) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get99thPercentileMillis() {
+        return latency.getValueAtPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get999thPercentileMillis() {
+        return latency.getValueAtPercentile(99.9) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.getMax() / NANOS_PER_MILLI;
+    }
+
+    // Statements and batches sent through Hibernate; the plain JDBC batches of the bulk loads are not seen
+    @Override
+    public long getStatements() {
+        return statements.sum();
+    }
+
+    // Statements plus batches
+    @Override
+    public double getRoundTripsPerCall() {
+        long calls = getCalls();
+        return calls == 0 ? 0 : (double) (statements.sum() + batches.sum()) / calls;
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    // Time spent executing statements and batches, summed over the calls
+    @Override
+    public double getJdbcMillis() {
+        return jdbcNanos.sum() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    @Override
+    public long getRollbacks() {
+        return rollbacks.sum();
+    }
+
+    // Entities managed by a persistence context, at the largest during each call
+    @Override
+    public double getMeanPersistenceContextSize() {
+        long calls = getCalls();
+        return calls == 0 ? 0 : (double) entities.sum() / calls;
+    }
+
+    @Override
+    public long getMaxPersistenceContextSize() {
+        return maxEntities.get();
+    }
+
+    @Override
+    public String toString() {
+        return "OperationMetrics{name='" + name + "', calls=" + getCalls() + ", failures=" + getFailures() +
+                ", medianMillis=" + String.format("%.3f", getMedianMillis()) +
+                ", p99Millis=" + String.format("%.3f", get99thPercentileMillis()) +
+                ", roundTripsPerCall=" + String.format("%.1f", getRoundTripsPerCall()) +
+                ", maxPersistenceContextSize=" + getMaxPersistenceContextSize() + "}";
+    }
+}
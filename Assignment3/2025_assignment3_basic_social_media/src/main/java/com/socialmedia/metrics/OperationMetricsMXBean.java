@@ -0,0 +1,37 @@
+package com.socialmedia.metrics;
+
+// JMX view of one operation: latency percentiles of its calls, and what they cost the database
+public interface OperationMetricsMXBean {
+
+    long getCalls();
+
+    long getFailures();
+
+    double getMeanMillis();
+
+    double getMedianMillis();
+
+    double get90thPercentileMillis();
+
+    double get99thPercentileMillis();
+
+    double get999thPercentileMillis();
+
+    double getMaxMillis();
+
+    long getStatements();
+
+    double getRoundTripsPerCall();
+
+    long getBatches();
+
+    double getJdbcMillis();
+
+    long getCommits();
+
+    long getRollbacks();
+
+    double getMeanPersistenceContextSize();
+
+    long getMaxPersistenceContextSize();
+}
@@ -0,0 +1,64 @@
+package com.socialmedia.metrics;
+
+// One call of a timed operation, on the thread running it. The units of work run inside the call add their
+// counts here, and to the calls it is nested in: a facade operation calling another one is charged for both.
+class OperationScope {
+
+    private final OperationMetrics operation;
+    private final OperationScope outer;
+    private final long start = System.nanoTime();
+    private int statements;
+    private int batches;
+    private long jdbcNanos;
+    private int commits;
+    private int rollbacks;
+    private int maxEntities;
+
+    OperationScope(OperationMetrics operation, OperationScope outer) {
+        this.operation = operation;
+        this.outer = outer;
+    }
+
+    OperationScope getOuter() {
+        return outer;
+    }
+
+    void add(UnitOfWorkProbe probe) {
+        for (OperationScope scope = this; scope != null; scope = scope.outer) {
+            scope.statements += probe.getStatements();
+            scope.batches += probe.getBatches();
+            scope.jdbcNanos += probe.getJdbcNanos();
+            scope.commits += probe.getCommits();
+            scope.rollbacks += probe.getRollbacks();
+            scope.maxEntities = Math.max(scope.maxEntities, probe.getMaxEntities());
+        }
+    }
+
+    void finish(boolean failed) {
+        operation.record(this, System.nanoTime() - start, failed);
+    }
+
+    int getStatements() {
+        return statements;
+    }
+
+    int getBatches() {
+        return batches;
+    }
+
+    long getJdbcNanos() {
+        return jdbcNanos;
+    }
+
+    int getCommits() {
+        return commits;
+    }
+
+    int getRollbacks() {
+        return rollbacks;
+    }
+
+    int getMaxEntities() {
+        return maxEntities;
+    }
+}
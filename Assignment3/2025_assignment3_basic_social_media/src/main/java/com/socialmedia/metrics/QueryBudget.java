@@ -0,0 +1,132 @@
+package com.socialmedia.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// Upper bound on the SQL statements run by a block of code on the current thread, to catch N+1 queries:
+//
+//     try (QueryBudget budget = QueryBudget.open("timeline", 3)) {
+//         facade.getHomeTimeline(userId, null, 20);
+//     }
+//
+// Statements are counted at the JDBC level by the connections of QueryBudgetConnectionProvider, set in
+// persistence.xml, as they are executed: a JDBC batch counts once, and plain JDBC work run through
+// Session.doWork counts like the statements of Hibernate. Budgets nest, and a statement counts against every
+// open budget of the thread; work handed to other threads is not counted.
+//
+// When the budget is exceeded, close() throws (FAIL, for tests) or logs a warning (WARN, the default, for
+// production), with the statements grouped by SQL text and the most repeated first.
+public final class QueryBudget implements AutoCloseable {
+
+    public enum Mode { FAIL, WARN }
+
+    private static final Logger LOG = Logger.getLogger(QueryBudget.class.getName());
+    private static final ThreadLocal<QueryBudget> CURRENT = new ThreadLocal<>();
+    // distinct statements kept for the report
+    private static final int MAX_REPORTED = 50;
+
+    private static volatile Mode defaultMode = Mode.WARN;
+
+    private final String name;
+    private final int maxStatements;
+    private final Mode mode;
+    private final QueryBudget parent;
+    private final Thread owner = Thread.currentThread();
+    private final Map<String, Integer> statements = new LinkedHashMap<>();
+    private int count;
+    private boolean closed;
+
+    private QueryBudget(String name, int maxStatements, Mode mode, QueryBudget parent) {
+        this.name = name;
+        this.maxStatements = maxStatements;
+        this.mode = mode;
+        this.parent = parent;
+    }
+
+    public static QueryBudget open(String name, int maxStatements) {
+        return open(name, maxStatements, defaultMode);
+    }
+
+    public static QueryBudget open(String name, int maxStatements, Mode mode) {
+        if (maxStatements < 0) {
+            throw new IllegalArgumentException("Statement budget must not be negative: " + maxStatements);
+        }
+        QueryBudget budget = new QueryBudget(name, maxStatements, mode, CURRENT.get());
+        CURRENT.set(budget);
+        return budget;
+    }
+
+    // Mode of the budgets opened without one, e.g. FAIL for a whole test suite
+    public static void setDefaultMode(Mode mode) {
+        defaultMode = mode;
+    }
+
+    // Called for every statement executed; nothing but a thread-local lookup when no budget is open
+    static void record(String sql) {
+        for (QueryBudget budget = CURRENT.get(); budget != null; budget = budget.parent) {
+            budget.count++;
+            if (budget.statements.containsKey(sql) || budget.statements.size() < MAX_REPORTED) {
+                budget.statements.merge(sql, 1, Integer::sum);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxStatements() {
+        return maxStatements;
+    }
+
+    public int getStatementCount() {
+        return count;
+    }
+
+    public boolean isExceeded() {
+        return count > maxStatements;
+    }
+
+    // Distinct statements with how many times each ran, most repeated first
+    public List<Map.Entry<String, Integer>> getStatements() {
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(statements.entrySet());
+        sorted.sort(Collections.reverseOrder(Map.Entry.comparingByValue()));
+        return sorted;
+    }
+
+    // Must be closed on the thread that opened it, innermost budget first
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        if (Thread.currentThread() != owner || CURRENT.get() != this) {
+            throw new IllegalStateException("Query budget " + name + " closed out of order or on another thread");
+        }
+        closed = true;
+        if (parent != null) {
+            CURRENT.set(parent);
+        } else {
+            CURRENT.remove();
+        }
+        if (isExceeded()) {
+            if (mode == Mode.FAIL) {
+                throw new IllegalStateException(report());
+            }
+            LOG.warning(report());
+        }
+    }
+
+    private String report() {
+        StringBuilder report = new StringBuilder("Query budget of ").append(name).append(" exceeded: ")
+                .append(count).append(" statements, at most ").append(maxStatements).append(" allowed");
+        for (Map.Entry<String, Integer> statement : getStatements()) {
+            report.append("\n  ").append(statement.getValue()).append(" x ").append(statement.getKey());
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package com.socialmedia.metrics;
+
+import org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Hibernate's built-in connection pool, handing out connections that count the statements they execute
+// against the query budgets of the current thread (QueryBudget). Being below Hibernate, it also sees the
+// plain JDBC work run through Session.doWork: conditional inserts, batched edge inserts, bulk loads.
+// Set as hibernate.connection.provider_class in persistence.xml.
+public class QueryBudgetConnectionProvider extends DriverManagerConnectionProviderImpl {
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = super.getConnection();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new CountingConnection(connection));
+    }
+
+    // The pool takes back the connection it handed out, not the counting proxy
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        if (Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof CountingConnection) {
+            connection = ((CountingConnection) Proxy.getInvocationHandler(connection)).connection;
+        }
+        super.closeConnection(connection);
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Wraps the statements created by the connection, remembering the SQL they were prepared with
+    private static final class CountingConnection implements InvocationHandler {
+
+        private final Connection connection;
+
+        CountingConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            Object result = call(connection, method, args);
+            if (!(result instanceof Statement)) {
+                return result;
+            }
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+            return Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                    new Class<?>[] {method.getReturnType()}, new CountingStatement((Statement) result, sql));
+        }
+    }
+
+    // Counts every execute* call once: a JDBC batch is one statement, like for the database
+    private static final class CountingStatement implements InvocationHandler {
+
+        private final Statement statement;
+        // null for a plain Statement, whose SQL comes with each call
+        private final String preparedSql;
+
+        CountingStatement(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    if (method.getName().startsWith("execute")) {
+                        QueryBudget.record(sql(args));
+                    }
+                    return call(statement, method, args);
+            }
+        }
+
+        private String sql(Object[] args) {
+            if (preparedSql != null) {
+                return preparedSql;
+            }
+            return args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : "(batch)";
+        }
+    }
+}
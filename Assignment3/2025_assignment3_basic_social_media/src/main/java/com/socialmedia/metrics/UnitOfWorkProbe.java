@@ -0,0 +1,92 @@
+package com.socialmedia.metrics;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Session;
+import javax.persistence.EntityManager;
+
+// Listens to the session of one unit of work, on the thread running it: statements, batches and their
+// time, transaction outcomes and the size of the persistence context at each flush. The counts are added
+// to the timed operation that ran the unit of work.
+public class UnitOfWorkProbe extends BaseSessionEventListener {
+
+    private final transient OperationScope scope;
+    private long statementStart;
+    private int statements;
+    private int batches;
+    private long jdbcNanos;
+    private int commits;
+    private int rollbacks;
+    private int maxEntities;
+
+    UnitOfWorkProbe(OperationScope scope) {
+        this.scope = scope;
+    }
+
+    // Before the EntityManager is closed
+    public void finish(EntityManager em) {
+        if (em.isOpen()) {
+            maxEntities = Math.max(maxEntities, em.unwrap(Session.class).getStatistics().getEntityCount());
+        }
+        scope.add(this);
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        statementStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        statements++;
+        jdbcNanos += System.nanoTime() - statementStart;
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        statementStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        batches++;
+        jdbcNanos += System.nanoTime() - statementStart;
+    }
+
+    @Override
+    public void transactionCompletion(boolean successful) {
+        if (successful) {
+            commits++;
+        } else {
+            rollbacks++;
+        }
+    }
+
+    @Override
+    public void flushEnd(int numberOfEntities, int numberOfCollections) {
+        maxEntities = Math.max(maxEntities, numberOfEntities);
+    }
+
+    int getStatements() {
+        return statements;
+    }
+
+    int getBatches() {
+        return batches;
+    }
+
+    long getJdbcNanos() {
+        return jdbcNanos;
+    }
+
+    int getCommits() {
+        return commits;
+    }
+
+    int getRollbacks() {
+        return rollbacks;
+    }
+
+    int getMaxEntities() {
+        return maxEntities;
+    }
+}
@@ -0,0 +1,184 @@
+package com.socialmedia.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory inverted index: for every term, the documents containing it and the positions of the term
+// in each of them. Matches must contain all the query terms and are ranked with BM25.
+//
+// A search walks the postings of its rarest term and probes the others by document id, so its cost
+// grows with the number of documents containing that term, not with the size of the index.
+// Searches share a read lock; adding or removing a document takes the write lock, after tokenizing.
+public class InvertedIndex {
+
+    // BM25 parameters: term frequency saturation and document length normalization
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Map<Long, int[]>> postings = new HashMap<>();
+    private final Map<Long, Entry> documents = new HashMap<>();
+    private long totalLength;
+
+    // Add the document, replacing any previous version with the same id
+    public void add(SearchDocument document) {
+        List<String> tokens = Tokenizer.tokenize(document.getContent());
+        Map<String, int[]> positions = positionsOf(tokens);
+
+        lock.writeLock().lock();
+        try {
+            removeLocked(document.getId());
+            documents.put(document.getId(), new Entry(document, positions.keySet().toArray(new String[0]),
+                    tokens.size()));
+            positions.forEach((term, termPositions) ->
+                    postings.computeIfAbsent(term, t -> new HashMap<>()).put(document.getId(), termPositions));
+            totalLength += tokens.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Up to limit best hits ranked after the given one (null for the first page)
+    public List<SearchHit> search(SearchQuery query, SearchFilter filter, SearchHit after, int limit) {
+        lock.readLock().lock();
+        try {
+            List<String> terms = new ArrayList<>(query.getTerms());
+            for (String term : terms) {
+                if (!postings.containsKey(term)) {
+                    return new ArrayList<>();
+                }
+            }
+            terms.sort(Comparator.comparingInt(term -> postings.get(term).size()));
+
+            double[] idf = new double[terms.size()];
+            for (int i = 0; i < terms.size(); i++) {
+                int matching = postings.get(terms.get(i)).size();
+                idf[i] = Math.log(1 + (documents.size() - matching + 0.5) / (matching + 0.5));
+            }
+            double averageLength = (double) totalLength / documents.size();
+
+            // worst hit on top, so that it is the one dropped past the limit
+            PriorityQueue<SearchHit> best = new PriorityQueue<>(limit + 1, SearchHit.RANKING.reversed());
+            candidates:
+            for (Long id : postings.get(terms.get(0)).keySet()) {
+                Entry entry = documents.get(id);
+                double score = 0;
+                for (int i = 0; i < terms.size(); i++) {
+                    int[] positions = postings.get(terms.get(i)).get(id);
+                    if (positions == null) {
+                        continue candidates;
+                    }
+                    double frequency = positions.length;
+                    score += idf[i] * frequency * (K1 + 1) /
+                            (frequency + K1 * (1 - B + B * entry.length / averageLength));
+                }
+                if (!filter.matches(entry.document) || !containsPhrases(id, query.getPhrases())) {
+                    continue;
+                }
+                SearchHit hit = new SearchHit(id, score);
+                if (after != null && SearchHit.RANKING.compare(hit, after) <= 0) {
+                    continue;
+                }
+                best.add(hit);
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+
+            List<SearchHit> hits = new ArrayList<>(best);
+            hits.sort(SearchHit.RANKING);
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Each phrase starts at some position p of its first term, with its i-th term at p + i
+    private boolean containsPhrases(Long id, List<List<String>> phrases) {
+        for (List<String> phrase : phrases) {
+            boolean found = false;
+            for (int start : postings.get(phrase.get(0)).get(id)) {
+                found = true;
+                for (int i = 1; i < phrase.size() && found; i++) {
+                    found = Arrays.binarySearch(postings.get(phrase.get(i)).get(id), start + i) >= 0;
+                }
+                if (found) {
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void removeLocked(Long id) {
+        Entry entry = documents.remove(id);
+        if (entry == null) {
+            return;
+        }
+        for (String term : entry.terms) {
+            Map<Long, int[]> termPostings = postings.get(term);
+            termPostings.remove(id);
+            if (termPostings.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        totalLength -= entry.length;
+    }
+
+    // Ascending positions of every term in the token list
+    private static Map<String, int[]> positionsOf(List<String> tokens) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String token : tokens) {
+            counts.merge(token, 1, Integer::sum);
+        }
+        Map<String, int[]> positions = new HashMap<>();
+        counts.forEach((term, count) -> positions.put(term, new int[count]));
+        Map<String, Integer> filled = new HashMap<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String term = tokens.get(i);
+            positions.get(term)[filled.merge(term, 1, Integer::sum) - 1] = i;
+        }
+        return positions;
+    }
+
+    private static final class Entry {
+
+        private final SearchDocument document;
+        private final String[] terms;
+        private final int length;
+
+        Entry(SearchDocument document, String[] terms, int length) {
+            this.document = document;
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.socialmedia.search;
+
+import com.socialmedia.entities.Comment;
+import com.socialmedia.entities.Hashtag;
+import com.socialmedia.entities.Post;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+// The indexed text of a post or comment, with the fields the filters look at
+public final class SearchDocument {
+
+    private final Long id;
+    private final String content;
+    private final Long authorId;
+    private final LocalDateTime timestamp;
+    private final Set<String> hashtags;
+
+    public SearchDocument(Long id, String content, Long authorId, LocalDateTime timestamp, Set<String> hashtags) {
+        this.id = id;
+        this.content = content;
+        this.authorId = authorId;
+        this.timestamp = timestamp;
+        this.hashtags = hashtags;
+    }
+
+    // Reads the hashtags: call it while the post is managed, or right after creating it
+    public static SearchDocument of(Post post) {
+        Set<String> tags = new HashSet<>();
+        for (Hashtag hashtag : post.getHashtags()) {
+            tags.add(hashtag.getTag());
+        }
+        return new SearchDocument(post.getId(), post.getContent(), post.getAuthor().getId(), post.getTimestamp(), tags);
+    }
+
+    public static SearchDocument of(Comment comment) {
+        return new SearchDocument(comment.getId(), comment.getContent(), comment.getAuthor().getId(),
+                comment.getTimestamp(), Collections.emptySet());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public Long getAuthorId() {
+        return authorId;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public Set<String> getHashtags() {
+        return hashtags;
+    }
+}
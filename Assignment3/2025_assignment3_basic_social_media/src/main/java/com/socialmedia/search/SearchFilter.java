@@ -0,0 +1,45 @@
+package com.socialmedia.search;
+
+import java.time.LocalDateTime;
+
+// Restrictions on the documents matching a search; every with* method returns a new filter
+public final class SearchFilter {
+
+    private static final SearchFilter NONE = new SearchFilter(null, null, null, null);
+
+    private final String hashtag;
+    private final Long authorId;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+
+    private SearchFilter(String hashtag, Long authorId, LocalDateTime from, LocalDateTime to) {
+        this.hashtag = hashtag;
+        this.authorId = authorId;
+        this.from = from;
+        this.to = to;
+    }
+
+    public static SearchFilter none() {
+        return NONE;
+    }
+
+    public SearchFilter withHashtag(String hashtag) {
+        return new SearchFilter(hashtag, authorId, from, to);
+    }
+
+    public SearchFilter withAuthor(Long authorId) {
+        return new SearchFilter(hashtag, authorId, from, to);
+    }
+
+    // Both bounds inclusive, either may be null
+    public SearchFilter withDates(LocalDateTime from, LocalDateTime to) {
+        return new SearchFilter(hashtag, authorId, from, to);
+    }
+
+    boolean matches(SearchDocument document) {
+        return (hashtag == null || document.getHashtags().contains(hashtag))
+                && (authorId == null || authorId.equals(document.getAuthorId()))
+                && (from == null || !document.getTimestamp().isBefore(from))
+                && (to == null || !document.getTimestamp().isAfter(to));
+    }
+}
@@ -0,0 +1,54 @@
+package com.socialmedia.search;
+
+import com.socialmedia.dao.Cursor;
+import java.util.Comparator;
+
+// A matching document and its BM25 score. Hits are ranked by score, then by id (newest first).
+public final class SearchHit {
+
+    static final Comparator<SearchHit> RANKING = Comparator.comparingDouble(SearchHit::getScore).reversed()
+            .thenComparing(SearchHit::getId, Comparator.reverseOrder());
+
+    private static final char SEPARATOR = ':';
+
+    private final Long id;
+    private final double score;
+
+    SearchHit(Long id, double score) {
+        this.id = id;
+        this.score = score;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    // Keyset cursor over the ranking: (score, id) of the last hit of a page
+    public String toCursor() {
+        return Cursor.encode(null, Double.toString(score) + SEPARATOR + id);
+    }
+
+    static SearchHit fromCursor(String cursor) {
+        Cursor decoded = Cursor.decode(cursor);
+        if (decoded == null) {
+            return null;
+        }
+        String key = decoded.getKey();
+        int separator = key.indexOf(SEPARATOR);
+        try {
+            return new SearchHit(Long.valueOf(key.substring(separator + 1)),
+                    Double.parseDouble(key.substring(0, Math.max(separator, 0))));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid search cursor: " + cursor, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SearchHit{id=" + id + ", score=" + String.format("%.3f", score) + "}";
+    }
+}
@@ -0,0 +1,46 @@
+package com.socialmedia.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Parsed search text: every term must appear, and "quoted phrases" must appear as consecutive terms
+public final class SearchQuery {
+
+    private final List<String> terms;
+    private final List<List<String>> phrases;
+
+    private SearchQuery(List<String> terms, List<List<String>> phrases) {
+        this.terms = terms;
+        this.phrases = phrases;
+    }
+
+    public static SearchQuery parse(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        List<List<String>> phrases = new ArrayList<>();
+        String[] parts = text == null ? new String[0] : text.split("\"", -1);
+        // odd parts were between quotes; an unbalanced quote runs to the end of the text
+        for (int i = 0; i < parts.length; i++) {
+            List<String> partTerms = Tokenizer.tokenize(parts[i]);
+            terms.addAll(partTerms);
+            if (i % 2 == 1 && partTerms.size() > 1) {
+                phrases.add(partTerms);
+            }
+        }
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("Search query has no terms: " + text);
+        }
+        return new SearchQuery(new ArrayList<>(terms), phrases);
+    }
+
+    // Distinct terms, phrase terms included
+    public List<String> getTerms() {
+        return Collections.unmodifiableList(terms);
+    }
+
+    public List<List<String>> getPhrases() {
+        return Collections.unmodifiableList(phrases);
+    }
+}
@@ -0,0 +1,146 @@
+package com.socialmedia.search;
+
+import com.socialmedia.dao.DeletedRows;
+import com.socialmedia.dao.UnitOfWork;
+import org.hibernate.annotations.QueryHints;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Full-text indexes of the public posts and of the comments, kept in sync by the facade after each commit
+// and rebuilt from a scan of the tables at startup and after bulk loads.
+//
+// Deletes remove everything that went with the deleted rows (see DeletedRows). Searches return ids: the
+// rare ids that no longer resolve, deleted between the search and the lookup, are dropped by the caller.
+public class SearchService {
+
+    private static final int SCAN_FETCH_SIZE = 1_000;
+
+    // Guards the swap of the indexes against the changes: a change goes to the indexes in use, and is
+    // logged while a rebuild is loading, to be replayed over the scanned rows before the new indexes are used
+    private final Object lock = new Object();
+    private volatile Indexes current = new Indexes();
+    private List<Consumer<Indexes>> changesDuringRebuild;
+
+    public void indexPost(SearchDocument post) {
+        apply(indexes -> indexes.posts.add(post));
+    }
+
+    public void removePost(Long postId) {
+        apply(indexes -> indexes.posts.remove(postId));
+    }
+
+    public void indexComment(SearchDocument comment) {
+        apply(indexes -> indexes.comments.add(comment));
+    }
+
+    public void removeComment(Long commentId) {
+        apply(indexes -> indexes.comments.remove(commentId));
+    }
+
+    // The posts and comments that went with a delete
+    public void removeDeleted(DeletedRows deleted) {
+        if (deleted.getPostIds().isEmpty() && deleted.getCommentIds().isEmpty()) {
+            return;
+        }
+        apply(indexes -> {
+            deleted.getPostIds().forEach(indexes.posts::remove);
+            deleted.getCommentIds().forEach(indexes.comments::remove);
+        });
+    }
+
+    // Up to limit + 1 hits after the cursor: the extra one only tells that there is a next page
+    public List<SearchHit> searchPosts(String query, SearchFilter filter, String cursor, int limit) {
+        checkLimit(limit);
+        return current.posts.search(SearchQuery.parse(query), filter, SearchHit.fromCursor(cursor), limit + 1);
+    }
+
+    public List<SearchHit> searchComments(String query, SearchFilter filter, String cursor, int limit) {
+        checkLimit(limit);
+        return current.comments.search(SearchQuery.parse(query), filter, SearchHit.fromCursor(cursor), limit + 1);
+    }
+
+    public int getIndexedPostCount() {
+        return current.posts.size();
+    }
+
+    public int getIndexedCommentCount() {
+        return current.comments.size();
+    }
+
+    // Reload both indexes with streaming scans. The scan may read a row older than a change committed
+    // meanwhile: the changes are replayed over it, in order, before the new indexes replace the old ones.
+    public synchronized void rebuild(UnitOfWork unitOfWork) {
+        Indexes next = new Indexes();
+        synchronized (lock) {
+            changesDuringRebuild = new ArrayList<>();
+        }
+        try {
+            unitOfWork.read(em -> {
+                Map<Long, Set<String>> tagsByPost = new HashMap<>();
+                try (Stream<Object[]> rows = em.createQuery(
+                                "SELECT p.id, h.tag FROM Post p JOIN p.hashtags h WHERE p.isPublic = true", Object[].class)
+                        .setHint(QueryHints.FETCH_SIZE, SCAN_FETCH_SIZE)
+                        .getResultStream()) {
+                    rows.forEach(row -> tagsByPost.computeIfAbsent((Long) row[0], id -> new HashSet<>())
+                            .add((String) row[1]));
+                }
+                try (Stream<Object[]> rows = em.createQuery(
+                                "SELECT p.id, p.content, p.author.id, p.timestamp FROM Post p WHERE p.isPublic = true",
+                                Object[].class)
+                        .setHint(QueryHints.FETCH_SIZE, SCAN_FETCH_SIZE)
+                        .getResultStream()) {
+                    rows.forEach(row -> {
+                        Long id = (Long) row[0];
+                        next.posts.add(new SearchDocument(id, (String) row[1], (Long) row[2],
+                                (LocalDateTime) row[3], tagsByPost.getOrDefault(id, Collections.emptySet())));
+                    });
+                }
+                try (Stream<Object[]> rows = em.createQuery(
+                                "SELECT c.id, c.content, c.author.id, c.timestamp FROM Comment c", Object[].class)
+                        .setHint(QueryHints.FETCH_SIZE, SCAN_FETCH_SIZE)
+                        .getResultStream()) {
+                    rows.forEach(row -> next.comments.add(new SearchDocument((Long) row[0], (String) row[1],
+                            (Long) row[2], (LocalDateTime) row[3], Collections.emptySet())));
+                }
+                return null;
+            });
+            synchronized (lock) {
+                changesDuringRebuild.forEach(change -> change.accept(next));
+                current = next;
+            }
+        } finally {
+            synchronized (lock) {
+                changesDuringRebuild = null;
+            }
+        }
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+    }
+
+    private void apply(Consumer<Indexes> change) {
+        synchronized (lock) {
+            change.accept(current);
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(change);
+            }
+        }
+    }
+
+    private static final class Indexes {
+
+        private final InvertedIndex posts = new InvertedIndex();
+        private final InvertedIndex comments = new InvertedIndex();
+    }
+}
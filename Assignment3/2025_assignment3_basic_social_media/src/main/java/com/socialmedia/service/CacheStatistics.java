@@ -0,0 +1,51 @@
+package com.socialmedia.service;
+
+// Usage of a second-level cache region since startup, to size it in ehcache.xml
+public class CacheStatistics {
+
+    private final String region;
+    private final long hits;
+    private final long misses;
+    private final long puts;
+    private final long entriesInMemory;
+
+    public CacheStatistics(String region, long hits, long misses, long puts, long entriesInMemory) {
+        this.region = region;
+        this.hits = hits;
+        this.misses = misses;
+        this.puts = puts;
+        this.entriesInMemory = entriesInMemory;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getPuts() {
+        return puts;
+    }
+
+    // Negative if the cache provider does not report it
+    public long getEntriesInMemory() {
+        return entriesInMemory;
+    }
+
+    public double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics{region='" + region + "', hits=" + hits + ", misses=" + misses + ", puts=" + puts +
+                ", entriesInMemory=" + entriesInMemory + ", hitRatio=" + String.format("%.2f", getHitRatio()) + "}";
+    }
+}
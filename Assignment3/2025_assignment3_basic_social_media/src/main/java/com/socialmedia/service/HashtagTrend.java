@@ -0,0 +1,32 @@
+package com.socialmedia.service;
+
+// A trending hashtag: uses in the requested window and exponentially decayed score
+public class HashtagTrend {
+
+    private final String tag;
+    private final long count;
+    private final double score;
+
+    public HashtagTrend(String tag, long count, double score) {
+        this.tag = tag;
+        this.count = count;
+        this.score = score;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "HashtagTrend{tag='" + tag + "', count=" + count + ", score=" + String.format("%.2f", score) + "}";
+    }
+}
@@ -0,0 +1,61 @@
+package com.socialmedia.service;
+
+// Running totals of an inactive user purge. lastUserId is the resume point: a purge started after it
+// goes on where this one stopped.
+public class PurgeProgress {
+
+    private final long chunks;
+    private final long users;
+    private final long posts;
+    private final long comments;
+    private final Long lastUserId;
+    private final boolean finished;
+    private final long elapsedNanos;
+
+    public PurgeProgress(long chunks, long users, long posts, long comments, Long lastUserId, boolean finished,
+                         long elapsedNanos) {
+        this.chunks = chunks;
+        this.users = users;
+        this.posts = posts;
+        this.comments = comments;
+        this.lastUserId = lastUserId;
+        this.finished = finished;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getChunks() {
+        return chunks;
+    }
+
+    public long getUsers() {
+        return users;
+    }
+
+    public long getPosts() {
+        return posts;
+    }
+
+    public long getComments() {
+        return comments;
+    }
+
+    // Highest id among the users deleted or kept so far, null before the first chunk
+    public Long getLastUserId() {
+        return lastUserId;
+    }
+
+    // False when the purge was stopped by its listener or interrupted
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        return "PurgeProgress{chunks=" + chunks + ", users=" + users + ", posts=" + posts + ", comments=" + comments +
+                ", lastUserId=" + lastUserId + ", finished=" + finished + ", elapsedMillis=" + getElapsedMillis() + "}";
+    }
+}
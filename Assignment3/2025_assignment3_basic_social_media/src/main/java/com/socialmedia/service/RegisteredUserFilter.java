@@ -0,0 +1,96 @@
+package com.socialmedia.service;
+
+import com.socialmedia.dao.UnitOfWork;
+import com.socialmedia.dao.UserDAO;
+import com.socialmedia.util.BloomFilter;
+import org.hibernate.annotations.QueryHints;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Bloom filters over the usernames and emails in use, so that availability checks of free names
+// (most of them, typed during signup) are answered without a query. A "might be taken" answer
+// still has to be confirmed by the database.
+//
+// Bloom filters cannot forget: deleted users and old names of renamed users stay in the filters as
+// false positives. Both filters are rebuilt from a scan of the users table once the removals, or the
+// new users, are too many for the current size.
+public class RegisteredUserFilter {
+
+    private static final long MIN_CAPACITY = 100_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int SCAN_FETCH_SIZE = 1_000;
+
+    private volatile Filters current = new Filters(MIN_CAPACITY);
+    // filters being loaded by rebuild, also fed with the names added meanwhile
+    private volatile Filters pending;
+
+    public boolean mightContainUsername(String username) {
+        return current.usernames.mightContain(username);
+    }
+
+    public boolean mightContainEmail(String email) {
+        return current.emails.mightContain(email);
+    }
+
+    // After the user is committed. pending is read first: a rebuild whose scan started before the commit has
+    // already published its filters there, and if it swaps them in meanwhile they are the ones read as current.
+    public void add(String username, String email) {
+        Filters next = pending;
+        current.put(username, email);
+        if (next != null) {
+            next.put(username, email);
+        }
+    }
+
+    // A user was deleted or renamed: its old names stay in the filters until the next rebuild
+    public void recordRemovals(long count) {
+        current.removals.addAndGet(count);
+    }
+
+    public boolean needsRebuild() {
+        Filters filters = current;
+        return filters.usernames.getInsertions() > filters.usernames.getCapacity()
+                || filters.removals.get() > filters.usernames.getCapacity() / 10;
+    }
+
+    // Reload both filters with a streaming scan, sized for twice the current number of users
+    public synchronized void rebuild(UnitOfWork unitOfWork) {
+        long users = unitOfWork.read(em -> new UserDAO(em).count());
+        Filters next = new Filters(Math.max(MIN_CAPACITY, 2 * users));
+        pending = next;
+        try {
+            unitOfWork.read(em -> {
+                try (Stream<Object[]> rows = em.createQuery("SELECT u.username, u.email FROM User u", Object[].class)
+                        .setHint(QueryHints.FETCH_SIZE, SCAN_FETCH_SIZE)
+                        .getResultStream()) {
+                    rows.forEach(row -> next.put((String) row[0], (String) row[1]));
+                }
+                return null;
+            });
+            current = next;
+        } finally {
+            pending = null;
+        }
+    }
+
+    public double getExpectedFalsePositiveRate() {
+        return current.usernames.getExpectedFalsePositiveRate();
+    }
+
+    private static final class Filters {
+
+        private final BloomFilter usernames;
+        private final BloomFilter emails;
+        private final AtomicLong removals = new AtomicLong();
+
+        Filters(long capacity) {
+            this.usernames = new BloomFilter(capacity, FALSE_POSITIVE_RATE);
+            this.emails = new BloomFilter(capacity, FALSE_POSITIVE_RATE);
+        }
+
+        void put(String username, String email) {
+            usernames.put(username);
+            emails.put(email);
+        }
+    }
+}
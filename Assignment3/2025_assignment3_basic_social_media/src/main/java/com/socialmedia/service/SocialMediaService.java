@@ -2,154 +2,316 @@ package com.socialmedia.service;
 
 import com.socialmedia.dao.*;
 import com.socialmedia.entities.*;
-import javax.persistence.EntityManager;
+import com.socialmedia.graph.SocialGraph;
+import com.socialmedia.metrics.Metrics;
+import com.socialmedia.search.SearchDocument;
+import com.socialmedia.search.SearchService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 public class SocialMediaService {
 
-    private UserDAO userDAO;
-    private PostDAO postDAO;
-    private CommentDAO commentDAO;
-    private HashtagDAO hashtagDAO;
+    private static final int PURGE_CHUNK_SIZE = 500;
 
-    public SocialMediaService(EntityManager em) {
-        this.userDAO = new UserDAO(em);
-        this.postDAO = new PostDAO(em);
-        this.commentDAO = new CommentDAO(em);
-        this.hashtagDAO = new HashtagDAO(em);
+    private final UnitOfWork unitOfWork;
+
+    private final TrendingHashtagService trendingHashtags;
+    private final TrendingPostService trendingPosts;
+    private final HashtagCache hashtagCache;
+    private final RegisteredUserFilter registeredUsers;
+    private final SocialGraph socialGraph;
+    private final SearchService search;
+    private final TimelineService timelineService;
+
+    public SocialMediaService(EntityManagerFactory emf) {
+        this(new UnitOfWork(emf), new TrendingHashtagService(), new TrendingPostService(), new HashtagCache(10_000),
+                new RegisteredUserFilter(), new SocialGraph(), new SearchService(),
+                new TimelineService(800, 10_000, 100_000));
+        registeredUsers.rebuild(unitOfWork);
+        socialGraph.load(unitOfWork);
+        search.rebuild(unitOfWork);
+    }
+
+    // registeredUsers, socialGraph and search must already be loaded. The facade shares its unit of work
+    // (metrics included) and in-memory state, so the posts and comments created here reach its timelines,
+    // trending lists and search index like its own.
+    public SocialMediaService(UnitOfWork unitOfWork, TrendingHashtagService trendingHashtags,
+                              TrendingPostService trendingPosts, HashtagCache hashtagCache,
+                              RegisteredUserFilter registeredUsers, SocialGraph socialGraph, SearchService search,
+                              TimelineService timelineService) {
+        this.unitOfWork = unitOfWork;
+        this.trendingHashtags = trendingHashtags;
+        this.trendingPosts = trendingPosts;
+        this.hashtagCache = hashtagCache;
+        this.registeredUsers = registeredUsers;
+        this.socialGraph = socialGraph;
+        this.search = search;
+        this.timelineService = timelineService;
     }
 
     // Business Logic Methods
 
+    // Names missing from the Bloom filter are free with no query; the others are checked in the database
     public boolean isUsernameAvailable(String username) {
-        return userDAO.findByUsername(username) == null;
+        return timed("SocialMediaService.isUsernameAvailable", () -> !registeredUsers.mightContainUsername(username)
+                || unitOfWork.read(em -> new UserDAO(em).findByUsername(username)) == null);
     }
 
     public boolean isEmailAvailable(String email) {
-        return userDAO.findByEmail(email) == null;
+        return timed("SocialMediaService.isEmailAvailable", () -> !registeredUsers.mightContainEmail(email)
+                || unitOfWork.read(em -> new UserDAO(em).findByEmail(email)) == null);
     }
 
     public void validateUserCreation(String username, String email) {
-        if (!isUsernameAvailable(username)) {
-            throw new IllegalArgumentException("Username '" + username + "' is already taken");
-        }
-        if (!isEmailAvailable(email)) {
-            throw new IllegalArgumentException("Email '" + email + "' is already registered");
-        }
+        timed("SocialMediaService.validateUserCreation", () -> {
+            if (!isUsernameAvailable(username)) {
+                throw new IllegalArgumentException("Username '" + username + "' is already taken");
+            }
+            if (!isEmailAvailable(email)) {
+                throw new IllegalArgumentException("Email '" + email + "' is already registered");
+            }
+        });
     }
 
     public Post createPostWithValidation(String content, String postType, Long authorId, List<String> hashtags) {
-        User author = userDAO.findById(authorId);
-        if (author == null) {
-            throw new IllegalArgumentException("User not found with id: " + authorId);
-        }
+        return timed("SocialMediaService.createPostWithValidation", () -> {
+            if (content == null || content.trim().isEmpty()) {
+                throw new IllegalArgumentException("Post content cannot be empty");
+            }
 
-        if (content == null || content.trim().isEmpty()) {
-            throw new IllegalArgumentException("Post content cannot be empty");
-        }
+            if (content.length() > 2000) {
+                throw new IllegalArgumentException("Post content exceeds maximum length of 2000 characters");
+            }
 
-        if (content.length() > 2000) {
-            throw new IllegalArgumentException("Post content exceeds maximum length of 2000 characters");
-        }
+            // the distinct tags attached to the post: a tag repeated in the input is one use
+            List<String> tags = new ArrayList<>();
+            Post post = unitOfWork.inTransaction(em -> {
+                User author = new UserDAO(em).findById(authorId);
+                if (author == null) {
+                    throw new IllegalArgumentException("User not found with id: " + authorId);
+                }
 
-        // Create post
-        Post post = new Post(content, postType, author);
-        postDAO.create(post);
+                // Create post
+                Post created = new Post(content, postType, author);
+                new PostDAO(em).create(created);
 
-        // Add hashtags
-        if (hashtags != null) {
-            for (String tag : hashtags) {
-                Hashtag hashtag = hashtagDAO.findOrCreate(tag);
-                post.addHashtag(hashtag);
-            }
-            postDAO.update(post);
-        }
+                // Add hashtags
+                if (hashtags != null) {
+                    for (Hashtag hashtag : new HashtagDAO(em, hashtagCache).resolveAll(hashtags)) {
+                        created.addHashtag(hashtag);
+                        tags.add(hashtag.getTag());
+                    }
+                }
+                return created;
+            });
+
+            postCreated(post, tags);
 
-        return post;
+            return post;
+        });
+    }
+
+    // Update the in-memory state once a post is committed, with the distinct tags attached to it.
+    // Shared with the facade, so that every way of creating a post reaches the same state.
+    public void postCreated(Post post, Collection<String> tags) {
+        timelineService.publish(post.getAuthor().getId(), new TimelineEntry(post.getTimestamp(), post.getId()),
+                socialGraph);
+        trendingPosts.onPostCreated(post.getId(), post.getTimestamp());
+        if (post.isPublic()) {
+            search.indexPost(SearchDocument.of(post));
+        }
+        tags.forEach(trendingHashtags::record);
     }
 
     public Comment createCommentWithValidation(String content, Long postId, Long authorId) {
-        Post post = postDAO.findById(postId);
-        User author = userDAO.findById(authorId);
+        return timed("SocialMediaService.createCommentWithValidation", () -> {
+            if (content == null || content.trim().isEmpty()) {
+                throw new IllegalArgumentException("Comment content cannot be empty");
+            }
+            if (content.length() > 1000) {
+                throw new IllegalArgumentException("Comment content exceeds maximum length of 1000 characters");
+            }
 
-        if (post == null) {
-            throw new IllegalArgumentException("Post not found with id: " + postId);
-        }
-        if (author == null) {
-            throw new IllegalArgumentException("User not found with id: " + authorId);
-        }
-        if (content == null || content.trim().isEmpty()) {
-            throw new IllegalArgumentException("Comment content cannot be empty");
-        }
-        if (content.length() > 1000) {
-            throw new IllegalArgumentException("Comment content exceeds maximum length of 1000 characters");
-        }
+            Comment comment = unitOfWork.inTransaction(em -> {
+                Post post = new PostDAO(em).findById(postId);
+                User author = new UserDAO(em).findById(authorId);
+
+                if (post == null) {
+                    throw new IllegalArgumentException("Post not found with id: " + postId);
+                }
+                if (author == null) {
+                    throw new IllegalArgumentException("User not found with id: " + authorId);
+                }
 
-        Comment comment = new Comment(content, post, author);
-        commentDAO.create(comment);
-        post.addComment(comment);
-        author.addComment(comment);
+                Comment created = new Comment(content, post, author);
+                new CommentDAO(em).create(created);
+                return created;
+            });
+            trendingPosts.onComment(postId, 1);
+            search.indexComment(SearchDocument.of(comment));
 
-        return comment;
+            return comment;
+        });
     }
 
     // Statistics Methods
 
     public long getUserCount() {
-        return userDAO.count();
+        return timed("SocialMediaService.getUserCount", () -> unitOfWork.read(em -> new UserDAO(em).count()));
     }
 
     public long getPostCount() {
-        return postDAO.count();
+        return timed("SocialMediaService.getPostCount", () -> unitOfWork.read(em -> new PostDAO(em).count()));
     }
 
     public long getCommentCount() {
-        return commentDAO.count();
+        return timed("SocialMediaService.getCommentCount", () -> unitOfWork.read(em -> new CommentDAO(em).count()));
     }
 
     public User getMostActiveUser() {
-        String jpql = "SELECT u FROM User u " +
-                "WHERE u.id IN (" +
-                "  SELECT p.author.id FROM Post p GROUP BY p.author.id " +
-                "  ORDER BY COUNT(p) DESC" +
-                ")";
-        List<User> users = userDAO.entityManager.createQuery(jpql, User.class)
-                .setMaxResults(1)
-                .getResultList();
-        return users.isEmpty() ? null : users.get(0);
+        return timed("SocialMediaService.getMostActiveUser", () -> {
+            String jpql = "SELECT u FROM User u " +
+                    "WHERE u.id IN (" +
+                    "  SELECT p.author.id FROM Post p GROUP BY p.author.id " +
+                    "  ORDER BY COUNT(p) DESC" +
+                    ")";
+            List<User> users = unitOfWork.read(em -> em.createQuery(jpql, User.class)
+                    .setMaxResults(1)
+                    .getResultList());
+            return users.isEmpty() ? null : users.get(0);
+        });
     }
 
     public Post getMostLikedPost() {
-        String jpql = "SELECT p FROM Post p " +
-                "ORDER BY SIZE(p.likedBy) DESC";
-        List<Post> posts = postDAO.entityManager.createQuery(jpql, Post.class)
-                .setMaxResults(1)
-                .getResultList();
-        return posts.isEmpty() ? null : posts.get(0);
+        return timed("SocialMediaService.getMostLikedPost", () -> {
+            String jpql = "SELECT p FROM Post p " +
+                    "ORDER BY p.likeCount DESC";
+            List<Post> posts = unitOfWork.read(em -> em.createQuery(jpql, Post.class)
+                    .setMaxResults(1)
+                    .getResultList());
+            return posts.isEmpty() ? null : posts.get(0);
+        });
     }
 
     public List<Hashtag> getTrendingHashtags(int limit) {
-        return hashtagDAO.findTrendingHashtags(limit);
+        return timed("SocialMediaService.getTrendingHashtags",
+                () -> unitOfWork.read(em -> new HashtagDAO(em).findTrendingHashtags(limit)));
+    }
+
+    // Trending now: most used hashtags in the last window, served from memory
+    public List<HashtagTrend> getTrendingHashtags(int limit, Duration window) {
+        return timed("SocialMediaService.getTrendingHashtags(window)",
+                () -> trendingHashtags.getTrendingHashtags(limit, window));
+    }
+
+    // Second-level cache hits and misses per region (entities, natural ids, queries)
+    public List<CacheStatistics> getCacheStatistics() {
+        Statistics statistics = unitOfWork.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        List<CacheStatistics> report = new ArrayList<>();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+            if (regionStatistics != null) {
+                long entries = regionStatistics.getElementCountInMemory();
+                report.add(new CacheStatistics(region, regionStatistics.getHitCount(), regionStatistics.getMissCount(),
+                        regionStatistics.getPutCount(),
+                        entries == CacheRegionStatistics.NO_EXTENDED_STAT_SUPPORT_RETURN ? -1 : entries));
+            }
+        }
+        report.add(new CacheStatistics("natural-ids", statistics.getNaturalIdCacheHitCount(),
+                statistics.getNaturalIdCacheMissCount(), statistics.getNaturalIdCachePutCount(), -1));
+        report.add(new CacheStatistics("queries", statistics.getQueryCacheHitCount(),
+                statistics.getQueryCacheMissCount(), statistics.getQueryCachePutCount(), -1));
+        return report;
     }
 
     // Cleanup Methods
 
-    public void deleteInactiveUsers(LocalDateTime lastActiveBefore) {
-        String jpql = "SELECT u FROM User u " +
-                "WHERE u.id NOT IN (" +
-                "  SELECT p.author.id FROM Post p WHERE p.timestamp > :date" +
-                ") " +
-                "AND u.id NOT IN (" +
-                "  SELECT c.author.id FROM Comment c WHERE c.timestamp > :date" +
-                ")";
-
-        List<User> inactiveUsers = userDAO.entityManager.createQuery(jpql, User.class)
-                .setParameter("date", lastActiveBefore)
-                .getResultList();
-
-        for (User user : inactiveUsers) {
-            userDAO.delete(user);
+    public PurgeProgress deleteInactiveUsers(LocalDateTime lastActiveBefore) {
+        return deleteInactiveUsers(lastActiveBefore, null, PURGE_CHUNK_SIZE, Duration.ZERO, progress -> true);
+    }
+
+    // Delete the users with no post or comment after the date, with everything they wrote, chunkSize users
+    // per transaction. Each chunk is selected by increasing id after afterUserId and purged with set-based
+    // statements, so locks are held for one chunk only; pauseBetweenChunks leaves the database to the other
+    // traffic when the purge runs during the day. The listener gets the totals after every committed chunk
+    // and stops the purge by returning false: starting again after getLastUserId() resumes it.
+    public PurgeProgress deleteInactiveUsers(LocalDateTime lastActiveBefore, Long afterUserId, int chunkSize,
+                                             Duration pauseBetweenChunks, Predicate<PurgeProgress> listener) {
+        return timed("SocialMediaService.deleteInactiveUsers", () -> {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+            }
+            long start = System.nanoTime();
+            long chunks = 0;
+            long users = 0;
+            long posts = 0;
+            long comments = 0;
+            Long lastUserId = afterUserId;
+            while (true) {
+                Long after = lastUserId;
+                List<Long> ids = new ArrayList<>();
+                DeletedRows deleted = unitOfWork.inTransaction(em -> {
+                    UserDAO userDAO = new UserDAO(em);
+                    ids.addAll(userDAO.findInactiveUserIds(lastActiveBefore, after, chunkSize));
+                    return ids.isEmpty() ? null : userDAO.deleteWithContent(ids);
+                });
+                if (deleted == null) {
+                    return new PurgeProgress(chunks, users, posts, comments, lastUserId, true,
+                            System.nanoTime() - start);
+                }
+
+                ids.forEach(socialGraph::removeUser);
+                deleted.getPostIds().forEach(trendingPosts::remove);
+                search.removeDeleted(deleted);
+                registeredUsers.recordRemovals(deleted.getUsers());
+                if (registeredUsers.needsRebuild()) {
+                    registeredUsers.rebuild(unitOfWork);
+                }
+
+                chunks++;
+                users += deleted.getUsers();
+                posts += deleted.getPostIds().size();
+                comments += deleted.getComments();
+                lastUserId = ids.get(ids.size() - 1);
+                boolean finished = ids.size() < chunkSize;
+                PurgeProgress progress = new PurgeProgress(chunks, users, posts, comments, lastUserId, finished,
+                        System.nanoTime() - start);
+                if (!listener.test(progress) || finished) {
+                    return progress;
+                }
+                if (!pauseBetweenChunks.isZero()) {
+                    try {
+                        Thread.sleep(pauseBetweenChunks.toMillis());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return progress;
+                    }
+                }
+            }
+        });
+    }
+
+    // Operations are timed like the facade's when the unit of work has metrics
+    private <T> T timed(String operation, Supplier<T> work) {
+        Metrics metrics = unitOfWork.getMetrics();
+        return metrics != null ? metrics.time(operation, work) : work.get();
+    }
+
+    private void timed(String operation, Runnable work) {
+        Metrics metrics = unitOfWork.getMetrics();
+        if (metrics != null) {
+            metrics.time(operation, work);
+        } else {
+            work.run();
         }
     }
-}
\ No newline at end of file
+}
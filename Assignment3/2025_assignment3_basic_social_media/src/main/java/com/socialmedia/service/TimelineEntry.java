@@ -0,0 +1,50 @@
+package com.socialmedia.service;
+
+import com.socialmedia.dao.Cursor;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+// A post of a home timeline. Timelines are ordered like every other post listing: by timestamp, then by id.
+public final class TimelineEntry {
+
+    static final Comparator<TimelineEntry> NEWEST_FIRST = Comparator.comparing(TimelineEntry::getTimestamp)
+            .thenComparing(TimelineEntry::getPostId).reversed();
+
+    private final LocalDateTime timestamp;
+    private final Long postId;
+
+    public TimelineEntry(LocalDateTime timestamp, Long postId) {
+        this.timestamp = timestamp;
+        this.postId = postId;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public Long getPostId() {
+        return postId;
+    }
+
+    // Keyset cursor over the timeline: (timestamp, id) of the last entry of a page
+    public String toCursor() {
+        return Cursor.encode(timestamp, postId);
+    }
+
+    // Returns null for a null cursor (first page)
+    public static TimelineEntry fromCursor(String cursor) {
+        Cursor decoded = Cursor.decode(cursor);
+        if (decoded == null) {
+            return null;
+        }
+        if (decoded.getTimestamp() == null) {
+            throw new IllegalArgumentException("Invalid timeline cursor: " + cursor);
+        }
+        return new TimelineEntry(decoded.getTimestamp(), decoded.getId());
+    }
+
+    @Override
+    public String toString() {
+        return "TimelineEntry{postId=" + postId + ", timestamp=" + timestamp + "}";
+    }
+}
@@ -0,0 +1,245 @@
+package com.socialmedia.service;
+
+import com.socialmedia.graph.SocialGraph;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// In-memory home timelines.
+// Posts are pushed into the followers' timelines when they are written (fan-out-on-write),
+// except for authors with more than fanOutLimit followers: their posts are kept in a
+// per-author list and merged into the followers' timelines when they are read.
+// Timelines are ordered newest first by (timestamp, id), like the other post listings.
+public class TimelineService {
+
+    private final int timelineSize;
+    private final int fanOutLimit;
+    private final int maxTimelines;
+
+    // Materialized home timelines: follower id -> latest posts
+    private final Map<Long, Timeline> timelines = new ConcurrentHashMap<>();
+
+    // Latest posts of the authors that are too popular to fan out: author id -> latest posts
+    private final Map<Long, Timeline> celebrityPosts = new ConcurrentHashMap<>();
+
+    public TimelineService(int timelineSize, int fanOutLimit, int maxTimelines) {
+        this.timelineSize = timelineSize;
+        this.fanOutLimit = fanOutLimit;
+        this.maxTimelines = maxTimelines;
+    }
+
+    public int getTimelineSize() {
+        return timelineSize;
+    }
+
+    public int getFanOutLimit() {
+        return fanOutLimit;
+    }
+
+    public boolean isCelebrity(Long authorId) {
+        return celebrityPosts.containsKey(authorId);
+    }
+
+    public Set<Long> getCelebrities() {
+        return Collections.unmodifiableSet(celebrityPosts.keySet());
+    }
+
+    public boolean isMaterialized(Long userId) {
+        Timeline timeline = timelines.get(userId);
+        return timeline != null && timeline.isLoaded();
+    }
+
+    // The timeline of the user, loaded with the loader (post ids in any order) if it is not materialized.
+    // A placeholder is installed before the loader reads the database: posts published in the meantime are
+    // added to it, so none is lost between the read and the install. An invalidation in the meantime (a new
+    // follow) removes the placeholder, and the loaded timeline is then only used for the current read.
+    private Timeline materialize(Long userId, Supplier<Collection<TimelineEntry>> loader) {
+        Timeline timeline = timelines.get(userId);
+        if (timeline == null) {
+            if (timelines.size() >= maxTimelines) {
+                evictOne();
+            }
+            timeline = timelines.computeIfAbsent(userId, id -> new Timeline(timelineSize));
+        }
+        // a placeholder still loading for another reader is loaded again: adding the same post twice is a no-op
+        if (!timeline.isLoaded()) {
+            for (TimelineEntry entry : loader.get()) {
+                timeline.add(entry);
+            }
+            timeline.markLoaded();
+        }
+        return timeline;
+    }
+
+    // Drop a timeline so that it gets reloaded on the next read (e.g. after a new follow)
+    public void invalidate(Long userId) {
+        timelines.remove(userId);
+    }
+
+    public void invalidateAll() {
+        timelines.clear();
+    }
+
+    // Fan-out-on-write. Only timelines that are already materialized (or being loaded) are updated,
+    // the others will be loaded from the database (including this post) when first read.
+    public void publish(Long authorId, TimelineEntry post, Collection<Long> followerIds) {
+        if (isCelebrity(authorId) || followerIds.size() > fanOutLimit) {
+            celebrityPosts.computeIfAbsent(authorId, id -> new Timeline(timelineSize)).add(post);
+            return;
+        }
+        for (Long followerId : followerIds) {
+            Timeline timeline = timelines.get(followerId);
+            if (timeline != null) {
+                timeline.add(post);
+            }
+        }
+    }
+
+    // Fan-out-on-write to the followers in the social graph (none for celebrities, merged on read)
+    public void publish(Long authorId, TimelineEntry post, SocialGraph socialGraph) {
+        if (isCelebrity(authorId)) {
+            publish(authorId, post, Collections.emptyList());
+            return;
+        }
+        long[] followerIds = socialGraph.getFollowerIds(authorId, fanOutLimit + 1);
+        publish(authorId, post, Arrays.stream(followerIds).boxed().collect(Collectors.toList()));
+    }
+
+    // Read a page of posts, newest first, older than the cursor entry (null for the first page).
+    // The loader reads the latest posts of the followed users from the database, if the timeline is not
+    // materialized. followedCelebrities are the celebrities followed by the user, merged in on read.
+    public List<TimelineEntry> read(Long userId, Supplier<Collection<TimelineEntry>> loader,
+                                    Collection<Long> followedCelebrities, TimelineEntry cursor, int limit) {
+        List<TimelineEntry> candidates = new ArrayList<>();
+        materialize(userId, loader).collect(cursor, limit, candidates);
+        for (Long celebrityId : followedCelebrities) {
+            Timeline posts = celebrityPosts.get(celebrityId);
+            if (posts != null) {
+                posts.collect(cursor, limit, candidates);
+            }
+        }
+        if (followedCelebrities.isEmpty()) {
+            return candidates;
+        }
+
+        candidates.sort(TimelineEntry.NEWEST_FIRST);
+        List<TimelineEntry> page = new ArrayList<>(limit);
+        for (TimelineEntry entry : candidates) {
+            if (page.size() == limit) {
+                break;
+            }
+            // the same post can come from both the timeline and the celebrity list
+            if (page.isEmpty() || !page.get(page.size() - 1).getPostId().equals(entry.getPostId())) {
+                page.add(entry);
+            }
+        }
+        return page;
+    }
+
+    private void evictOne() {
+        Iterator<Long> it = timelines.keySet().iterator();
+        if (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    // Bounded list of posts kept in ascending (timestamp, id) order, the newest post is the last one.
+    // Timestamps are stored as microseconds since the epoch (UTC), the precision of the timestamp column.
+    // Posts are mostly published as they are written, so adding a new post is almost always an append.
+    static final class Timeline {
+
+        private final long[] times;
+        private final long[] postIds;
+        private int size;
+        // false while the timeline is a placeholder collecting the posts published during its load
+        private volatile boolean loaded;
+
+        Timeline(int capacity) {
+            this.times = new long[capacity];
+            this.postIds = new long[capacity];
+        }
+
+        boolean isLoaded() {
+            return loaded;
+        }
+
+        void markLoaded() {
+            loaded = true;
+        }
+
+        synchronized void add(TimelineEntry entry) {
+            long time = toMicros(entry.getTimestamp());
+            long postId = entry.getPostId();
+            int pos = search(time, postId);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if (size == postIds.length) {
+                if (pos == 0) {
+                    return; // older than everything we keep
+                }
+                // drop the oldest post
+                System.arraycopy(times, 1, times, 0, pos - 1);
+                System.arraycopy(postIds, 1, postIds, 0, pos - 1);
+                pos--;
+            } else {
+                System.arraycopy(times, pos, times, pos + 1, size - pos);
+                System.arraycopy(postIds, pos, postIds, pos + 1, size - pos);
+                size++;
+            }
+            times[pos] = time;
+            postIds[pos] = postId;
+        }
+
+        // Append up to limit posts older than the cursor, newest first
+        synchronized void collect(TimelineEntry cursor, int limit, List<TimelineEntry> out) {
+            int end = size;
+            if (cursor != null) {
+                int pos = search(toMicros(cursor.getTimestamp()), cursor.getPostId());
+                end = pos >= 0 ? pos : -pos - 1;
+            }
+            for (int i = end - 1; i >= 0 && limit > 0; i--, limit--) {
+                out.add(new TimelineEntry(fromMicros(times[i]), postIds[i]));
+            }
+        }
+
+        // Like Arrays.binarySearch, over the (time, id) pairs
+        private int search(long time, long postId) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int order = times[mid] != time ? Long.compare(times[mid], time) : Long.compare(postIds[mid], postId);
+                if (order < 0) {
+                    low = mid + 1;
+                } else if (order > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private static long toMicros(LocalDateTime timestamp) {
+            return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + timestamp.getNano() / 1_000;
+        }
+
+        private static LocalDateTime fromMicros(long micros) {
+            return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                    (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+        }
+    }
+}
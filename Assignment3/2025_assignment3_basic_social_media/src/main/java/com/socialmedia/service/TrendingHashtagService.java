@@ -0,0 +1,196 @@
+package com.socialmedia.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// In-process "trending now" hashtags, fed with every hashtag use.
+//
+// Each tag keeps its uses in a ring of time buckets (5 minutes x 24 hours by default) and an
+// exponentially decayed score. Scores use forward decay: a use at time t weighs 2^((t - landmark) / halfLife),
+// so tags that are not used keep their relative order and the top-K only changes when a tag is used.
+// Window queries re-rank the top-K candidates by their bucket counts, without touching the database.
+public class TrendingHashtagService {
+
+    private static final Comparator<TagCounter> BY_SCORE = Comparator
+            .comparingDouble((TagCounter counter) -> counter.score).reversed()
+            .thenComparing(counter -> counter.tag);
+
+    // Renormalize the scores before 2^exponent gets anywhere near overflowing
+    private static final double MAX_EXPONENT = 256;
+    private static final int SWEEP_INTERVAL = 4096;
+
+    private final Clock clock;
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final double halfLifeMillis;
+    private final int topSize;
+
+    private final Map<String, TagCounter> counters = new HashMap<>();
+    private final TreeSet<TagCounter> top = new TreeSet<>(BY_SCORE);
+    private long landmark;
+    private int recordsSinceSweep;
+
+    public TrendingHashtagService() {
+        this(Clock.systemUTC(), Duration.ofMinutes(5), 288, Duration.ofHours(1), 256);
+    }
+
+    public TrendingHashtagService(Clock clock, Duration bucketSize, int bucketCount, Duration halfLife, int topSize) {
+        this.clock = clock;
+        this.bucketMillis = bucketSize.toMillis();
+        this.bucketCount = bucketCount;
+        this.halfLifeMillis = halfLife.toMillis();
+        this.topSize = topSize;
+        this.landmark = clock.millis();
+    }
+
+    public void record(String tag) {
+        record(tag, clock.instant());
+    }
+
+    public synchronized void record(String tag, Instant at) {
+        long millis = at.toEpochMilli();
+        if ((millis - landmark) / halfLifeMillis > MAX_EXPONENT) {
+            renormalize(millis);
+        }
+
+        TagCounter counter = counters.computeIfAbsent(tag, t -> new TagCounter(t, bucketCount));
+        counter.add(millis / bucketMillis);
+
+        if (counter.inTop) {
+            top.remove(counter);
+        }
+        counter.score += Math.pow(2, (millis - landmark) / halfLifeMillis);
+        if (counter.inTop || top.size() < topSize) {
+            top.add(counter);
+            counter.inTop = true;
+        } else if (BY_SCORE.compare(counter, top.last()) < 0) {
+            top.pollLast().inTop = false;
+            top.add(counter);
+            counter.inTop = true;
+        }
+
+        if (++recordsSinceSweep >= SWEEP_INTERVAL) {
+            sweep(millis / bucketMillis);
+        }
+    }
+
+    // Hashtags with the highest decayed score
+    public synchronized List<HashtagTrend> getTrendingHashtags(int limit) {
+        long now = clock.millis();
+        long nowBucket = now / bucketMillis;
+        List<HashtagTrend> trends = new ArrayList<>(Math.min(limit, top.size()));
+        for (TagCounter counter : top) {
+            if (trends.size() == limit) {
+                break;
+            }
+            trends.add(new HashtagTrend(counter.tag, counter.count(nowBucket - bucketCount + 1, nowBucket),
+                    decayedScore(counter, now)));
+        }
+        return trends;
+    }
+
+    // Hashtags used the most in the last window (at most bucketSize x bucketCount)
+    public synchronized List<HashtagTrend> getTrendingHashtags(int limit, Duration window) {
+        long now = clock.millis();
+        long nowBucket = now / bucketMillis;
+        long windowBuckets = Math.min(bucketCount, Math.max(1, (window.toMillis() + bucketMillis - 1) / bucketMillis));
+
+        List<HashtagTrend> trends = new ArrayList<>();
+        for (TagCounter counter : top) {
+            long count = counter.count(nowBucket - windowBuckets + 1, nowBucket);
+            if (count > 0) {
+                trends.add(new HashtagTrend(counter.tag, count, decayedScore(counter, now)));
+            }
+        }
+        trends.sort(Comparator.comparingLong(HashtagTrend::getCount).reversed()
+                .thenComparing(Comparator.comparingDouble(HashtagTrend::getScore).reversed()));
+        return trends.size() > limit ? new ArrayList<>(trends.subList(0, limit)) : trends;
+    }
+
+    public synchronized int getTrackedTagCount() {
+        return counters.size();
+    }
+
+    private double decayedScore(TagCounter counter, long now) {
+        return counter.score * Math.pow(2, (landmark - now) / halfLifeMillis);
+    }
+
+    // Move the landmark to now and scale every score accordingly
+    private void renormalize(long now) {
+        double factor = Math.pow(2, (landmark - now) / halfLifeMillis);
+        List<TagCounter> topCounters = new ArrayList<>(top);
+        top.clear();
+        for (TagCounter counter : counters.values()) {
+            counter.score *= factor;
+        }
+        top.addAll(topCounters);
+        landmark = now;
+    }
+
+    // Forget the tags that have not been used for the whole ring and are not trending
+    private void sweep(long nowBucket) {
+        recordsSinceSweep = 0;
+        Iterator<TagCounter> it = counters.values().iterator();
+        while (it.hasNext()) {
+            TagCounter counter = it.next();
+            if (!counter.inTop && nowBucket - counter.lastBucket >= bucketCount) {
+                it.remove();
+            }
+        }
+    }
+
+    private static final class TagCounter {
+
+        private final String tag;
+        // uses per bucket, bucket b is stored at b % buckets.length
+        private final int[] buckets;
+        private long lastBucket = Long.MIN_VALUE;
+        private double score;
+        private boolean inTop;
+
+        TagCounter(String tag, int bucketCount) {
+            this.tag = tag;
+            this.buckets = new int[bucketCount];
+        }
+
+        void add(long bucket) {
+            if (lastBucket == Long.MIN_VALUE || bucket - lastBucket >= buckets.length) {
+                Arrays.fill(buckets, 0);
+                lastBucket = bucket;
+            } else if (bucket > lastBucket) {
+                // clear the buckets skipped since the last use
+                for (long b = lastBucket + 1; b <= bucket; b++) {
+                    buckets[slot(b)] = 0;
+                }
+                lastBucket = bucket;
+            } else if (lastBucket - bucket >= buckets.length) {
+                return; // older than the ring
+            }
+            buckets[slot(bucket)]++;
+        }
+
+        // Uses in the buckets [from, to]
+        long count(long from, long to) {
+            from = Math.max(from, lastBucket - buckets.length + 1);
+            to = Math.min(to, lastBucket);
+            long count = 0;
+            for (long b = from; b <= to; b++) {
+                count += buckets[slot(b)];
+            }
+            return count;
+        }
+
+        private int slot(long bucket) {
+            return (int) Math.floorMod(bucket, (long) buckets.length);
+        }
+    }
+}
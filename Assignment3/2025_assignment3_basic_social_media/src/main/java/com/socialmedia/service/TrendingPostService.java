@@ -0,0 +1,172 @@
+package com.socialmedia.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// In-memory ranking of the recent public posts by engagement.
+// Fed with post, like and comment events; the database is only read to rebuild the state after a restart.
+// Posts older than the window are dropped, and so are the oldest ones when more than maxTracked are kept.
+public class TrendingPostService {
+
+    private static final Comparator<PostScore> BY_SCORE = Comparator
+            .comparingDouble((PostScore post) -> post.score).reversed()
+            .thenComparing((PostScore post) -> post.createdAt, Comparator.reverseOrder())
+            .thenComparing((PostScore post) -> post.postId, Comparator.reverseOrder());
+
+    private final Clock clock;
+    private final Duration window;
+    private final int maxTracked;
+    private final double likeWeight;
+    private final double commentWeight;
+
+    private final Map<Long, PostScore> tracked = new HashMap<>();
+    private final TreeSet<PostScore> ranking = new TreeSet<>(BY_SCORE);
+    // tracked posts in creation order, oldest first
+    private final ArrayDeque<PostScore> byAge = new ArrayDeque<>();
+
+    public TrendingPostService() {
+        this(Clock.systemDefaultZone(), Duration.ofHours(24), 100_000, 1.0, 2.0);
+    }
+
+    // score = likeWeight * likes + commentWeight * comments
+    public TrendingPostService(Clock clock, Duration window, int maxTracked, double likeWeight, double commentWeight) {
+        this.clock = clock;
+        this.window = window;
+        this.maxTracked = maxTracked;
+        this.likeWeight = likeWeight;
+        this.commentWeight = commentWeight;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public synchronized void onPostCreated(Long postId, LocalDateTime createdAt) {
+        onPostCreated(postId, createdAt, 0, 0);
+    }
+
+    // Post made public again, with its current counters: ranked again if it is still in the window
+    public synchronized void onPostCreated(Long postId, LocalDateTime createdAt, int likes, int comments) {
+        if (createdAt.isBefore(LocalDateTime.now(clock).minus(window))) {
+            return;
+        }
+        track(postId, createdAt, likes, comments);
+        expire();
+    }
+
+    public synchronized void onLike(Long postId, int delta) {
+        update(postId, delta, 0);
+    }
+
+    public synchronized void onComment(Long postId, int delta) {
+        update(postId, 0, delta);
+    }
+
+    // Post deleted or no longer public
+    public synchronized void remove(Long postId) {
+        PostScore post = tracked.remove(postId);
+        if (post != null) {
+            ranking.remove(post);
+            post.removed = true;
+        }
+    }
+
+    // Ids of the highest scoring recent posts
+    public synchronized List<Long> findTrendingPostIds(int limit) {
+        expire();
+        // a post tracked again once made public again is queued behind newer ones, and can outlive the window
+        LocalDateTime cutoff = LocalDateTime.now(clock).minus(window);
+        List<Long> postIds = new ArrayList<>(Math.min(limit, ranking.size()));
+        for (PostScore post : ranking) {
+            if (postIds.size() == limit) {
+                break;
+            }
+            if (!post.createdAt.isBefore(cutoff)) {
+                postIds.add(post.postId);
+            }
+        }
+        return postIds;
+    }
+
+    // Restore the state from the counters stored on the posts, rows must be ordered by timestamp
+    public synchronized void rebuild(List<Object[]> postRows) {
+        tracked.clear();
+        ranking.clear();
+        byAge.clear();
+        for (Object[] row : postRows) {
+            track((Long) row[0], (LocalDateTime) row[1], ((Number) row[2]).intValue(), ((Number) row[3]).intValue());
+        }
+        expire();
+    }
+
+    public synchronized int getTrackedPostCount() {
+        return tracked.size();
+    }
+
+    private void track(Long postId, LocalDateTime createdAt, int likes, int comments) {
+        if (tracked.containsKey(postId)) {
+            return;
+        }
+        PostScore post = new PostScore(postId, createdAt);
+        post.likes = likes;
+        post.comments = comments;
+        post.score = score(likes, comments);
+        tracked.put(postId, post);
+        ranking.add(post);
+        byAge.addLast(post);
+    }
+
+    private void update(Long postId, int likeDelta, int commentDelta) {
+        PostScore post = tracked.get(postId);
+        if (post == null) {
+            return; // too old, or dropped to stay under maxTracked
+        }
+        ranking.remove(post);
+        post.likes += likeDelta;
+        post.comments += commentDelta;
+        post.score = score(post.likes, post.comments);
+        ranking.add(post);
+    }
+
+    private double score(int likes, int comments) {
+        return likeWeight * likes + commentWeight * comments;
+    }
+
+    // Drop the posts that left the window, and the oldest ones above maxTracked
+    private void expire() {
+        LocalDateTime cutoff = LocalDateTime.now(clock).minus(window);
+        while (!byAge.isEmpty()) {
+            PostScore oldest = byAge.peekFirst();
+            if (!oldest.removed && tracked.size() <= maxTracked && !oldest.createdAt.isBefore(cutoff)) {
+                break;
+            }
+            byAge.pollFirst();
+            if (!oldest.removed) {
+                remove(oldest.postId);
+            }
+        }
+    }
+
+    private static final class PostScore {
+
+        private final Long postId;
+        private final LocalDateTime createdAt;
+        private int likes;
+        private int comments;
+        private double score;
+        private boolean removed;
+
+        PostScore(Long postId, LocalDateTime createdAt) {
+            this.postId = postId;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.socialmedia.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Histogram of durations in nanoseconds with log-linear buckets, as in HdrHistogram: values under 64 ns
+// have a bucket each, above that every power of two is split into 32 buckets. Percentiles are then within
+// 1/32 (about 3%) of the recorded values, in 10 KB whatever the number of values. Values are capped
+// at about 2.4 hours. Recording is one increment of a bucket and two adders, with no locks.
+public class LatencyHistogram {
+
+    private static final int EXACT = 64;
+    private static final int SUB_BUCKETS = 32;
+    private static final int MAX_BITS = 43;
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(EXACT + (MAX_BITS - 6) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(MAX_VALUE, nanos));
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    // Highest value of the bucket holding the given percentile (0 to 100), never above the maximum
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    // The top 6 bits of the value: its power of two and the sub-bucket within it
+    private static int index(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+        int top = (int) (value >>> shift);
+        return EXACT + (shift - 1) * SUB_BUCKETS + top - SUB_BUCKETS;
+    }
+
+    private static long highestValue(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int shift = (index - EXACT) / SUB_BUCKETS + 1;
+        long top = (index - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,101 @@
+package com.socialmedia.util;
+
+import java.util.Arrays;
+
+// Map from long keys to int values with open addressing (linear probing) over two primitive arrays:
+// no boxing and no entry objects. Not thread-safe. Long.MIN_VALUE cannot be used as a key.
+public class LongIntHashMap {
+
+    private static final long FREE = Long.MIN_VALUE;
+    private static final int MISSING = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    // The value of the key, or -1 if absent
+    public int get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            if (keys[slot] == FREE) {
+                return MISSING;
+            }
+        }
+    }
+
+    public void put(long key, int value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Reserved key: " + key);
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        boolean added = keys[slot] == FREE;
+        keys[slot] = key;
+        values[slot] = value;
+        // load factor up to 1/2, so that probe sequences stay short
+        if (added && ++size > keys.length / 2) {
+            grow();
+        }
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) {
+                consumer.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getMemoryBytes() {
+        return (long) keys.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(keys, FREE);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // MurmurHash3 finalizer: sequential ids would otherwise fill runs of adjacent slots
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+}
@@ -0,0 +1,89 @@
+package com.socialmedia.util;
+
+import java.util.Arrays;
+
+// Map from long keys to long values with open addressing (linear probing) over two primitive arrays,
+// like LongIntHashMap: 32 bytes per entry at most, against about 80 for a HashMap<Long, Long>.
+// Not thread-safe. Long.MIN_VALUE cannot be used as a key.
+public class LongLongHashMap {
+
+    private static final long FREE = Long.MIN_VALUE;
+    private static final long MISSING = -1;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    public LongLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new long[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    // The value of the key, or -1 if absent
+    public long get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            if (keys[slot] == FREE) {
+                return MISSING;
+            }
+        }
+    }
+
+    public void put(long key, long value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Reserved key: " + key);
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        boolean added = keys[slot] == FREE;
+        keys[slot] = key;
+        values[slot] = value;
+        // load factor up to 1/2, so that probe sequences stay short
+        if (added && ++size > keys.length / 2) {
+            grow();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getMemoryBytes() {
+        return (long) keys.length * 2 * Long.BYTES;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new long[oldValues.length * 2];
+        Arrays.fill(keys, FREE);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // MurmurHash3 finalizer: sequential ids would otherwise fill runs of adjacent slots
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -1,15 +1,78 @@
 package com.socialmedia;
 
+import com.socialmedia.dao.BulkResult;
+import com.socialmedia.dao.CommentDAO;
+import com.socialmedia.dao.Cursor;
+import com.socialmedia.dao.HashtagCache;
+import com.socialmedia.dao.HashtagDAO;
+import com.socialmedia.dao.Page;
+import com.socialmedia.dao.PostDAO;
+import com.socialmedia.dao.UnitOfWork;
+import com.socialmedia.dto.CommentNode;
+import com.socialmedia.dto.CommentSummary;
+import com.socialmedia.dto.PostSummary;
+import com.socialmedia.dto.Snippets;
 import com.socialmedia.entities.*;
+import com.socialmedia.export.DataExporter;
+import com.socialmedia.export.ExportFormat;
+import com.socialmedia.export.ExportResult;
+import com.socialmedia.export.ExportTable;
+import com.socialmedia.export.ImportResult;
+import com.socialmedia.facade.AsyncSocialMediaFacade;
 import com.socialmedia.facade.SocialMediaFacade;
+import com.socialmedia.generator.GeneratedData;
+import com.socialmedia.generator.GeneratorConfig;
+import com.socialmedia.graph.FollowRecommender;
+import com.socialmedia.graph.Recommendation;
+import com.socialmedia.graph.SocialGraph;
+import com.socialmedia.metrics.Metrics;
+import com.socialmedia.metrics.OperationMetrics;
+import com.socialmedia.metrics.QueryBudget;
+import com.socialmedia.search.SearchFilter;
+import com.socialmedia.service.CacheStatistics;
+import com.socialmedia.service.HashtagTrend;
+import com.socialmedia.service.PurgeProgress;
+import com.socialmedia.service.TimelineEntry;
+import com.socialmedia.service.TimelineService;
+import com.socialmedia.util.BloomFilter;
+import com.socialmedia.util.LatencyHistogram;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.*;
 
+import javax.management.MBeanServer;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -138,11 +201,11 @@ public class SocialMediaTest {
     public void testFollowUser() {
         facade.followUser(regularUserId, adminUserId);
 
-        User regularUser = facade.findUserById(regularUserId);
-        User adminUser = facade.findUserById(adminUserId);
-
-        assertTrue(regularUser.getFollowing().contains(adminUser));
-        assertTrue(adminUser.getFollowers().contains(regularUser));
+        // The returned entities are detached, so the relationship is checked through the paged queries
+        assertTrue(facade.findFollowing(regularUserId, null, 10).getItems().stream()
+                .anyMatch(u -> u.getId().equals(adminUserId)));
+        assertTrue(facade.findFollowers(adminUserId, null, 10).getItems().stream()
+                .anyMatch(u -> u.getId().equals(regularUserId)));
         System.out.println("✅ User following relationship established");
     }
 
@@ -152,9 +215,8 @@ public class SocialMediaTest {
         facade.likePost(adminUserId, postId);
 
         Post post = facade.findPostById(postId);
-        User admin = facade.findUserById(adminUserId);
 
-        assertTrue(post.getLikedBy().contains(admin));
+        assertTrue(facade.hasLiked(adminUserId, postId));
         assertEquals(1, post.getLikeCount());
         System.out.println("✅ Post liked by user");
     }
@@ -225,4 +287,1336 @@ public class SocialMediaTest {
         facade.testAllOperations();
         System.out.println("✅ All operations test completed");
     }
-}
\ No newline at end of file
+
+    @Test
+    @Order(15)
+    public void testHomeTimeline() {
+        // regularUser follows adminUser since testFollowUser
+        Page<Post> before = facade.getHomeTimeline(regularUserId, null, 10);
+
+        facade.createPost("Some news for my followers", "TEXT", adminUserId);
+        Post post = facade.createPost("Fresh news for my followers", "TEXT", adminUserId);
+        Page<Post> timeline = facade.getHomeTimeline(regularUserId, null, 10);
+
+        assertEquals(before.size() + 2, timeline.size());
+        assertEquals(post.getId(), timeline.getItems().get(0).getId());
+
+        Page<Post> firstPage = facade.getHomeTimeline(regularUserId, null, 1);
+        assertTrue(firstPage.hasNext());
+        assertEquals(before.size() + 1,
+                facade.getHomeTimeline(regularUserId, firstPage.getNextCursor(), 10).size());
+
+        // posts created through the service are fanned out too
+        Post validated = facade.getService().createPostWithValidation("Validated news", "TEXT", adminUserId, null);
+        assertEquals(validated.getId(), facade.getHomeTimeline(regularUserId, null, 1).getItems().get(0).getId());
+
+        // newest first by timestamp, not by id: a post dated back goes after the older ones, reloaded or not
+        Post backdated = facade.createPost("Backdated news", "TEXT", adminUserId);
+        new UnitOfWork(emf).inTransaction(db -> db.createQuery("UPDATE Post p SET p.timestamp = :timestamp " +
+                        "WHERE p.id = :id")
+                .setParameter("timestamp", post.getTimestamp().minusDays(1))
+                .setParameter("id", backdated.getId())
+                .executeUpdate());
+        User newcomer = facade.createRegularUser("timeline_newcomer", "timeline_newcomer@example.com", "Bio",
+                LocalDate.of(1990, 1, 1), "Rome");
+        facade.followUser(regularUserId, newcomer.getId());
+        List<Long> reloaded = facade.getHomeTimeline(regularUserId, null, 100).getItems().stream()
+                .map(Post::getId).collect(Collectors.toList());
+        assertEquals(validated.getId(), reloaded.get(0));
+        assertTrue(reloaded.indexOf(backdated.getId()) > reloaded.indexOf(post.getId()));
+        List<Long> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<Post> page = facade.getHomeTimeline(regularUserId, cursor, 2);
+            page.getItems().forEach(item -> paged.add(item.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertEquals(reloaded, paged);
+        facade.unfollowUser(regularUserId, newcomer.getId());
+
+        LocalDateTime now = LocalDateTime.of(2025, 1, 1, 12, 0);
+        TimelineService timelines = new TimelineService(10, 100, 100);
+        List<Long> none = new ArrayList<>();
+        // a post published while a timeline is loaded from the database is not lost
+        assertEquals(Arrays.asList(9L, 5L, 7L), postIds(timelines.read(1L, () -> {
+            timelines.publish(2L, new TimelineEntry(now, 9L), Arrays.asList(1L));
+            return Arrays.asList(new TimelineEntry(now.minusHours(2), 7L), new TimelineEntry(now.minusHours(1), 5L));
+        }, none, null, 10)));
+        assertTrue(timelines.isMaterialized(1L));
+        List<TimelineEntry> firstTwo = timelines.read(1L, () -> {
+            throw new AssertionError("already materialized");
+        }, none, null, 2);
+        assertEquals(Arrays.asList(9L, 5L), postIds(firstTwo));
+        assertEquals(Arrays.asList(7L), postIds(timelines.read(1L, () -> {
+            throw new AssertionError("already materialized");
+        }, none, TimelineEntry.fromCursor(firstTwo.get(1).toCursor()), 10)));
+        // a follow while it is loaded: the loaded timeline is only used for that read
+        assertEquals(Arrays.asList(5L), postIds(timelines.read(3L, () -> {
+            timelines.invalidate(3L);
+            return Arrays.asList(new TimelineEntry(now, 5L));
+        }, none, null, 10)));
+        assertFalse(timelines.isMaterialized(3L));
+        System.out.println("✅ Home timeline contains " + timeline.size() + " posts");
+    }
+
+    @Test
+    @Order(16)
+    public void testKeysetPagination() {
+        for (int i = 0; i < 5; i++) {
+            facade.createPost("Paged post " + i, "TEXT", adminUserId);
+        }
+        int total = facade.findPostsByAuthor(adminUserId).size();
+
+        java.util.Set<Long> seen = new java.util.HashSet<>();
+        String cursor = null;
+        Post previous = null;
+        do {
+            Page<Post> page = facade.findPostsByAuthor(adminUserId, cursor, 2);
+            for (Post post : page.getItems()) {
+                assertTrue(seen.add(post.getId()));
+                if (previous != null) {
+                    assertFalse(post.getTimestamp().isAfter(previous.getTimestamp()));
+                }
+                previous = post;
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(total, seen.size());
+        assertEquals(2, facade.findAllUsers(null, 2).size());
+        System.out.println("✅ Paged through " + seen.size() + " posts");
+    }
+
+    @Test
+    @Order(17)
+    public void testLikeCounter() {
+        Post post = facade.createPost("Like me twice", "TEXT", adminUserId);
+
+        facade.likePost(regularUserId, post.getId());
+        facade.likePost(regularUserId, post.getId());
+        assertTrue(facade.hasLiked(regularUserId, post.getId()));
+        assertEquals(1, facade.findPostById(post.getId()).getLikeCount());
+
+        facade.unlikePost(regularUserId, post.getId());
+        assertFalse(facade.hasLiked(regularUserId, post.getId()));
+        assertEquals(0, facade.findPostById(post.getId()).getLikeCount());
+
+        // the same like sent from many threads at once is counted once, the others are no-ops
+        for (int i = 0; i < 10; i++) {
+            Post liked = facade.createPost("Like me at once " + i, "TEXT", adminUserId);
+            assertEquals(0, concurrently(8, () -> facade.likePost(regularUserId, liked.getId())));
+            assertEquals(1, facade.findPostById(liked.getId()).getLikeCount());
+        }
+        System.out.println("✅ Like counter kept in sync");
+    }
+
+    @Test
+    @Order(18)
+    public void testDiscussionCounters() {
+        Post post = facade.createPost("What do you think?", "TEXT", adminUserId);
+        Comment comment = facade.createComment("I agree", post.getId(), regularUserId);
+        facade.createReply("Me too", comment.getId(), adminUserId);
+        Comment reply = facade.createReply("Same here", comment.getId(), regularUserId);
+        // the returned entities carry the counters as stored
+        assertEquals(1, comment.getPost().getCommentCount());
+        assertEquals(2, reply.getParentComment().getReplyCount());
+
+        Post reloaded = facade.findPostById(post.getId());
+        assertEquals(3, reloaded.getCommentCount());
+        assertEquals(1, reloaded.getRepliedCommentCount());
+        assertEquals(2, facade.findCommentById(comment.getId()).getReplyCount());
+        assertTrue(facade.findActiveDiscussions(3, 1).stream().anyMatch(p -> p.getId().equals(post.getId())));
+
+        System.out.println("✅ Discussion counters kept in sync");
+    }
+
+    @Test
+    @Order(19)
+    public void testTrendingHashtags() {
+        facade.createPostWithHashtags("Trending #1", "TEXT", regularUserId, Arrays.asList("#Trending", "#Java"));
+        facade.createPostWithHashtags("Trending #2", "TEXT", adminUserId, Arrays.asList("#Trending"));
+        facade.createPostWithHashtags("Trending #3", "TEXT", adminUserId, Arrays.asList("#Trending"));
+
+        List<HashtagTrend> trends = facade.getTrendingHashtags(3, Duration.ofHours(1));
+
+        assertFalse(trends.isEmpty());
+        assertTrue(trends.stream().anyMatch(t -> t.getTag().equals("#Trending") && t.getCount() >= 3));
+        for (int i = 1; i < trends.size(); i++) {
+            assertTrue(trends.get(i - 1).getCount() >= trends.get(i).getCount());
+        }
+
+        // a tag repeated in one post is one use
+        facade.createPostWithHashtags("Repeated #1", "TEXT", regularUserId, Arrays.asList("#Repeated", "#Repeated"));
+        facade.getService().createPostWithValidation("Repeated #2", "TEXT", regularUserId,
+                Arrays.asList("#Repeated", "#Repeated", "#Repeated"));
+        assertTrue(facade.getTrendingHashtags(1000, Duration.ofHours(1)).stream()
+                .anyMatch(t -> t.getTag().equals("#Repeated") && t.getCount() == 2));
+        System.out.println("✅ Trending hashtags: " + trends);
+    }
+
+    @Test
+    @Order(20)
+    public void testTrendingPosts() {
+        Post hot = facade.createPost("Everybody is talking about this", "TEXT", adminUserId);
+        facade.likePost(regularUserId, hot.getId());
+        facade.likePost(adminUserId, hot.getId());
+        for (int i = 0; i < 3; i++) {
+            facade.createComment("Comment " + i, hot.getId(), regularUserId);
+        }
+
+        List<Post> trending = facade.findTrendingPosts(5);
+
+        assertTrue(trending.size() <= 5);
+        assertEquals(hot.getId(), trending.get(0).getId());
+
+        // a private post leaves the ranking, and is ranked again with its engagement once public again
+        Post hidden = facade.findPostById(hot.getId());
+        hidden.setPublic(false);
+        facade.updatePost(hidden);
+        assertTrue(facade.findTrendingPosts(5).stream().noneMatch(p -> p.getId().equals(hot.getId())));
+        hidden.setPublic(true);
+        facade.updatePost(hidden);
+        assertEquals(hot.getId(), facade.findTrendingPosts(5).get(0).getId());
+
+        // an update that fails leaves the post ranked
+        Post rejected = facade.findPostById(hot.getId());
+        rejected.setPublic(false);
+        rejected.setContent("x".repeat(2001));
+        assertThrows(RuntimeException.class, () -> facade.updatePost(rejected));
+        assertEquals(hot.getId(), facade.findTrendingPosts(5).get(0).getId());
+        System.out.println("✅ Trending posts: " + trending.size());
+    }
+
+    @Test
+    @Order(21)
+    public void testConcurrentOperations() throws Exception {
+        int threads = 8;
+        int postsPerThread = 10;
+        long postsBefore = facade.getService().getPostCount();
+        Post shared = facade.createPost("Like me from every thread", "TEXT", adminUserId);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    User user = facade.createRegularUser("concurrent" + thread, "concurrent" + thread + "@example.com",
+                            "Bio", LocalDate.of(2000, 1, 1), "City");
+                    for (int i = 0; i < postsPerThread; i++) {
+                        facade.createPost("Post " + i + " from thread " + thread, "TEXT", user.getId());
+                    }
+                    facade.likePost(user.getId(), shared.getId());
+                    facade.createComment("Comment from thread " + thread, shared.getId(), user.getId());
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(postsBefore + 1 + threads * postsPerThread, facade.getService().getPostCount());
+        Post reloaded = facade.findPostById(shared.getId());
+        assertEquals(threads, reloaded.getLikeCount());
+        assertEquals(threads, reloaded.getCommentCount());
+        System.out.println("✅ Concurrent operations completed on " + threads + " threads");
+    }
+
+    @Test
+    @Order(22)
+    public void testAsyncFacade() {
+        try (AsyncSocialMediaFacade async = new AsyncSocialMediaFacade(facade, 4)) {
+            List<CompletableFuture<Post>> posts = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                posts.add(async.createPost("Async post " + i, "TEXT", regularUserId));
+            }
+            CompletableFuture.allOf(posts.toArray(new CompletableFuture<?>[0])).join();
+            Long asyncPostId = posts.get(0).join().getId();
+
+            async.likePost(adminUserId, asyncPostId).join();
+            assertTrue(async.hasLiked(adminUserId, asyncPostId).join());
+            assertFalse(async.findActiveUsers(java.time.LocalDateTime.now().minusDays(1)).join().isEmpty());
+
+            // The future fails with the exception thrown by the synchronous facade
+            CompletionException failure = assertThrows(CompletionException.class,
+                    () -> async.createPost("No author", "TEXT", -1L).join());
+            assertInstanceOf(IllegalArgumentException.class, failure.getCause());
+        }
+        System.out.println("✅ Async facade completed operations on virtual threads");
+    }
+
+    @Test
+    @Order(23)
+    public void testBulkIngestion() {
+        long usersBefore = facade.getService().getUserCount();
+        long postsBefore = facade.getService().getPostCount();
+
+        List<RegularUser> users = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            users.add(new RegularUser("bulk" + i, "bulk" + i + "@example.com", "Bulk user",
+                    LocalDate.of(2000, 1, 1), "Milan"));
+        }
+        BulkResult userResult = facade.createUsers(users);
+        assertEquals(120, userResult.getRows());
+        assertEquals(usersBefore + 120, facade.getService().getUserCount());
+        assertTrue(users.stream().allMatch(u -> u.getId() != null));
+
+        List<Post> posts = new ArrayList<>();
+        for (RegularUser user : users) {
+            posts.add(new Post("Bulk post by " + user.getUsername(), "TEXT", user));
+        }
+        assertEquals(120, facade.createPosts(posts).getRows());
+        assertEquals(postsBefore + 120, facade.getService().getPostCount());
+
+        // a comment with two replies on the first post, and one comment on each of the others
+        Post first = posts.get(0);
+        Comment parent = new Comment("Bulk comment", first, users.get(1));
+        List<Comment> comments = new ArrayList<>();
+        comments.add(parent);
+        for (int i = 0; i < 2; i++) {
+            Comment reply = new Comment("Bulk reply " + i, first, users.get(2 + i));
+            reply.setParentComment(parent);
+            comments.add(reply);
+        }
+        for (int i = 1; i < posts.size(); i++) {
+            comments.add(new Comment("Bulk comment", posts.get(i), users.get(0)));
+        }
+        BulkResult commentResult = facade.createComments(comments);
+        assertEquals(comments.size(), commentResult.getRows());
+        assertTrue(commentResult.getRowsPerSecond() > 0);
+
+        Post reloaded = facade.findPostById(first.getId());
+        assertEquals(3, reloaded.getCommentCount());
+        assertEquals(1, reloaded.getRepliedCommentCount());
+        assertEquals(2, facade.findCommentById(parent.getId()).getReplyCount());
+        assertEquals(1, facade.findPostById(posts.get(60).getId()).getCommentCount());
+        System.out.println("✅ Bulk ingestion: " + userResult + ", " + commentResult);
+    }
+
+    @Test
+    @Order(24)
+    public void testHashtagResolution() {
+        Post post = facade.createPostWithHashtags("Resolving tags", "TEXT", regularUserId,
+                Arrays.asList("#Resolve", "#Java", "#Resolve"));
+        assertEquals(2, post.getHashtags().size());
+        assertEquals(1, usageCount("#Resolve"));
+
+        int javaUses = usageCount("#Java");
+        facade.createPostWithHashtags("Resolving tags again", "TEXT", adminUserId, Arrays.asList("#Resolve", "#Java"));
+        assertEquals(2, usageCount("#Resolve"));
+        assertEquals(javaUses + 1, usageCount("#Java"));
+        assertEquals(2, facade.findPostsByHashtag("#Resolve", null, 10).size());
+
+        // the hashtags of the returned post can be read after the unit of work is closed, cached tags too,
+        // and count the post
+        Post again = facade.createPostWithHashtags("Resolving tags once more", "TEXT", regularUserId,
+                Arrays.asList("#Resolve", "#Unresolved"));
+        for (Hashtag hashtag : again.getHashtags()) {
+            assertTrue(hashtag.toString().contains(hashtag.getTag()));
+            assertEquals(hashtag.getTag().equals("#Resolve") ? 3 : 1, hashtag.getUsageCount());
+        }
+        Hashtag validated = facade.getService().createPostWithValidation("Resolving tags, validated", "TEXT",
+                regularUserId, Arrays.asList("#Unresolved")).getHashtags().iterator().next();
+        assertEquals("#Unresolved", validated.getTag());
+        assertEquals(2, validated.getUsageCount());
+
+        // the usage update invalidates the second-level cache: a find by tag sees the new count
+        UnitOfWork unitOfWork = new UnitOfWork(emf);
+        assertEquals(2, unitOfWork.read(db -> db.find(Hashtag.class, "#Unresolved")).getUsageCount());
+        facade.createPostWithHashtags("Resolving tags at last", "TEXT", regularUserId,
+                Arrays.asList("#Unresolved"));
+        assertEquals(3, unitOfWork.read(db -> db.find(Hashtag.class, "#Unresolved")).getUsageCount());
+
+        // a tag inserted by a post is cached once it commits, so the next post resolves it with no lookup
+        facade.createPostWithHashtags("First of its tag", "TEXT", regularUserId, Arrays.asList("#JustInserted"));
+        long hits = facade.getHashtagCache().getHitCount();
+        facade.createPostWithHashtags("Second of its tag", "TEXT", regularUserId, Arrays.asList("#JustInserted"));
+        assertEquals(hits + 1, facade.getHashtagCache().getHitCount());
+
+        // not if its transaction rolls back
+        assertThrows(IllegalStateException.class, () -> unitOfWork.inTransaction(db -> {
+            new HashtagDAO(db, facade.getHashtagCache()).resolveAll(Arrays.asList("#NeverCommitted"));
+            throw new IllegalStateException("rolled back");
+        }));
+        assertFalse(facade.getHashtagCache().contains("#NeverCommitted"));
+        assertNull(unitOfWork.read(db -> db.find(Hashtag.class, "#NeverCommitted")));
+        System.out.println("✅ Hashtags resolved in one transaction");
+    }
+
+    @Test
+    @Order(25)
+    public void testConcurrentHashtagCreation() throws Exception {
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Post>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return facade.createPostWithHashtags("Brand new tag " + thread, "TEXT", regularUserId,
+                            Arrays.asList("#BrandNew", "#Java"));
+                }));
+            }
+            start.countDown();
+            for (Future<Post> result : results) {
+                assertEquals(2, result.get(30, TimeUnit.SECONDS).getHashtags().size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(threads, usageCount("#BrandNew"));
+
+        // the tag is committed now, so the next posts resolve it from the cache
+        facade.createPostWithHashtags("Brand new tag again", "TEXT", adminUserId, Arrays.asList("#BrandNew"));
+        long hits = facade.getHashtagCache().getHitCount();
+        facade.createPostWithHashtags("And again", "TEXT", adminUserId, Arrays.asList("#BrandNew"));
+        assertEquals(hits + 1, facade.getHashtagCache().getHitCount());
+        assertEquals(threads + 2, usageCount("#BrandNew"));
+        System.out.println("✅ Same new hashtag created from " + threads + " threads");
+    }
+
+    @Test
+    @Order(26)
+    public void testHashtagCacheEviction() {
+        HashtagCache cache = new HashtagCache(3);
+        cache.add("#a");
+        cache.add("#b");
+        cache.add("#c");
+        assertTrue(cache.contains("#a"));
+
+        cache.add("#d");
+        assertEquals(3, cache.size());
+        assertTrue(cache.contains("#a"));
+        assertTrue(cache.contains("#d"));
+        System.out.println("✅ Hashtag cache keeps the recently used tags");
+    }
+
+    @Test
+    @Order(27)
+    public void testSecondLevelCache() {
+        RegularUser user = facade.createRegularUser("cached", "cached@example.com", "Bio",
+                LocalDate.of(1999, 9, 9), "Rome");
+        assertEquals(user.getId(), facade.findUserByUsername("cached").getId());
+        long hits = cacheHits("users");
+        assertEquals(user.getId(), facade.findUserByUsername("cached").getId());
+        assertEquals("cached", facade.findUserById(user.getId()).getUsername());
+        assertTrue(cacheHits("users") > hits);
+
+        // updates and deletes go through Hibernate, which keeps the cached copies and natural ids in line
+        user.setUsername("renamed");
+        user.setEmail("renamed@example.com");
+        facade.updateUser(user);
+        assertEquals("renamed", facade.findUserById(user.getId()).getUsername());
+        assertNull(facade.findUserByUsername("cached"));
+        assertEquals(user.getId(), facade.findUserByUsername("renamed").getId());
+        assertTrue(facade.getService().isEmailAvailable("cached@example.com"));
+        assertFalse(facade.getService().isEmailAvailable("renamed@example.com"));
+
+        facade.deleteUser(user.getId());
+        assertNull(facade.findUserById(user.getId()));
+        assertNull(facade.findUserByUsername("renamed"));
+        assertTrue(facade.getService().isEmailAvailable("renamed@example.com"));
+        System.out.println("✅ Second-level cache: " + facade.getService().getCacheStatistics());
+    }
+
+    @Test
+    @Order(28)
+    public void testBloomFilter() {
+        BloomFilter filter = new BloomFilter(1_000, 0.01);
+        for (int i = 0; i < 1_000; i++) {
+            filter.put("user" + i);
+        }
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(filter.mightContain("user" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+
+        assertFalse(facade.getService().isUsernameAvailable("testuser"));
+        assertFalse(facade.getService().isEmailAvailable("test@example.com"));
+        assertTrue(facade.getService().isUsernameAvailable("nobody_here"));
+
+        User user = facade.createRegularUser("bloomed", "bloomed@example.com", "Bio", LocalDate.of(2001, 1, 1), "Turin");
+        assertFalse(facade.getService().isUsernameAvailable("bloomed"));
+        assertThrows(IllegalArgumentException.class,
+                () -> facade.getService().validateUserCreation("bloomed", "other@example.com"));
+
+        facade.deleteUser(user.getId());
+        assertTrue(facade.getService().isUsernameAvailable("bloomed"));
+        assertTrue(facade.getService().isEmailAvailable("bloomed@example.com"));
+        System.out.println("✅ Bloom filter answers availability checks of free names");
+    }
+
+    @Test
+    @Order(29)
+    public void testLoadThread() {
+        Post post = facade.createPost("Thread me", "TEXT", regularUserId);
+        Comment first = facade.createComment("first", post.getId(), adminUserId);
+        facade.createComment("second", post.getId(), adminUserId);
+        facade.createComment("third", post.getId(), adminUserId);
+        Comment reply = facade.createReply("reply 1", first.getId(), regularUserId);
+        facade.createReply("reply 2", first.getId(), regularUserId);
+        facade.createReply("reply 3", first.getId(), regularUserId);
+        facade.createReply("nested", reply.getId(), adminUserId);
+
+        // the whole thread, any depth, with one statement
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        long statements = statistics.getPrepareStatementCount();
+        Page<CommentNode> thread = new CommentDAO(em).loadThread(post.getId(), null, 10, 10);
+        assertEquals(1, statistics.getPrepareStatementCount() - statements);
+        assertEquals(3, thread.size());
+
+        Page<CommentNode> page = facade.loadThread(post.getId(), 2, 2);
+        assertEquals(Arrays.asList("third", "second"),
+                page.getItems().stream().map(CommentNode::getContent).collect(Collectors.toList()));
+        assertTrue(page.hasNext());
+
+        page = facade.loadThread(post.getId(), page.getNextCursor(), 2, 2);
+        assertFalse(page.hasNext());
+        CommentNode firstNode = page.getItems().get(0);
+        assertEquals("first", firstNode.getContent());
+        assertEquals("adminuser", firstNode.getAuthorUsername());
+        assertEquals(Arrays.asList("reply 1", "reply 2"),
+                firstNode.getReplies().stream().map(CommentNode::getContent).collect(Collectors.toList()));
+        assertTrue(firstNode.hasMoreReplies());
+        // cut by the depth limit
+        assertTrue(firstNode.getReplies().get(0).getReplies().isEmpty());
+        assertTrue(firstNode.getReplies().get(0).hasMoreReplies());
+
+        Page<CommentNode> replies = facade.loadReplies(first.getId(),
+                Cursor.encode(firstNode.getReplies().get(1).getTimestamp(), firstNode.getReplies().get(1).getId()), 3, 10);
+        assertEquals(1, replies.size());
+        assertEquals("reply 3", replies.getItems().get(0).getContent());
+
+        CommentNode nested = facade.loadReplies(first.getId(), null, 3, 10).getItems().get(0);
+        assertEquals("nested", nested.getReplies().get(0).getContent());
+        assertFalse(nested.hasMoreReplies());
+        assertThrows(IllegalArgumentException.class, () -> facade.loadThread(post.getId(), 0, 10));
+        System.out.println("✅ Comment thread loaded with a single query");
+    }
+
+    @Test
+    @Order(30)
+    public void testSummaryProjections() {
+        String longContent = "x".repeat(Snippets.LENGTH + 10);
+        Post post = facade.createPostWithHashtags(longContent, "TEXT", adminUserId, Arrays.asList("summaries"));
+        facade.likePost(regularUserId, post.getId());
+        facade.createComment("summarized", post.getId(), regularUserId);
+
+        Page<PostSummary> posts = facade.findPostSummariesByHashtag("summaries", null, 10);
+        assertEquals(1, posts.size());
+        PostSummary summary = posts.getItems().get(0);
+        assertEquals("adminuser", summary.getAuthorUsername());
+        assertEquals(1, summary.getLikeCount());
+        assertEquals(1, summary.getCommentCount());
+        assertEquals(Snippets.LENGTH + 1, summary.getSnippet().length());
+        assertTrue(summary.getSnippet().endsWith("…"));
+
+        // same rows and cursors as the entity pages
+        Page<Post> entities = facade.findPostsByAuthor(adminUserId, null, 3);
+        Page<PostSummary> summaries = facade.findPostSummariesByAuthor(adminUserId, null, 3);
+        assertEquals(entities.getItems().stream().map(Post::getId).collect(Collectors.toList()),
+                summaries.getItems().stream().map(PostSummary::getId).collect(Collectors.toList()));
+        assertEquals(entities.getNextCursor(), summaries.getNextCursor());
+
+        Page<CommentSummary> comments = facade.findCommentSummariesByPost(post.getId(), null, 10);
+        assertEquals("summarized", comments.getItems().get(0).getSnippet());
+        assertEquals(post.getId(), comments.getItems().get(0).getPostId());
+
+        assertEquals(facade.findFollowers(adminUserId, null, 10).size(),
+                facade.findFollowerSummaries(adminUserId, null, 10).size());
+        assertEquals(facade.getHomeTimeline(regularUserId, null, 5).getItems().stream()
+                        .map(Post::getId).collect(Collectors.toList()),
+                facade.getHomeTimelineSummaries(regularUserId, null, 5).getItems().stream()
+                        .map(PostSummary::getId).collect(Collectors.toList()));
+
+        // projections are never managed
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        long loaded = statistics.getEntityLoadCount();
+        new PostDAO(em).findSummariesByAuthor(adminUserId, null, 10);
+        assertEquals(loaded, statistics.getEntityLoadCount());
+        System.out.println("✅ Listings served by summary projections");
+    }
+
+    @Test
+    @Order(31)
+    public void testFullTextSearch() {
+        Post exact = facade.createPostWithHashtags("Tuning the hibernate second level cache", "TEXT",
+                regularUserId, Arrays.asList("perf"));
+        Post repeated = facade.createPost("Hibernate, hibernate everywhere: a cache for every level", "TEXT",
+                adminUserId);
+        facade.createPost("Cache invalidation is hard", "TEXT", adminUserId);
+
+        Page<PostSummary> results = facade.searchPosts("hibernate cache", null, 10);
+        assertEquals(Arrays.asList(repeated.getId(), exact.getId()),
+                results.getItems().stream().map(PostSummary::getId).collect(Collectors.toList()));
+
+        results = facade.searchPosts("\"second level cache\"", null, 10);
+        assertEquals(1, results.size());
+        assertEquals(exact.getId(), results.getItems().get(0).getId());
+
+        assertEquals(1, facade.searchPosts("cache", SearchFilter.none().withHashtag("perf"), null, 10).size());
+        assertEquals(2, facade.searchPosts("cache", SearchFilter.none().withAuthor(adminUserId), null, 10).size());
+        assertEquals(0, facade.searchPosts("cache", SearchFilter.none()
+                .withDates(LocalDateTime.now().plusDays(1), null), null, 10).size());
+
+        // paging continues the ranking
+        Page<PostSummary> first = facade.searchPosts("cache", null, 2);
+        Page<PostSummary> second = facade.searchPosts("cache", first.getNextCursor(), 2);
+        assertTrue(first.hasNext());
+        assertFalse(second.hasNext());
+        assertEquals(3, first.size() + second.size());
+
+        // updates and deletes are seen by the index
+        exact.setContent("Tuning the query plan cache");
+        facade.updatePost(exact);
+        assertEquals(0, facade.searchPosts("\"second level\"", null, 10).size());
+        facade.deletePost(repeated.getId());
+        assertEquals(0, facade.searchPosts("everywhere", null, 10).size());
+
+        // what goes with a deleted post or user leaves the index with it
+        Post doomed = facade.createPost("Short lived", "TEXT", adminUserId);
+        facade.createComment("Searchable remark", doomed.getId(), regularUserId);
+        assertEquals(1, facade.searchComments("remark", SearchFilter.none(), null, 10).size());
+        int indexed = facade.getSearchService().getIndexedCommentCount();
+        facade.deletePost(doomed.getId());
+        assertEquals(indexed - 1, facade.getSearchService().getIndexedCommentCount());
+        assertEquals(0, facade.searchComments("remark", SearchFilter.none(), null, 10).size());
+
+        User leaving = facade.createRegularUser("leaving", "leaving@example.com", "Bio", LocalDate.of(1990, 1, 1),
+                "Oslo");
+        Post farewell = facade.createPost("Farewell everyone", "TEXT", leaving.getId());
+        facade.createComment("Farewell to you", farewell.getId(), regularUserId);
+        facade.createComment("Farewell remark", exact.getId(), leaving.getId());
+        int indexedPosts = facade.getSearchService().getIndexedPostCount();
+        indexed = facade.getSearchService().getIndexedCommentCount();
+        facade.deleteUser(leaving.getId());
+        assertEquals(indexedPosts - 1, facade.getSearchService().getIndexedPostCount());
+        assertEquals(indexed - 2, facade.getSearchService().getIndexedCommentCount());
+        assertEquals(0, facade.searchPosts("farewell", null, 10).size());
+
+        // and so are the posts and comments created through the service
+        Post validated = facade.getService().createPostWithValidation("Validated announcement", "TEXT",
+                adminUserId, Arrays.asList("#Validated"));
+        facade.getService().createCommentWithValidation("Validated reaction", validated.getId(), regularUserId);
+        assertEquals(validated.getId(), facade.searchPosts("announcement", null, 10).getItems().get(0).getId());
+        assertEquals(1, facade.searchComments("reaction", SearchFilter.none(), null, 10).size());
+
+        assertThrows(IllegalArgumentException.class, () -> facade.searchPosts("  ", null, 10));
+        System.out.println("✅ Full-text search ranks, filters and pages posts");
+    }
+
+    @Test
+    @Order(32)
+    public void testSocialGraph() {
+        User fan = facade.createRegularUser("graphfan", "graphfan@example.com", "Bio",
+                LocalDate.of(1999, 1, 1), "Rome");
+        facade.followUser(fan.getId(), adminUserId);
+        assertTrue(facade.isFollowing(fan.getId(), adminUserId));
+        assertFalse(facade.areMutualFollowers(fan.getId(), adminUserId));
+        facade.followUser(adminUserId, fan.getId());
+        assertTrue(facade.areMutualFollowers(fan.getId(), adminUserId));
+        assertEquals(facade.findFollowers(adminUserId, null, 100).size(), facade.getFollowerCount(adminUserId));
+
+        facade.unfollowUser(fan.getId(), adminUserId);
+        assertFalse(facade.isFollowing(fan.getId(), adminUserId));
+        assertEquals(facade.findFollowers(adminUserId, null, 100).size(), facade.getFollowerCount(adminUserId));
+        facade.unfollowUser(adminUserId, fan.getId());
+
+        // a follow submitted many times at once adds one edge, the others are no-ops
+        int followers = facade.getFollowerCount(adminUserId);
+        assertEquals(0, concurrently(8, () -> facade.followUser(fan.getId(), adminUserId)));
+        assertEquals(followers + 1, facade.getFollowerCount(adminUserId));
+        assertEquals(facade.findFollowers(adminUserId, null, 100).size(), facade.getFollowerCount(adminUserId));
+        facade.unfollowUser(fan.getId(), adminUserId);
+
+        // follows and unfollows of the same pair racing: the graph ends up agreeing with the database
+        for (int round = 0; round < 100; round++) {
+            AtomicInteger calls = new AtomicInteger();
+            assertEquals(0, concurrently(8, () -> {
+                if (calls.getAndIncrement() % 2 == 0) {
+                    facade.followUser(fan.getId(), adminUserId);
+                } else {
+                    facade.unfollowUser(fan.getId(), adminUserId);
+                }
+            }));
+            boolean stored = facade.findFollowers(adminUserId, null, 100).getItems().stream()
+                    .anyMatch(user -> user.getId().equals(fan.getId()));
+            assertEquals(stored, facade.isFollowing(fan.getId(), adminUserId), "Round " + round);
+        }
+        facade.unfollowUser(fan.getId(), adminUserId);
+
+        // the graph loaded from the database matches the one kept up to date
+        SocialGraph loaded = new SocialGraph();
+        loaded.load(new UnitOfWork(emf));
+        assertEquals(facade.getSocialGraph().getEdgeCount(), loaded.getEdgeCount());
+
+        // enough changes to compact the arrays a few times
+        SocialGraph graph = new SocialGraph();
+        for (long user = 1; user <= 1_000; user++) {
+            for (long followed = user + 1; followed <= user + 5; followed++) {
+                graph.addFollow(user, followed);
+            }
+        }
+        assertEquals(5_000, graph.getEdgeCount());
+        assertTrue(graph.follows(10, 15));
+        assertFalse(graph.follows(15, 10));
+        assertEquals(5, graph.getFollowerCount(500));
+        assertEquals(5, graph.getFollowingIds(500, 10).length);
+        assertEquals(3, graph.getFollowerIds(500, 3).length);
+        graph.addFollow(15, 10);
+        assertTrue(graph.followEachOther(10, 15));
+
+        graph.removeUser(500);
+        assertEquals(5_000 + 1 - 10, graph.getEdgeCount());
+        assertFalse(graph.follows(499, 500));
+        assertEquals(4, graph.getFollowingCount(499));
+        assertTrue(graph.removeFollow(10, 15));
+        assertFalse(graph.removeFollow(10, 15));
+
+        // one row changed many times grows in place and stays sorted
+        for (long follower = 3_000; follower > 2_000; follower--) {
+            graph.addFollow(follower, 1);
+        }
+        assertEquals(1_000, graph.getFollowerCount(1));
+        for (long follower = 2_001; follower <= 3_000; follower += 2) {
+            assertTrue(graph.removeFollow(follower, 1));
+        }
+        assertEquals(500, graph.getFollowerCount(1));
+        assertTrue(graph.follows(2_002, 1));
+        assertFalse(graph.follows(2_003, 1));
+        System.out.printf("✅ Social graph: %d edges, %.1f bytes per edge%n",
+                graph.getEdgeCount(), graph.getBytesPerEdge());
+    }
+
+    @Test
+    @Order(33)
+    public void testFollowRecommendations() {
+        LocalDate birthDate = LocalDate.of(1995, 3, 3);
+        User alice = facade.createRegularUser("rec_alice", "rec_alice@example.com", "Bio", birthDate, "Paris");
+        User bob = facade.createRegularUser("rec_bob", "rec_bob@example.com", "Bio", birthDate, "Berlin");
+        User carol = facade.createRegularUser("rec_carol", "rec_carol@example.com", "Bio", birthDate, "Berlin");
+        User dave = facade.createRegularUser("rec_dave", "rec_dave@example.com", "Bio", birthDate, "Paris");
+        User erin = facade.createRegularUser("rec_erin", "rec_erin@example.com", "Bio", birthDate, "Oslo");
+        facade.followUser(alice.getId(), bob.getId());
+        facade.followUser(alice.getId(), carol.getId());
+        facade.followUser(bob.getId(), dave.getId());
+        facade.followUser(carol.getId(), dave.getId());
+        facade.followUser(carol.getId(), erin.getId());
+        facade.createPostWithHashtags("Climbing today", "TEXT", alice.getId(), Arrays.asList("climbing"));
+        facade.createPostWithHashtags("Climbing and hiking", "TEXT", erin.getId(), Arrays.asList("climbing", "hiking"));
+
+        // dave: 2 mutual connections + same location; erin: 1 + half of the hashtags in common
+        List<Recommendation> onDemand = facade.getFollowRecommendations(alice.getId(), 10);
+        assertEquals(Arrays.asList(dave.getId(), erin.getId()),
+                onDemand.stream().map(Recommendation::getUserId).collect(Collectors.toList()));
+        assertEquals(2, onDemand.get(0).getMutualConnections());
+        assertTrue(onDemand.get(0).isSameLocation());
+        assertEquals(1, onDemand.get(1).getSharedHashtags());
+        assertEquals(3.0, onDemand.get(0).getScore(), 1e-9);
+        assertEquals(2.0, onDemand.get(1).getScore(), 1e-9);
+
+        assertTrue(facade.precomputeFollowRecommendations() > 0);
+        List<Recommendation> precomputed = facade.getFollowRecommendations(alice.getId(), 10);
+        assertEquals(onDemand.stream().map(Recommendation::getUserId).collect(Collectors.toList()),
+                precomputed.stream().map(Recommendation::getUserId).collect(Collectors.toList()));
+
+        // users followed since the batch are left out
+        facade.followUser(alice.getId(), dave.getId());
+        assertEquals(Arrays.asList(erin.getId()), facade.getFollowRecommendations(alice.getId(), 10).stream()
+                .map(Recommendation::getUserId).collect(Collectors.toList()));
+
+        // and so are users deleted since, whose own recommendations are dropped
+        FollowRecommender recommender = new FollowRecommender(facade.getSocialGraph(), new UnitOfWork(emf));
+        recommender.precomputeAll(10);
+        int precomputedUsers = recommender.getPrecomputedUserCount();
+        facade.deleteUser(erin.getId());
+        assertTrue(facade.getFollowRecommendations(alice.getId(), 10).isEmpty());
+        facade.deleteUser(bob.getId());
+        assertTrue(recommender.recommend(bob.getId(), 10, Duration.ofSeconds(1)).isEmpty());
+        assertEquals(precomputedUsers - 1, recommender.getPrecomputedUserCount());
+        System.out.println("✅ Follow recommendations ranked by mutual connections, hashtags and location");
+    }
+
+    @Test
+    @Order(34)
+    public void testDeleteInactiveUsers() throws Exception {
+        LocalDate birthDate = LocalDate.of(1990, 4, 4);
+        User gone = facade.createRegularUser("purge_gone", "purge_gone@example.com", "Bio", birthDate, "Rome");
+        User idle = facade.createRegularUser("purge_idle", "purge_idle@example.com", "Bio", birthDate, "Rome");
+        User active = facade.createRegularUser("purge_active", "purge_active@example.com", "Bio", birthDate, "Rome");
+        Post oldPost = facade.createPostWithHashtags("Old news", "TEXT", gone.getId(), Arrays.asList("purgetag"));
+        facade.createComment("Still reading this", oldPost.getId(), active.getId());
+        Post discussed = facade.createPost("Any thoughts?", "TEXT", active.getId());
+        Comment oldComment = facade.createComment("Some thoughts", discussed.getId(), gone.getId());
+        facade.createReply("Thanks", oldComment.getId(), active.getId());
+        facade.followUser(gone.getId(), active.getId());
+        facade.followUser(active.getId(), gone.getId());
+        Thread.sleep(5);
+        LocalDateTime cutoff = LocalDateTime.now();
+        Thread.sleep(5);
+        Post recent = facade.createPost("New news", "TEXT", active.getId());
+        facade.likePost(gone.getId(), recent.getId());
+
+        int indexedPosts = facade.getSearchService().getIndexedPostCount();
+        int indexedComments = facade.getSearchService().getIndexedCommentCount();
+
+        // one chunk, then the listener stops the purge; users created before this test are left alone
+        List<PurgeProgress> seen = new ArrayList<>();
+        PurgeProgress stopped = facade.getService().deleteInactiveUsers(cutoff, gone.getId() - 1, 1, Duration.ZERO,
+                progress -> {
+                    seen.add(progress);
+                    return false;
+                });
+        assertFalse(stopped.isFinished());
+        assertEquals(1, seen.size());
+        assertEquals(1, stopped.getUsers());
+        assertEquals(1, stopped.getPosts());
+        assertEquals(3, stopped.getComments());
+        assertEquals(gone.getId(), stopped.getLastUserId());
+        assertNull(facade.findUserById(gone.getId()));
+        assertNull(facade.findPostById(oldPost.getId()));
+        assertNotNull(facade.findUserById(idle.getId()));
+
+        // counters of the surviving rows no longer count the deleted ones
+        Post reloaded = facade.findPostById(discussed.getId());
+        assertEquals(0, reloaded.getCommentCount());
+        assertEquals(0, reloaded.getRepliedCommentCount());
+        assertEquals(0, facade.findPostById(recent.getId()).getLikeCount());
+        assertEquals(0, usageCount("purgetag"));
+        assertEquals(indexedPosts - 1, facade.getSearchService().getIndexedPostCount());
+        assertEquals(indexedComments - 3, facade.getSearchService().getIndexedCommentCount());
+        assertFalse(facade.isFollowing(active.getId(), gone.getId()));
+        assertEquals(0, facade.getFollowerCount(active.getId()));
+
+        PurgeProgress resumed = facade.getService().deleteInactiveUsers(cutoff, stopped.getLastUserId(), 10,
+                Duration.ofMillis(1), progress -> true);
+        assertTrue(resumed.isFinished());
+        assertEquals(1, resumed.getUsers());
+        assertNull(facade.findUserById(idle.getId()));
+        assertNotNull(facade.findUserById(active.getId()));
+        System.out.println("✅ Inactive users purged in resumable chunks: " + stopped + ", " + resumed);
+    }
+
+    @Test
+    @Order(35)
+    public void testStreamingExport() throws Exception {
+        User author = facade.createRegularUser("export_author", "export_author@example.com", "Bio",
+                LocalDate.of(1992, 5, 5), "Lisbon");
+        Post post = facade.createPostWithHashtags("Quote \"this\", then a\nnew line", "TEXT", author.getId(),
+                Arrays.asList("exporta", "exportb"));
+        facade.likePost(regularUserId, post.getId());
+
+        Path directory = Files.createTempDirectory("export");
+        ExportResult result = facade.exportData(directory, ExportFormat.NDJSON, true);
+        long users = em.createQuery("SELECT COUNT(u) FROM User u", Long.class).getSingleResult();
+        long posts = em.createQuery("SELECT COUNT(p) FROM Post p", Long.class).getSingleResult();
+        long comments = em.createQuery("SELECT COUNT(c) FROM Comment c", Long.class).getSingleResult();
+        assertEquals(users, result.getRows(ExportTable.USERS));
+        assertEquals(posts, result.getRows(ExportTable.POSTS));
+        assertEquals(comments, result.getRows(ExportTable.COMMENTS));
+        assertTrue(result.getRows(ExportTable.LIKES) > 0);
+        assertTrue(result.getRows(ExportTable.FOLLOWS) > 0);
+
+        List<String> postLines;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+                Files.newInputStream(directory.resolve("posts.ndjson.gz"))), StandardCharsets.UTF_8))) {
+            postLines = reader.lines().collect(Collectors.toList());
+        }
+        assertEquals(posts, postLines.size());
+        String line = postLines.stream().filter(l -> l.startsWith("{\"id\":" + post.getId() + ","))
+                .findFirst().orElseThrow();
+        assertTrue(line.contains("\"content\":\"Quote \\\"this\\\", then a\\nnew line\""), line);
+        assertTrue(line.contains("\"like_count\":1"), line);
+        assertTrue(line.matches(".*\"hashtags\":\\[\"export[ab]\",\"export[ab]\"\\]}"), line);
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        long rows = facade.exportTable(ExportTable.POSTS, Channels.newChannel(csv), ExportFormat.CSV, false);
+        assertEquals(posts, rows);
+        String text = csv.toString(StandardCharsets.UTF_8);
+        assertTrue(text.startsWith("id,author_id,post_type,content,public,like_count,comment_count,timestamp," +
+                "hashtags\r\n"));
+        assertTrue(text.contains(post.getId() + "," + author.getId() +
+                ",TEXT,\"Quote \"\"this\"\", then a\nnew line\""));
+        for (ExportTable table : ExportTable.values()) {
+            Files.delete(directory.resolve(DataExporter.fileName(table, ExportFormat.NDJSON, true)));
+        }
+        Files.delete(directory);
+        System.out.println("✅ Streaming export: " + result);
+    }
+
+    @Test
+    @Order(36)
+    public void testStreamingImport() throws Exception {
+        Path directory = Files.createTempDirectory("import");
+        Path checkpoint = directory.resolve("import.checkpoint");
+        Files.write(directory.resolve("users.ndjson"), Arrays.asList(
+                "{\"id\":7001,\"type\":\"REGULAR\",\"username\":\"imp_ann\",\"email\":\"imp_ann@example.com\"," +
+                        "\"join_date\":\"2020-01-02\",\"location\":\"Turin\"}",
+                "{\"id\":7002,\"type\":\"REGULAR\",\"username\":\"imp_ben\",\"email\":\"imp_ben@example.com\"}",
+                "{\"id\":7003,\"type\":\"ADMIN\",\"username\":\"imp_cat\",\"email\":\"imp_cat@example.com\"}"));
+
+        // first run: only the users are there
+        ImportResult users = facade.importData(directory, ExportFormat.NDJSON, false, checkpoint);
+        assertEquals(3, users.getRows(ExportTable.USERS));
+        User ann = facade.findUserByUsername("imp_ann");
+        assertEquals(LocalDate.of(2020, 1, 2), ann.getJoinDate());
+        assertTrue(facade.findUserByUsername("imp_cat") instanceof AdminUser);
+        assertFalse(facade.getService().isUsernameAvailable("imp_ben"));
+
+        Files.write(directory.resolve("posts.ndjson"), Arrays.asList(
+                "{\"id\":1,\"author_id\":7001,\"post_type\":\"TEXT\",\"content\":\"Imported \\\"post\\\"\"," +
+                        "\"public\":true,\"like_count\":99,\"timestamp\":\"2021-06-01T10:00\"," +
+                        "\"hashtags\":[\"importtag\"]}",
+                "{\"id\":2,\"author_id\":9999,\"post_type\":\"TEXT\",\"content\":\"No author\",\"hashtags\":[]}"));
+        Files.write(directory.resolve("comments.ndjson"), Arrays.asList(
+                "{\"id\":10,\"post_id\":1,\"author_id\":7002,\"parent_id\":null,\"content\":\"Nice\"}",
+                "{\"id\":11,\"post_id\":1,\"author_id\":7001,\"parent_id\":10,\"content\":\"Thanks\"}"));
+        Files.write(directory.resolve("likes.ndjson"), Arrays.asList(
+                "{\"post_id\":1,\"user_id\":7002}", "{\"post_id\":1,\"user_id\":7003}",
+                "{\"post_id\":2,\"user_id\":7003}"));
+        Files.write(directory.resolve("follows.ndjson"), Arrays.asList(
+                "{\"follower_id\":7002,\"followed_id\":7001}", "{\"follower_id\":7003,\"followed_id\":7001}"));
+
+        // second run: the users are skipped thanks to the checkpoint, the rest resolves to their new ids
+        ImportResult rest = facade.importData(directory, ExportFormat.NDJSON, false, checkpoint);
+        assertEquals(3, rest.getResumed());
+        assertEquals(0, rest.getRows(ExportTable.USERS));
+        assertEquals(1, rest.getRows(ExportTable.POSTS));
+        assertEquals(1, rest.getRejected(ExportTable.POSTS));
+        assertEquals(2, rest.getRows(ExportTable.COMMENTS));
+        assertEquals(2, rest.getRows(ExportTable.LIKES));
+        assertEquals(1, rest.getRejected(ExportTable.LIKES));
+        assertEquals(2, rest.getRows(ExportTable.FOLLOWS));
+
+        Post post = facade.findPostsByAuthor(ann.getId()).get(0);
+        assertEquals("Imported \"post\"", post.getContent());
+        assertEquals(LocalDateTime.of(2021, 6, 1, 10, 0), post.getTimestamp());
+        assertEquals(2, post.getLikeCount());
+        assertEquals(2, post.getCommentCount());
+        assertEquals(1, post.getRepliedCommentCount());
+        assertEquals(1, usageCount("importtag"));
+        assertEquals(2, facade.getFollowerCount(ann.getId()));
+
+        // a third run has nothing left to do
+        ImportResult again = facade.importData(directory, ExportFormat.NDJSON, false, checkpoint);
+        assertEquals(0, again.getTotalRows());
+
+        Path csvDirectory = Files.createTempDirectory("import-csv");
+        Files.write(csvDirectory.resolve("users.csv"), Arrays.asList(
+                "id,type,username,email,join_date,location",
+                "1,REGULAR,imp_dan,imp_dan@example.com,,\"Reggio, \"\"Calabria\"\"\""));
+        facade.importData(csvDirectory, ExportFormat.CSV, false, csvDirectory.resolve("import.checkpoint"));
+        assertEquals("Reggio, \"Calabria\"", ((RegularUser) facade.findUserByUsername("imp_dan")).getLocation());
+
+        // round trip: what exportData writes loads into an empty database with the profiles intact
+        facade.createRegularUser("trip_eve", "trip_eve@example.com", "Likes \"quotes\", commas",
+                LocalDate.of(1990, 3, 4), "Genoa");
+        AdminUser fay = facade.createAdminUser("trip_fay", "trip_fay@example.com", "MODERATOR", "Trust & Safety");
+        Path exportDirectory = Files.createTempDirectory("import-trip");
+        ExportResult exported = facade.exportData(exportDirectory, ExportFormat.CSV, true);
+        SocialMediaFacade target = new SocialMediaFacade(Persistence.createEntityManagerFactory("socialmedia-pu",
+                Map.of("javax.persistence.jdbc.url", "jdbc:h2:mem:socialmedia_import",
+                        "hibernate.cache.use_second_level_cache", "false",
+                        "hibernate.cache.use_query_cache", "false")));
+        try {
+            ImportResult trip = target.importData(exportDirectory, ExportFormat.CSV, true,
+                    exportDirectory.resolve("import.checkpoint"));
+            assertEquals(exported.getRows(ExportTable.USERS), trip.getRows(ExportTable.USERS));
+            assertEquals(exported.getRows(ExportTable.POSTS), trip.getRows(ExportTable.POSTS));
+            RegularUser eve = (RegularUser) target.findUserByUsername("trip_eve");
+            assertEquals("Likes \"quotes\", commas", eve.getBio());
+            assertEquals(LocalDate.of(1990, 3, 4), eve.getBirthDate());
+            assertEquals("Genoa", eve.getLocation());
+            AdminUser importedFay = (AdminUser) target.findUserByUsername("trip_fay");
+            assertEquals("MODERATOR", importedFay.getAdminLevel());
+            assertEquals("Trust & Safety", importedFay.getDepartment());
+            assertEquals(fay.getPromotionDate(), importedFay.getPromotionDate());
+        } finally {
+            target.close();
+        }
+        for (Path dir : Arrays.asList(directory, csvDirectory, exportDirectory)) {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+        System.out.println("✅ Streaming import: " + users + ", " + rest);
+    }
+
+    @Test
+    @Order(37)
+    public void testSyntheticDataGenerator() {
+        GeneratorConfig config = GeneratorConfig.of(2_000)
+                .withSeed(7)
+                .withFollowsPerUser(10)
+                .withPostsPerUser(2)
+                .withCommentsPerPost(3)
+                .withLikesPerPost(4)
+                .withHashtags(50);
+        GeneratedData first = facade.generateData(config.withUsernamePrefix("gen_a_").withThreads(4));
+        assertEquals(2_000, first.getUsers());
+        assertTrue(first.getFollows() > 0 && first.getPosts() > 0 && first.getComments() > 0 && first.getLikes() > 0);
+        assertFalse(facade.getService().isUsernameAvailable("gen_a_1999"));
+
+        // same seed, same data, whatever the number of threads
+        GeneratedData second = facade.generateData(config.withUsernamePrefix("gen_b_").withThreads(1));
+        assertEquals(first.getFollows(), second.getFollows());
+        assertEquals(first.getPosts(), second.getPosts());
+        assertEquals(first.getComments(), second.getComments());
+        assertEquals(first.getLikes(), second.getLikes());
+        assertEquals(50, first.getHashtags().size());
+        assertEquals(first.getHashtags(), second.getHashtags());
+
+        UnitOfWork unitOfWork = new UnitOfWork(emf);
+        // power law: the top 1% of the users have a good part of the follows
+        List<Long> followers = unitOfWork.read(db -> db.createQuery(
+                        "SELECT COUNT(f) FROM User u JOIN u.followers f WHERE u.username LIKE 'gen\\_a\\_%' " +
+                                "GROUP BY u.id ORDER BY COUNT(f) DESC", Long.class)
+                .getResultList());
+        long top = followers.stream().limit(20).mapToLong(Long::longValue).sum();
+        assertTrue(top > first.getFollows() / 5, "Top 1% of the users have " + top + " follows");
+
+        // counters match the generated rows, replies included
+        Object[] totals = unitOfWork.read(db -> db.createQuery(
+                        "SELECT SUM(p.commentCount), SUM(p.likeCount) FROM Post p " +
+                                "WHERE p.author.username LIKE 'gen\\_a\\_%'", Object[].class)
+                .getSingleResult());
+        assertEquals(first.getComments(), ((Number) totals[0]).longValue());
+        assertEquals(first.getLikes(), ((Number) totals[1]).longValue());
+        long replies = unitOfWork.read(db -> db.createQuery(
+                        "SELECT COUNT(c) FROM Comment c WHERE c.parentComment IS NOT NULL " +
+                                "AND c.post.author.username LIKE 'gen\\_a\\_%'", Long.class)
+                .getSingleResult());
+        assertTrue(replies > 0);
+        String topTag = first.getHashtags().get(0);
+        long tagged = unitOfWork.read(db -> db.createQuery(
+                        "SELECT COUNT(p) FROM Post p JOIN p.hashtags h WHERE h.tag = :tag", Long.class)
+                .setParameter("tag", topTag)
+                .getSingleResult());
+        assertTrue(tagged > 0);
+        assertEquals(tagged, usageCount(topTag));
+        System.out.println("✅ Synthetic data: " + first + ", " + second);
+    }
+
+    @Test
+    @Order(38)
+    public void testOperationMetrics() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1_000; micros++) {
+            histogram.record(micros * 1_000);
+        }
+        assertEquals(1_000, histogram.getCount());
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 / 32.0);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 / 32.0);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+
+        Post post = facade.createPost("Measured post", "TEXT", regularUserId);
+        facade.likePost(adminUserId, post.getId());
+        assertThrows(IllegalArgumentException.class, () -> facade.createPost("No author", "TEXT", -1L));
+
+        Metrics metrics = facade.getMetrics();
+        OperationMetrics createPost = metrics.getOperation("SocialMediaFacade.createPost");
+        assertNotNull(createPost, "Operations: " + metrics.getOperations().keySet());
+        assertTrue(createPost.getCalls() >= 2);
+        assertTrue(createPost.getFailures() >= 1);
+        assertTrue(createPost.getRollbacks() >= 1);
+        assertTrue(createPost.getCommits() >= 1);
+        assertTrue(createPost.getStatements() > 0);
+        assertTrue(createPost.getMaxPersistenceContextSize() >= 1);
+        assertTrue(createPost.getMedianMillis() > 0);
+        assertTrue(createPost.get99thPercentileMillis() >= createPost.getMedianMillis());
+        assertNotNull(metrics.getOperation("SocialMediaFacade.likePost"));
+
+        // every operation under its own name, overloads and in-memory operations included
+        facade.searchPosts("measured", null, 10);
+        facade.searchComments("measured", SearchFilter.none(), null, 10);
+        facade.findAllUsers(null, 10);
+        facade.isFollowing(regularUserId, adminUserId);
+        assertNotNull(metrics.getOperation("SocialMediaFacade.searchPosts"));
+        assertNotNull(metrics.getOperation("SocialMediaFacade.searchComments"));
+        assertNotNull(metrics.getOperation("SocialMediaFacade.findAllUsers(page)"));
+        OperationMetrics isFollowing = metrics.getOperation("SocialMediaFacade.isFollowing");
+        assertTrue(isFollowing.getCalls() >= 1);
+        assertEquals(0, isFollowing.getStatements());
+
+        // the same numbers over JMX
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        long calls = (Long) server.getAttribute(metrics.getObjectName("SocialMediaFacade.createPost"), "Calls");
+        assertEquals(createPost.getCalls(), calls);
+        long transactions = (Long) server.getAttribute(metrics.getHibernateObjectName(), "Transactions");
+        assertTrue(transactions > 0);
+        System.out.println("✅ Operation metrics: " + createPost);
+    }
+
+    @Test
+    @Order(39)
+    public void testQueryBudgets() {
+        // enough rows that an N+1 query would blow any of the budgets below
+        LocalDate birthDate = LocalDate.of(1995, 1, 1);
+        List<Long> fans = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            fans.add(facade.createRegularUser("budget_fan" + i, "budget_fan" + i + "@example.com", "Bio", birthDate,
+                    "Turin").getId());
+        }
+        Long authorId = facade.createRegularUser("budget_author", "budget_author@example.com", "Bio", birthDate,
+                "Milan").getId();
+        List<Long> postIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Long id = facade.createPostWithHashtags("Budget post " + i, "TEXT", authorId,
+                    Arrays.asList("budgettag", "budgettag" + i)).getId();
+            postIds.add(id);
+            for (Long fan : fans) {
+                facade.likePost(fan, id);
+                Comment comment = facade.createComment("Budget comment", id, fan);
+                facade.createReply("Budget reply", comment.getId(), authorId);
+            }
+        }
+        fans.forEach(fan -> facade.followUser(fan, authorId));
+        Long firstPost = postIds.get(0);
+        Long firstComment = facade.findCommentsByPost(firstPost).get(0).getId();
+        LocalDateTime now = LocalDateTime.now();
+
+        // Each budget is the number of statements the operation needs by design, independent of the number of
+        // rows involved: a lazy association loaded per row goes over it. Statements are counted at the JDBC
+        // level, so those sent over plain JDBC (conditional inserts, batched inserts, bulk loads) count too.
+
+        // users: a JOINED subclass is two inserts; reads by id or username come from the second-level and
+        // natural-id caches; every listing is a single query
+        Long budgetUser = withinBudget("createRegularUser", 2, () -> facade.createRegularUser("budget_new",
+                "budget_new@example.com", "Bio", birthDate, "Rome")).getId();
+        withinBudget("createAdminUser", 2, () -> facade.createAdminUser("budget_admin",
+                "budget_admin@example.com", "MODERATOR", "Support"));
+        User found = withinBudget("findUserById", 0, () -> facade.findUserById(budgetUser));
+        withinBudget("findUserByUsername", 0, () -> facade.findUserByUsername("budget_author"));
+        withinBudget("findAllUsers", 1, () -> facade.findAllUsers(null, 20));
+        withinBudget("findFollowers", 1, () -> facade.findFollowers(authorId, null, 20));
+        withinBudget("findFollowing", 1, () -> facade.findFollowing(fans.get(0), null, 20));
+        withinBudget("findFollowerSummaries", 1, () -> facade.findFollowerSummaries(authorId, null, 20));
+        withinBudget("findFollowingSummaries", 1, () -> facade.findFollowingSummaries(fans.get(0), null, 20));
+        found.setEmail("budget_new2@example.com");
+        withinBudget("updateUser", 1, () -> facade.updateUser(found));
+
+        // posts: one insert; tags add one lookup of the uncached ones, one batch inserting the missing ones, one
+        // usage update, one load of the uncached ones (the cached ones come from the second-level cache) and one
+        // batch of links, however many tags there are; every listing is a single query
+        Post post = withinBudget("createPost", 1, () -> facade.createPost("Budget extra", "TEXT", authorId));
+        withinBudget("createPostWithHashtags", 6, () -> facade.createPostWithHashtags("Budget tagged", "TEXT",
+                authorId, Arrays.asList("budgettag", "budgetnew")));
+        withinBudget("findPostById", 1, () -> facade.findPostById(firstPost));
+        withinBudget("findPostsByAuthor", 1, () -> facade.findPostsByAuthor(authorId));
+        withinBudget("findPostsByAuthor page", 1, () -> facade.findPostsByAuthor(authorId, null, 20));
+        withinBudget("findPostsByHashtag", 1, () -> facade.findPostsByHashtag("budgettag", null, 20));
+        withinBudget("findPostsBetweenDates", 1,
+                () -> facade.findPostsBetweenDates(now.minusHours(1), now.plusHours(1), null, 20));
+        withinBudget("findPostsLikedByUser", 1, () -> facade.findPostsLikedByUser(fans.get(0), null, 20));
+        withinBudget("findPostSummariesByAuthor", 1, () -> facade.findPostSummariesByAuthor(authorId, null, 20));
+        withinBudget("findPostSummariesByHashtag", 1,
+                () -> facade.findPostSummariesByHashtag("budgettag", null, 20));
+        withinBudget("findPostSummariesLikedByUser", 1,
+                () -> facade.findPostSummariesLikedByUser(fans.get(0), null, 20));
+        withinBudget("findTrendingPosts", 1, () -> facade.findTrendingPosts(20));
+        withinBudget("findTrendingPostSummaries", 1, () -> facade.findTrendingPostSummaries(20));
+        // a timeline is one query for its posts; the first read also loads the ids of the feed
+        withinBudget("getHomeTimeline first read", 2, () -> facade.getHomeTimeline(fans.get(0), null, 20));
+        withinBudget("getHomeTimeline", 1, () -> facade.getHomeTimeline(fans.get(0), null, 20));
+        withinBudget("getHomeTimelineSummaries", 1, () -> facade.getHomeTimelineSummaries(fans.get(0), null, 20));
+        // merging the detached post loads it with its comments, then its hashtags and its likes (merge cascades
+        // to them), and updates it
+        post.setContent("Budget extra, edited");
+        withinBudget("updatePost", 4, () -> facade.updatePost(post));
+        withinBudget("getTrendingHashtags", 0, () -> facade.getTrendingHashtags(10, Duration.ofHours(1)));
+
+        // comments: the post or parent lookup (the author is cached), the insert and one update per counter:
+        // comment count, plus reply count and replied comment count for a reply; then the loaded post or parent
+        // is reloaded with its new counters
+        Comment comment = withinBudget("createComment", 4, () -> facade.createComment("Budget", firstPost,
+                authorId));
+        withinBudget("createReply", 6, () -> facade.createReply("Budget", comment.getId(), fans.get(0)));
+        withinBudget("findCommentById", 1, () -> facade.findCommentById(firstComment));
+        withinBudget("findCommentsByPost", 1, () -> facade.findCommentsByPost(firstPost));
+        withinBudget("findCommentsByPost page", 1, () -> facade.findCommentsByPost(firstPost, null, 20));
+        withinBudget("findCommentsByAuthor", 1, () -> facade.findCommentsByAuthor(authorId, null, 20));
+        withinBudget("findCommentSummariesByPost", 1, () -> facade.findCommentSummariesByPost(firstPost, null, 20));
+        withinBudget("findCommentSummariesByAuthor", 1,
+                () -> facade.findCommentSummariesByAuthor(authorId, null, 20));
+        withinBudget("loadThread", 1, () -> facade.loadThread(firstPost, 5, 20));
+        withinBudget("loadReplies", 1, () -> facade.loadReplies(firstComment, null, 5, 20));
+
+        // follows and likes: one conditional insert or delete, plus the like counter; follow questions are
+        // answered by the in-memory graph, and recommendations only look up the hashtags and locations of the
+        // candidates, with one query each
+        try (QueryBudget budget = QueryBudget.open("followUser", 1, QueryBudget.Mode.FAIL)) {
+            facade.followUser(budgetUser, authorId);
+            // the insert goes over plain JDBC, to survive a concurrent duplicate, and is counted all the same
+            assertEquals(1, budget.getStatementCount());
+        }
+        withinBudget("isFollowing", 0, () -> facade.isFollowing(budgetUser, authorId));
+        withinBudget("areMutualFollowers", 0, () -> facade.areMutualFollowers(budgetUser, authorId));
+        withinBudget("getFollowerCount", 0, () -> facade.getFollowerCount(authorId));
+        withinBudget("getFollowingCount", 0, () -> facade.getFollowingCount(budgetUser));
+        withinBudget("getFollowRecommendations", 2, () -> facade.getFollowRecommendations(budgetUser, 10));
+        withinBudget("unfollowUser", 1, () -> facade.unfollowUser(budgetUser, authorId));
+        withinBudget("likePost", 2, () -> facade.likePost(budgetUser, firstPost));
+        withinBudget("hasLiked", 1, () -> facade.hasLiked(budgetUser, firstPost));
+        withinBudget("unlikePost", 2, () -> facade.unlikePost(budgetUser, firstPost));
+
+        // search runs on the in-memory index, then resolves the page with one query; reports are one query each
+        withinBudget("searchPosts", 1, () -> facade.searchPosts("budget", null, 20));
+        withinBudget("searchPosts filtered", 1,
+                () -> facade.searchPosts("budget", SearchFilter.none().withAuthor(authorId), null, 20));
+        withinBudget("searchComments", 1, () -> facade.searchComments("budget", SearchFilter.none(), null, 20));
+        withinBudget("findActiveUsers", 1, () -> facade.findActiveUsers(now.minusMinutes(1)));
+        withinBudget("findPopularPostsByHashtag", 1, () -> facade.findPopularPostsByHashtag("budgettag", 1));
+        withinBudget("findUsersEngagingWithHashtags", 1,
+                () -> facade.findUsersEngagingWithHashtags(Arrays.asList("budgettag", "budgettag1")));
+        withinBudget("findActiveDiscussions", 1, () -> facade.findActiveDiscussions(5, 5));
+
+        // bulk operations: one batch per table, then the in-memory state they touch is reloaded with one scan
+        // per source (name filter: count and names; trending posts: recent engagement; search: tags, posts and
+        // comments)
+        withinBudget("createUsers", 4, () -> facade.createUsers(Arrays.asList(
+                new RegularUser("budget_bulk", "budget_bulk@example.com", "Bio", birthDate, "Rome"))));
+        withinBudget("createPosts", 5, () -> facade.createPosts(Arrays.asList(
+                new Post("Budget bulk", "TEXT", found))));
+        withinBudget("createComments", 6, () -> facade.createComments(Arrays.asList(
+                new Comment("Budget bulk", post, found))));
+        // an export streams its table with a single query
+        withinBudget("exportTable", 1, () -> facade.exportTable(ExportTable.LIKES,
+                Channels.newChannel(new ByteArrayOutputStream()), ExportFormat.CSV, false));
+        // deletes are set-based: a select per kind of dependent row (and per level of replies), a statement
+        // per table deleted from and a recount per kind of counter left behind; the number of rows does not
+        // matter. The post: its comments and hashtags, then likes, links, comments (unlinked first), post.
+        withinBudget("deletePost", 7, () -> facade.deletePost(post.getId()));
+        // A fan: selects of posts, comments, replies (2 levels, the last one empty), likes, and the parents and
+        // posts of the comments; deletes of likes, comments (unlinked first), follows both ways and the 3 user
+        // tables; then the comment and like counts of the posts are recounted
+        withinBudget("deleteUser", 17, () -> facade.deleteUser(fans.get(4)));
+
+        // toString of detached entities loads nothing, and does not fail on lazy proxies
+        Post detached = facade.findPostById(firstPost);
+        Comment detachedComment = facade.findCommentById(firstComment);
+        String description = withinBudget("toString", 0, () -> detached + " " + detachedComment);
+        assertTrue(description.contains("author=#" + authorId), description);
+
+        // over budget: the report names the repeated statement
+        IllegalStateException exceeded = assertThrows(IllegalStateException.class, () -> {
+            try (QueryBudget budget = QueryBudget.open("lookups", 2, QueryBudget.Mode.FAIL)) {
+                for (Long id : postIds) {
+                    facade.findPostById(id);
+                }
+            }
+        });
+        assertTrue(exceeded.getMessage().contains("5 x select"), exceeded.getMessage());
+        // in production mode only a warning
+        try (QueryBudget budget = QueryBudget.open("lookups", 2, QueryBudget.Mode.WARN)) {
+            postIds.forEach(facade::findPostById);
+            assertTrue(budget.isExceeded());
+        }
+        System.out.println("✅ Query budgets: " + exceeded.getMessage().lines().findFirst().orElse(""));
+    }
+
+    @Test
+    @Order(40)
+    public void testCountersAfterDeletes() {
+        // the counters of the rows that survive a delete are recounted in the same transaction
+        Post post = facade.createPost("Who stays?", "TEXT", adminUserId);
+        Comment comment = facade.createComment("I do", post.getId(), regularUserId);
+        facade.createReply("Me too", comment.getId(), adminUserId);
+        facade.createReply("Same here", comment.getId(), regularUserId);
+        User commenter = facade.createRegularUser("commenter", "commenter@example.com", "Bio",
+                LocalDate.of(1999, 1, 1), "Rome");
+        Comment other = facade.createComment("Not sure", post.getId(), adminUserId);
+        facade.createReply("Neither am I", other.getId(), commenter.getId());
+        facade.createReply("Disagree", comment.getId(), commenter.getId());
+        facade.likePost(commenter.getId(), post.getId());
+        Post reloaded = facade.findPostById(post.getId());
+        assertEquals(6, reloaded.getCommentCount());
+        assertEquals(2, reloaded.getRepliedCommentCount());
+        assertEquals(1, reloaded.getLikeCount());
+        facade.deleteUser(commenter.getId());
+        reloaded = facade.findPostById(post.getId());
+        assertEquals(4, reloaded.getCommentCount());
+        assertEquals(1, reloaded.getRepliedCommentCount());
+        assertEquals(0, reloaded.getLikeCount());
+        assertEquals(2, facade.findCommentById(comment.getId()).getReplyCount());
+        assertEquals(0, facade.findCommentById(other.getId()).getReplyCount());
+
+        Post tagged = facade.createPostWithHashtags("Gone soon", "TEXT", adminUserId, Arrays.asList("#Ephemeral"));
+        facade.createComment("Bye", tagged.getId(), regularUserId);
+        assertEquals(1, usageCount("#Ephemeral"));
+        facade.deletePost(tagged.getId());
+        assertNull(facade.findPostById(tagged.getId()));
+        assertEquals(0, usageCount("#Ephemeral"));
+        System.out.println("✅ Counters recounted after deletes");
+    }
+
+    // Fails when the operation runs more SQL statements than allowed, listing them: catches N+1 queries
+    private static <T> T withinBudget(String operation, int maxStatements, Supplier<T> work) {
+        try (QueryBudget budget = QueryBudget.open(operation, maxStatements, QueryBudget.Mode.FAIL)) {
+            return work.get();
+        }
+    }
+
+    private static void withinBudget(String operation, int maxStatements, Runnable work) {
+        withinBudget(operation, maxStatements, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    // Run the same operation on the given number of threads, started together. Returns the number of failures.
+    private static List<Long> postIds(List<TimelineEntry> entries) {
+        return entries.stream().map(TimelineEntry::getPostId).collect(Collectors.toList());
+    }
+
+    private static int concurrently(int threads, Runnable operation) {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    operation.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+            int failures = 0;
+            for (Future<?> result : results) {
+                try {
+                    result.get(30, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    failures++;
+                }
+            }
+            return failures;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long cacheHits(String region) {
+        return facade.getService().getCacheStatistics().stream()
+                .filter(stats -> stats.getRegion().equals(region))
+                .mapToLong(CacheStatistics::getHits)
+                .sum();
+    }
+
+    private static int usageCount(String tag) {
+        return facade.getService().getTrendingHashtags(1000).stream()
+                .filter(h -> h.getTag().equals(tag))
+                .findFirst()
+                .map(Hashtag::getUsageCount)
+                .orElse(0);
+    }
+}
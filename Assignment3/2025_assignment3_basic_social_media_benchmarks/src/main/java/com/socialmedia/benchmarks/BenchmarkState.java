@@ -0,0 +1,80 @@
+package com.socialmedia.benchmarks;
+
+import com.socialmedia.dao.UnitOfWork;
+import com.socialmedia.facade.SocialMediaFacade;
+import com.socialmedia.generator.GeneratedData;
+import com.socialmedia.generator.GeneratorConfig;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// A fresh in-memory database per trial, filled by the synthetic data generator: power-law follower counts,
+// Zipf-distributed hashtags and bursty timelines, the same for every trial. The facade reloads its in-memory
+// state from the generated data. Per user on average: 5 posts with up to 3 of 50 hashtags, 2 comments
+// per post of which about half are replies, 5 likes per post, 10 follows.
+@State(Scope.Benchmark)
+public class BenchmarkState {
+
+    static final int HASHTAGS = 50;
+    private static final long SEED = 42;
+
+    @Param({"1000", "10000"})
+    public int users;
+
+    SocialMediaFacade facade;
+    long[] userIds;
+    long[] postIds;
+    List<String> tags;
+
+    @Setup(Level.Trial)
+    public void load() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", "jdbc:h2:mem:benchmark-" + System.nanoTime());
+        EntityManagerFactory emf = Persistence.createEntityManagerFactory("socialmedia-pu", properties);
+        facade = new SocialMediaFacade(emf);
+        GeneratedData data = facade.generateData(GeneratorConfig.of(users)
+                .withSeed(SEED)
+                .withPostsPerUser(5)
+                .withCommentsPerPost(2)
+                .withLikesPerPost(5)
+                .withFollowsPerUser(10)
+                .withHashtags(HASHTAGS));
+
+        UnitOfWork unitOfWork = new UnitOfWork(emf);
+        userIds = unitOfWork.read(em -> em.createQuery("SELECT u.id FROM User u ORDER BY u.id", Long.class)
+                .getResultStream()
+                .mapToLong(Long::longValue)
+                .toArray());
+        postIds = unitOfWork.read(em -> em.createQuery("SELECT p.id FROM Post p ORDER BY p.id", Long.class)
+                .getResultStream()
+                .mapToLong(Long::longValue)
+                .toArray());
+        tags = data.getHashtags();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        facade.close();
+    }
+
+    long randomUser() {
+        return userIds[ThreadLocalRandom.current().nextInt(userIds.length)];
+    }
+
+    long randomPost() {
+        return postIds[ThreadLocalRandom.current().nextInt(postIds.length)];
+    }
+
+    String randomTag() {
+        return tags.get(ThreadLocalRandom.current().nextInt(tags.size()));
+    }
+}
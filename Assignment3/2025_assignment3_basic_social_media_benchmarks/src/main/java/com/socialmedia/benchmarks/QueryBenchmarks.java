@@ -0,0 +1,48 @@
+package com.socialmedia.benchmarks;
+
+import com.socialmedia.entities.Post;
+import com.socialmedia.entities.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Read paths of the facade and the statistics service over the loaded dataset
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmarks {
+
+    @Benchmark
+    public List<Post> findTrendingPosts(BenchmarkState state) {
+        return state.facade.findTrendingPosts(10);
+    }
+
+    @Benchmark
+    public List<Post> findPopularPostsByHashtag(BenchmarkState state) {
+        return state.facade.findPopularPostsByHashtag(state.randomTag(), 3);
+    }
+
+    @Benchmark
+    public List<Post> findActiveDiscussions(BenchmarkState state) {
+        return state.facade.findActiveDiscussions(2, 1);
+    }
+
+    @Benchmark
+    public List<User> findUsersEngagingWithHashtags(BenchmarkState state) {
+        return state.facade.findUsersEngagingWithHashtags(Arrays.asList(state.randomTag(), state.randomTag()));
+    }
+
+    @Benchmark
+    public User getMostActiveUser(BenchmarkState state) {
+        return state.facade.getService().getMostActiveUser();
+    }
+}
@@ -0,0 +1,47 @@
+package com.socialmedia.benchmarks;
+
+import com.socialmedia.entities.Post;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Writes through the facade, each in its own transaction. The dataset grows during the run: posts, likes
+// and follows are added to the ones loaded by BenchmarkState, and repeated likes and follows are no-ops.
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmarks {
+
+    @Benchmark
+    public Post createPost(BenchmarkState state) {
+        return state.facade.createPost("Benchmark post", "TEXT", state.randomUser());
+    }
+
+    @Benchmark
+    public Post createPostWithHashtags(BenchmarkState state) {
+        return state.facade.createPostWithHashtags("Benchmark post", "TEXT", state.randomUser(),
+                Arrays.asList(state.randomTag(), state.randomTag()));
+    }
+
+    @Benchmark
+    public void likePost(BenchmarkState state) {
+        state.facade.likePost(state.randomUser(), state.randomPost());
+    }
+
+    @Benchmark
+    public void followUser(BenchmarkState state) {
+        long follower = state.randomUser();
+        long followed = state.randomUser();
+        if (follower != followed) {
+            state.facade.followUser(follower, followed);
+        }
+    }
+}